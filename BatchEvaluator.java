@@ -0,0 +1,256 @@
+/**
+ * Filename: BatchEvaluator.java
+ * Usage: java Calculator --batch [file]
+ *        new BatchEvaluator(pool).evaluate(path, System.out);
+ * Description: this file contains the batch mode of the calculator. The
+ * input file holds one infix expression per line; it is memory-mapped, cut
+ * into blocks at line boundaries, and the blocks are evaluated in parallel
+ * by splitting them in halves on a ForkJoinPool. For every input line one
+ * output line is written, in input order: the answer, or the error message
+ * of an invalid expression.
+ *
+ * Blocks are processed a window at a time, so the output held in memory is
+ * bounded by the window, not by the size of the file.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public final class BatchEvaluator {
+    private static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    // largest part of the file mapped at once; a mapping is limited to 2GB
+    private static final int DEFAULT_REGION_SIZE = 1 << 30;
+    // blocks in flight per worker thread
+    private static final int BLOCKS_PER_THREAD = 4;
+    private static final String NO_INPUT = "No input was given.";
+
+    private final ForkJoinPool pool;
+    private final int blockSize;
+    private final int regionSize;
+
+  /**
+   * Constructor creates a batch evaluator running on the given pool
+   * @param pool, threads to evaluate blocks on
+   */
+  public BatchEvaluator(ForkJoinPool pool) {
+      this(pool, DEFAULT_BLOCK_SIZE, DEFAULT_REGION_SIZE);
+  }
+
+  /**
+   * Constructor creates a batch evaluator with the given block and region
+   * sizes, for testing
+   * @param pool, threads to evaluate blocks on
+   * @param blockSize, bytes of input per block, rounded up to a line
+   * @param regionSize, bytes of input mapped at once; must hold a line
+   */
+  BatchEvaluator(ForkJoinPool pool, int blockSize, int regionSize) {
+      this.pool = pool;
+      this.blockSize = blockSize;
+      this.regionSize = regionSize;
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: evaluates every line of the input file and writes one
+   * output line per input line
+   * @param input, file of expressions in infix notation, one per line
+   * @param output, stream the answers are written to
+   * @throws IOException when the file cannot be read, a line is longer
+   * than the mapped region, or output cannot be written
+   * @return number of lines evaluated
+   */
+  public long evaluate(Path input, OutputStream output) throws IOException {
+      long lines = 0;
+      try (FileChannel channel
+              = FileChannel.open(input, StandardOpenOption.READ)) {
+          long size = channel.size();
+          long position = 0;
+          while (position < size) {
+              long length = Math.min(regionSize, size - position);
+              MappedByteBuffer region = channel.map(
+                      FileChannel.MapMode.READ_ONLY, position, length);
+              int end = (int) length;
+              // cut the region after its last full line
+              if (position + length < size) {
+                  end = lastLineEnd(region, end);
+                  if (end == 0) {
+                      throw new IOException("Line longer than "
+                              + regionSize + " bytes at byte " + position);
+                  }
+              }
+              lines += evaluateRegion(region, end, output);
+              position += end;
+          }
+      }
+      output.flush();
+      return lines;
+  }
+
+  /**
+   * Method name: evaluateRegion
+   * Description: cuts a mapped region into blocks and evaluates them a
+   * window at a time, writing each window's output in order
+   * @param region, mapped part of the file
+   * @param end, offset after the last line of the region
+   * @param output, stream the answers are written to
+   * @throws IOException when output cannot be written
+   * @return number of lines evaluated
+   */
+  private long evaluateRegion(MappedByteBuffer region, int end,
+          OutputStream output) throws IOException {
+      int window = Math.max(1, pool.getParallelism() * BLOCKS_PER_THREAD);
+      int[] starts = new int[window + 1];
+      Block[] blocks = new Block[window];
+      long lines = 0;
+      int position = 0;
+      while (position < end) {
+          int count = 0;
+          starts[0] = position;
+          while (count < window && position < end) {
+              position = nextLineEnd(region, position + blockSize, end);
+              starts[++count] = position;
+          }
+          for (int i = 0; i < count; i++) {
+              blocks[i] = new Block(region, starts[i], starts[i + 1]);
+          }
+          pool.invoke(new Split(blocks, 0, count));
+          for (int i = 0; i < count; i++) {
+              output.write(blocks[i].output);
+              lines += blocks[i].lines;
+              blocks[i] = null;
+          }
+      }
+      return lines;
+  }
+
+  /**
+   * Method name: lastLineEnd
+   * @param buffer, mapped part of the file
+   * @param end, offset to search back from
+   * @return offset after the last newline before end, 0 if there is none
+   */
+  private static int lastLineEnd(MappedByteBuffer buffer, int end) {
+      for (int i = end - 1; i >= 0; i--) {
+          if (buffer.get(i) == '\n') {
+              return i + 1;
+          }
+      }
+      return 0;
+  }
+
+  /**
+   * Method name: nextLineEnd
+   * @param buffer, mapped part of the file
+   * @param from, offset after the byte whose line is searched for
+   * @param end, offset after the last byte to search
+   * @return offset after the line holding byte from - 1, or end
+   */
+  private static int nextLineEnd(MappedByteBuffer buffer, int from, int end) {
+      for (int i = from - 1; i < end; i++) {
+          if (buffer.get(i) == '\n') {
+              return i + 1;
+          }
+      }
+      return end;
+  }
+
+  /**
+   * Method name: evaluateLine
+   * Description: evaluates one expression and appends its answer or error
+   * message
+   * @param tokens, tokenizer of the current thread
+   * @param line, expression in infix notation
+   * @param out, output of the block
+   */
+  static void evaluateLine(Tokenizer tokens, CharSequence line,
+          StringBuilder out) {
+      if (line.length() == 0) {
+          out.append(NO_INPUT).append('\n');
+          return;
+      }
+      Result result = Metrics.calculate(tokens, line);
+      if (result.ok()) {
+          out.append(result.value());
+      }
+      else {
+          out.append(result.message());
+      }
+      out.append('\n');
+  }
+
+    /**
+     * a run of whole lines of the file and, once evaluated, their output
+     */
+    private static final class Block {
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private byte[] output;
+        private int lines;
+
+        Block(MappedByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * evaluates each line of the block into output
+         */
+        void evaluate() {
+            Tokenizer tokens = new Tokenizer();
+            ByteLine line = new ByteLine(buffer);
+            StringBuilder out = new StringBuilder((end - start) / 2);
+            int lineStart = start;
+            while (lineStart < end) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                evaluateLine(tokens, line.of(lineStart, lineEnd), out);
+                lines++;
+                lineStart = next;
+            }
+            output = out.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * evaluates a range of blocks, splitting it in halves until one block
+     * is left
+     */
+    private static final class Split extends RecursiveAction {
+        private final Block[] blocks;
+        private final int from;
+        private final int to;
+
+        Split(Block[] blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                blocks[from].evaluate();
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Split(blocks, from, middle),
+                        new Split(blocks, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Filename: ByteLine.java
+ * Usage: ByteLine line = new ByteLine(buffer);
+ *        tokens.tokenize(line.of(start, end));
+ * Description: this file contains a view of a line of bytes as characters,
+ * so a line read from a file or socket can be tokenized without copying it
+ * into a String. Expressions are ASCII; a line holding other bytes is
+ * decoded as UTF-8 into a String instead, so invalid characters are
+ * reported correctly.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+final class ByteLine implements CharSequence {
+    private final ByteBuffer buffer;
+    private int start;
+    private int length;
+
+  /**
+   * Constructor creates a view over the given buffer
+   * @param buffer, bytes the lines are read from; only absolute gets are
+   * used, so the buffer's position and limit are ignored
+   */
+  ByteLine(ByteBuffer buffer) {
+      this.buffer = buffer;
+  }
+
+  /**
+   * Method name: of
+   * Description: points this view at the given bytes
+   * @param start, offset of the first byte of the line
+   * @param end, offset after the last byte of the line
+   * @return this view, or a decoded string if the bytes are not ASCII
+   */
+  CharSequence of(int start, int end) {
+      for (int i = start; i < end; i++) {
+          if (buffer.get(i) < 0) {
+              byte[] bytes = new byte[end - start];
+              buffer.get(start, bytes);
+              return new String(bytes, StandardCharsets.UTF_8);
+          }
+      }
+      this.start = start;
+      this.length = end - start;
+      return this;
+  }
+
+  @Override
+  public int length() {
+      return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+      return (char) buffer.get(start + index);
+  }
+
+  @Override
+  public CharSequence subSequence(int from, int to) {
+      return toString().substring(from, to);
+  }
+
+  @Override
+  public String toString() {
+      byte[] bytes = new byte[length];
+      buffer.get(start, bytes);
+      return new String(bytes, StandardCharsets.US_ASCII);
+  }
+}
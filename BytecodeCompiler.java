@@ -0,0 +1,449 @@
+/**
+ * Filename: BytecodeCompiler.java
+ * Usage: Formula.Code code = BytecodeCompiler.compile(program);
+ *        double ans = code.evaluate(values);
+ * Description: this file contains the compiler of a formula's program to
+ * JVM bytecode, the tier a formula moves to once it has been evaluated
+ * often enough, see Formula.
+ *
+ * The postfix program maps one to one onto the JVM's own operand stack: a
+ * number is a constant load, a variable an array load, a temporary a local
+ * variable and an operator a double instruction, so the generated method is
+ * straight-line code with no branches and no array of operands, which the
+ * JIT compiles like hand-written arithmetic. Each division calls divide,
+ * which keeps the interpreter's check for a zero divisor; the JIT inlines
+ * it. Operands are combined in the same order as in CompiledExpression.run,
+ * so the answers are exactly the same.
+ *
+ * The class file is written directly, with only what the JVM requires of a
+ * class without branches, and defined as a hidden class of this package.
+ * It is not strongly held by its class loader, so it is unloaded once its
+ * formula is no longer reachable. Programs longer than the JIT compiles
+ * (8000 bytes of bytecode), and programs that use registered operators or
+ * functions, see Operators, are left to the interpreter.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+final class BytecodeCompiler {
+    // largest method HotSpot compiles, see -XX:-DontCompileHugeMethods
+    static final int MAX_CODE_LENGTH = 8000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_21 = 65;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int MAX_CONSTANTS = 0xFFFF;
+    // locals of evaluate: this, values, then two slots per temporary
+    private static final int FIRST_TEMP = 2;
+
+    // constant pool tags
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int METHOD_REF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    // instructions
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int DSTORE = 0x39;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DNEG = 0x77;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(constants);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int constantCount = 1;
+
+  /**
+   * Constructor creates a compiler for one class
+   */
+  private BytecodeCompiler() {
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles a program to a hidden class
+   * @param program, compiled expression, optimized or not
+   * @return the program as bytecode, or null if it is too long to be
+   * compiled by the JIT or uses registered operators
+   */
+  static Formula.Code compile(CompiledExpression program) {
+      if (program.usesOperations()) {
+          return null;
+      }
+      try {
+          byte[] bytes = new BytecodeCompiler().classFile(program);
+          if (bytes == null) {
+              return null;
+          }
+          MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(bytes, true);
+          return (Formula.Code) hidden.findConstructor(hidden.lookupClass(),
+                  MethodType.methodType(void.class)).invoke();
+      } catch (Throwable e) { // the class file is always valid
+          throw new IllegalStateException(e);
+      }
+  }
+
+  /**
+   * Method name: divide
+   * Description: divides as CompiledExpression.run does, called by the
+   * generated code
+   * @param num1, dividend
+   * @param num2, divisor
+   * @throws DivisionByZeroException when the divisor is zero
+   * @return quotient
+   */
+  static double divide(double num1, double num2)
+          throws DivisionByZeroException {
+      if (num2 == 0) {
+          throw new DivisionByZeroException();
+      }
+      return num1 / num2;
+  }
+
+  /**
+   * Method name: classFile
+   * Description: writes a final class implementing Formula.Code whose
+   * evaluate method runs the program
+   * @param program, compiled expression
+   * @throws IOException never, the output is in memory
+   * @return the class file, or null if the program is too long
+   */
+  private byte[] classFile(CompiledExpression program) throws IOException {
+      int thisClass = classConstant("FormulaCode");
+      int superClass = classConstant("java/lang/Object");
+      int codeInterface = classConstant("Formula$Code");
+      int objectInit = methodConstant(superClass, "<init>", "()V");
+      int divide = methodConstant(classConstant("BytecodeCompiler"),
+              "divide", "(DD)D");
+      int initName = utf8("<init>");
+      int initType = utf8("()V");
+      int evaluateName = utf8("evaluate");
+      int evaluateType = utf8("([D)D");
+      int codeName = utf8("Code");
+      byte[] evaluate = evaluateCode(program, divide);
+      if (evaluate == null || constantCount > MAX_CONSTANTS) {
+          return null;
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+              constants.size() + evaluate.length + 128);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeShort(0);
+      out.writeShort(JAVA_21);
+      out.writeShort(constantCount);
+      constants.writeTo(out);
+      out.writeShort(ACC_FINAL | ACC_SUPER);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(1); // interfaces
+      out.writeShort(codeInterface);
+      out.writeShort(0); // fields
+      out.writeShort(2); // methods
+      // public FormulaCode() { super(); }
+      byte[] init = {(byte) ALOAD_0, (byte) INVOKESPECIAL,
+              (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+      method(out, initName, initType, codeName, 1, 1, init);
+      // public double evaluate(double[] values)
+      int maxStack = 2 * program.maxStack() + 2;
+      int maxLocals = FIRST_TEMP + 2 * program.temps;
+      method(out, evaluateName, evaluateType, codeName, maxStack, maxLocals,
+              evaluate);
+      out.writeShort(0); // attributes
+      return bytes.toByteArray();
+  }
+
+  /**
+   * Method name: evaluateCode
+   * Description: translates the program into the body of evaluate
+   * @param program, compiled expression
+   * @param divide, constant of the divide method
+   * @return the bytecode, or null if it is too long
+   */
+  private byte[] evaluateCode(CompiledExpression program, int divide) {
+      int[] code = program.code;
+      ByteArrayOutputStream out = new ByteArrayOutputStream(code.length * 2);
+      for (int pc = 0; pc < code.length; pc++) {
+          switch (code[pc]) {
+              case CompiledExpression.PUSH:
+                  push(out, program.constants[code[++pc]]);
+                  break;
+              case CompiledExpression.LOAD:
+                  int variable = code[++pc];
+                  out.write(ALOAD_1);
+                  index(out, variable >= 0 ? variable : ~variable);
+                  out.write(DALOAD);
+                  if (variable < 0) {
+                      out.write(DNEG);
+                  }
+                  break;
+              case CompiledExpression.SAVE:
+                  out.write(DUP2);
+                  local(out, DSTORE, FIRST_TEMP + 2 * code[++pc]);
+                  break;
+              case CompiledExpression.RECALL:
+                  local(out, DLOAD, FIRST_TEMP + 2 * code[++pc]);
+                  break;
+              case CompiledExpression.ADD:
+                  out.write(DADD);
+                  break;
+              case CompiledExpression.SUBTRACT:
+                  out.write(DSUB);
+                  break;
+              case CompiledExpression.MULTIPLY:
+                  out.write(DMUL);
+                  break;
+              default: // DIVIDE
+                  out.write(INVOKESTATIC);
+                  out.write(divide >> 8);
+                  out.write(divide);
+          }
+          if (out.size() > MAX_CODE_LENGTH) {
+              return null;
+          }
+      }
+      out.write(DRETURN);
+      return out.toByteArray();
+  }
+
+  /**
+   * Method name: push
+   * Description: writes the load of a number
+   * @param out, bytecode
+   * @param value, number
+   */
+  private void push(ByteArrayOutputStream out, double value) {
+      long bits = Double.doubleToRawLongBits(value);
+      if (bits == 0) {
+          out.write(DCONST_0);
+      }
+      else if (bits == Double.doubleToRawLongBits(1.0)) {
+          out.write(DCONST_1);
+      }
+      else {
+          int index = doubleConstant(value);
+          out.write(LDC2_W);
+          out.write(index >> 8);
+          out.write(index);
+      }
+  }
+
+  /**
+   * Method name: index
+   * Description: writes the load of an int; one of 32768 or more, which
+   * SIPUSH would sign-extend, is loaded from the constant pool
+   * @param out, bytecode
+   * @param value, non-negative int
+   */
+  private void index(ByteArrayOutputStream out, int value) {
+      if (value <= 5) {
+          out.write(ICONST_0 + value);
+      }
+      else if (value <= Byte.MAX_VALUE) {
+          out.write(BIPUSH);
+          out.write(value);
+      }
+      else if (value <= Short.MAX_VALUE) {
+          out.write(SIPUSH);
+          out.write(value >> 8);
+          out.write(value);
+      }
+      else {
+          int index = intConstant(value);
+          if (index <= 0xFF) {
+              out.write(LDC);
+          }
+          else {
+              out.write(LDC_W);
+              out.write(index >> 8);
+          }
+          out.write(index);
+      }
+  }
+
+  /**
+   * Method name: local
+   * Description: writes an instruction on a local variable
+   * @param out, bytecode
+   * @param opcode, DLOAD or DSTORE
+   * @param slot, local variable
+   */
+  private static void local(ByteArrayOutputStream out, int opcode,
+          int slot) {
+      if (slot <= 0xFF) {
+          out.write(opcode);
+          out.write(slot);
+      }
+      else {
+          out.write(WIDE);
+          out.write(opcode);
+          out.write(slot >> 8);
+          out.write(slot);
+      }
+  }
+
+  /**
+   * Method name: method
+   * Description: writes a public method with its Code attribute
+   */
+  private static void method(DataOutputStream out, int name, int type,
+          int codeName, int maxStack, int maxLocals, byte[] code)
+          throws IOException {
+      out.writeShort(ACC_PUBLIC);
+      out.writeShort(name);
+      out.writeShort(type);
+      out.writeShort(1); // attributes
+      out.writeShort(codeName);
+      out.writeInt(12 + code.length);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(code.length);
+      out.write(code);
+      out.writeShort(0); // exception table
+      out.writeShort(0); // attributes
+  }
+
+  /**
+   * Method name: utf8
+   * @param text, modified UTF-8 text
+   * @return constant pool index of the text
+   */
+  private int utf8(String text) {
+      Integer index = entries.get(text);
+      if (index != null) {
+          return index;
+      }
+      try {
+          pool.writeByte(UTF8);
+          pool.writeUTF(text);
+      } catch (IOException e) { // in memory
+          throw new IllegalStateException(e);
+      }
+      entries.put(text, constantCount);
+      return constantCount++;
+  }
+
+  /**
+   * Method name: classConstant
+   * @param name, internal name of a class
+   * @return constant pool index of the class
+   */
+  private int classConstant(String name) {
+      return entry("C" + name, CLASS, utf8(name), -1);
+  }
+
+  /**
+   * Method name: methodConstant
+   * @param owner, constant pool index of the class
+   * @param name, method name
+   * @param type, method descriptor
+   * @return constant pool index of the method
+   */
+  private int methodConstant(int owner, String name, String type) {
+      int nameAndType = entry("N" + name + type, NAME_AND_TYPE, utf8(name),
+              utf8(type));
+      return entry("M" + owner + "." + nameAndType, METHOD_REF, owner,
+              nameAndType);
+  }
+
+  /**
+   * Method name: entry
+   * Description: adds a constant of one or two constant pool indices
+   * @param key, unique key of the constant
+   * @param tag, constant pool tag
+   * @param first, first index
+   * @param second, second index, -1 if none
+   * @return constant pool index of the constant
+   */
+  private int entry(String key, int tag, int first, int second) {
+      Integer index = entries.get(key);
+      if (index != null) {
+          return index;
+      }
+      try {
+          pool.writeByte(tag);
+          pool.writeShort(first);
+          if (second >= 0) {
+              pool.writeShort(second);
+          }
+      } catch (IOException e) { // in memory
+          throw new IllegalStateException(e);
+      }
+      entries.put(key, constantCount);
+      return constantCount++;
+  }
+
+  /**
+   * Method name: intConstant
+   * @param value, number
+   * @return constant pool index of the number
+   */
+  private int intConstant(int value) {
+      String key = "I" + value;
+      Integer index = entries.get(key);
+      if (index != null) {
+          return index;
+      }
+      try {
+          pool.writeByte(INTEGER);
+          pool.writeInt(value);
+      } catch (IOException e) { // in memory
+          throw new IllegalStateException(e);
+      }
+      entries.put(key, constantCount);
+      return constantCount++;
+  }
+
+  /**
+   * Method name: doubleConstant
+   * @param value, number
+   * @return constant pool index of the number, which takes two entries
+   */
+  private int doubleConstant(double value) {
+      String key = "D" + Double.doubleToRawLongBits(value);
+      Integer index = entries.get(key);
+      if (index != null) {
+          return index;
+      }
+      try {
+          pool.writeByte(DOUBLE);
+          pool.writeDouble(value);
+      } catch (IOException e) { // in memory
+          throw new IllegalStateException(e);
+      }
+      entries.put(key, constantCount);
+      int added = constantCount;
+      constantCount += 2;
+      return added;
+  }
+}
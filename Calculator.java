@@ -3,8 +3,22 @@
  * Compilation: javac Calculator.java
  * Usage:  java Calculator [mathematical expression]
  *         java Calculator
+ *         java Calculator --batch [file]
+ *         java Calculator --server [port | unix socket path]
+ *                 [--cache entries]
+ *         java Calculator --decimal [mathematical expression]
+ *         java Calculator --stream [file]
  *
- *         Note: [mathematical expression] must be in infix order
+ *         Note: [mathematical expression] must be in infix order; with no
+ *         arguments, expressions are read one per line until the end of the
+ *         input, see Repl; with --batch, [file] holds one expression per line
+ *         and one answer or error message is printed per line; with --server,
+ *         expressions are read from clients one per line, see CalculatorServer;
+ *         with --decimal, the answer is exact, see DecimalExpression; with
+ *         --stream, one expression of any length is read from [file], or from
+ *         standard input, see StreamingEvaluator; with
+ *         -Dcalculator.metrics=true, the time of each phase is recorded,
+ *         available over JMX and printed to standard error on exit, see Metrics
  * Description: Calculates [mathematical expression] and prints the answer to
  * the terminal; if argument is invalid (i.e. contains variables, double
  * decimals, or invalid double operators), throws an error
@@ -21,17 +35,43 @@
  *          e.g. ( ) and (( ) 1 + 2) are invalid
  */
 
-import java.util.Scanner;
-import java.util.Stack;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
 
 public class Calculator {
     private static final char OPEN_PARENTHESIS = '(';
     private static final char CLOSED_PARENTHESIS = ')';
     private static final char DECIMAL = '.';
-    private static final String PROMPT
-            = "Enter a mathematical expression in infix notation.";
+    private static final String PROMPT = "Enter mathematical expressions"
+            + " in infix notation, one per line; :help lists commands.";
     private static final String NO_INPUT = "No input was given.";
+    private static final String BATCH = "--batch";
+    private static final String BATCH_USAGE
+            = "Usage: java Calculator --batch [file]";
+    private static final String SERVER = "--server";
+    private static final String SERVER_USAGE
+            = "Usage: java Calculator --server [port | unix socket path]"
+            + " [--cache entries]";
+    private static final String CACHE = "--cache";
+    private static final String DECIMAL_MODE = "--decimal";
+    private static final String DECIMAL_USAGE
+            = "Usage: java Calculator --decimal [mathematical expression]";
+    private static final String STREAM = "--stream";
+    private static final String STREAM_USAGE
+            = "Usage: java Calculator --stream [file]";
+    private static final String LISTENING = "Listening on %s%n";
+    // evaluator shared by every caller of calculate
+    private static final Evaluator EVALUATOR = new Evaluator();
 
   /**
    * Method name: evaluate
@@ -43,39 +83,20 @@ public class Calculator {
    */
  public static double evaluate(double num1, double num2, String operator)
             throws DivisionByZeroException {
-     switch (operator) {
-         case "+": return num1 + num2;
-         case "-": return num1 - num2;
-         case "*": return num1 * num2;
-         case "/":
-             // invalid division by zero
-             if (num2 == 0) {
-                 throw new DivisionByZeroException();
-             }
-             return num1 / num2;
-        }
-        return 0;
+     int opcode = CompiledExpression.opcode(operator);
+     return CompiledExpression.apply(opcode, num1, num2);
   }
 
   /**
    * Method name: precedence
    * Description: obtains precedence of operator based on PEDMAS; also
-   * determines if character is an operator if precedence is > 0
+   * determines if character is an operator if precedence is > 0; looked up
+   * in the table of Operators.DEFAULT
    * @param operator, any character
    * @return 1 if + or -, 2 if * or /, -1 if invalid
    */
   public static int precedence(char operator) {
-      if (operator == '+' || operator == '-') {
-          return 1;
-      }
-      else if (operator == '*' || operator == '/') {
-          return 2;
-      }
-      else if (operator == OPEN_PARENTHESIS
-              || operator == CLOSED_PARENTHESIS) {
-          return 0;
-      }
-      else return -1;
+      return Operators.DEFAULT.precedence(operator);
   }
   /**
    * Method name: checkNumber
@@ -85,102 +106,34 @@ public class Calculator {
    * @return full digit in string
    */
   public static String checkNumber(char[] charArray, int index) {
-      String num = "";
+      int start = index;
       while (index < charArray.length && (Character.isDigit(charArray[index])
               || charArray[index] == DECIMAL)) {
-          num += charArray[index];
           index++;
       }
-      return num;
+      return new String(charArray, start, index - start);
   }
   /**
    * Method name: simpleFormat
    * Description: Helper method to convert double negatives into addition,
-   * to remove white spaces, and to check for invalid characters
+   * to remove white spaces, and to check for invalid characters; the work is
+   * done by Tokenizer
    * @throws InvalidCharacterException when argument has a non-digit or non-op
    * value
-   * @throws SyntaxErrorException when argument has double operators, double
-   * decimals, begins/ends with an operator, or is not in infix notation
+   * @throws SyntaxErrorException when argument is empty, has double
+   * operators, double decimals, begins/ends with an operator, or is not in
+   * infix notation
    * @param input, expression in infix notation
    * @return valid expression without any double negatives or spaces in infix
    * notation
    */
   public static LinkedList<String> simpleFormat(String input)
           throws InvalidCharacterException, SyntaxErrorException {
-      // removes all spaces
-      String str = input.replaceAll("\\s", "");
-      char[] charArray = str.toCharArray();
-
+      Tokenizer tokens = new Tokenizer();
+      tokens.tokenize(input);
       LinkedList<String> list = new LinkedList<>();
-      int index = 0;
-      // iterates through each character
-      while (index < charArray.length) {
-          char current = charArray[index];
-          // checks for doubles
-          if (index < charArray.length - 1) {
-              char next = charArray[index + 1];
-              // removes double negatives
-              if (current == '-' && next == '-') {
-                  list.add("+");
-                  index += 2;
-                  continue;
-              }
-              // invalid double operator
-              else if (current != '-' && precedence(current) > 0
-                      && precedence(next) > 0) {
-                  throw new SyntaxErrorException();
-              }
-              // valid negative number after operator
-              else if (index > 0  && current == '-'
-                      && ((charArray[index - 1] == OPEN_PARENTHESIS
-                      || precedence(charArray[index - 1]) > 0))) {
-                  String number = checkNumber(charArray, index + 1);
-                  index += number.length() + 1;
-                  list.add("-" + number);
-                  continue;
-              }
-              // subtraction after end parenthesis
-              else if (index > 0  && current == '-'
-                      && charArray[index - 1] == CLOSED_PARENTHESIS) {
-                  String number = checkNumber(charArray, index + 1);
-                  index += number.length() + 1;
-                  list.add("-");
-                  list.add(number);
-                  continue;
-              }
-              // beginning negative number
-              else if (index == 0 && current == '-'
-                      && checkNumber(charArray, index + 1).length() > 0) {
-                  String num = checkNumber(charArray, index + 1);
-                  list.add("-" + num);
-                  index += num.length() + 1;
-                  continue;
-              }
-              // invalid double decimal
-              else if (current == DECIMAL && next == DECIMAL) {
-                  throw new SyntaxErrorException();
-              }
-          }
-          // valid operator
-          if (precedence(current) >= 0 || current == DECIMAL) {
-              list.add("" + current);
-          }
-          // reached number
-          else if (Character.isDigit(current)) {
-              String num = checkNumber(charArray, index);
-              list.add(num);
-              index += num.length() - 1;
-          }
-          else { // invalid
-              String invalidChar = Character.toString(current);
-              throw new InvalidCharacterException(invalidChar);
-          }
-        index++;
-      }
-      // checks if expression begins or ends with an invalid operator
-      if ((charArray[0] != '-' && precedence(charArray[0]) > 0)
-              || precedence(charArray[charArray.length - 1]) > 0) {
-          throw new SyntaxErrorException();
+      for (int i = 0; i < tokens.size(); i++) {
+          list.add(tokens.text(i));
       }
       return list;
   }
@@ -188,7 +141,8 @@ public class Calculator {
   /**
    * Method name: postfix
    * Description: changes infix expression to postfix expression based
-   * on precedence, removes parentheses
+   * on precedence, removes parentheses; runs in time and memory linear in
+   * the number of tokens
    *   Examples: 24 + 2 => 24 2 +
    *             2 + 4 * 3 => 2 4 3 * +
    *             (2 + 4) * 3 => 2 4 + 3 *
@@ -199,102 +153,245 @@ public class Calculator {
    */
   public static String postfix(LinkedList<String> input)
           throws SyntaxErrorException {
-      String output = "";
-      Stack<Character> stack = new Stack<>();
-    // iterates through character array
-    for (int i = 0; i < input.size(); i++) {
+      StringBuilder output = new StringBuilder();
+      char[] stack = new char[input.size()];
+      int top = 0;
+    // iterates through each token
+    for (String current : input) {
         // checks for PEDMAS
-        String current = input.get(i);
         char firstChar = current.charAt(0);
         // not a negative number or multi-digit number; check for op precedence
         if (current.length() == 1 && precedence(firstChar) > 0) {
             // stack has higher priority than current, add top to output
-            while (!stack.empty()
-                    && precedence(stack.peek()) >= precedence(firstChar)) {
-                output += stack.pop() + " "; // space out numbers & operators
+            while (top > 0
+                    && precedence(stack[top - 1]) >= precedence(firstChar)) {
+                // space out numbers & operators
+                output.append(stack[--top]).append(' ');
             }
-            stack.push(firstChar);
+            stack[top++] = firstChar;
         }
         // reached a number
         else if (current.length() > 1 || Character.isDigit(firstChar)) {
-            output += current + " ";
+            output.append(current).append(' ');
         }
         else if (firstChar == OPEN_PARENTHESIS) {
-            stack.push(firstChar);
+            stack[top++] = firstChar;
         }
         else if (firstChar == CLOSED_PARENTHESIS) {
-            if (stack.empty()) {
+            if (top == 0) {
                 throw new SyntaxErrorException();
             }
-            char operator = stack.pop();
+            char operator = stack[--top];
             // backtracks until an open parenthesis is met
             while (operator != OPEN_PARENTHESIS) {
-                output += operator + " ";
-                if (stack.empty()) { // unbalanced
+                output.append(operator).append(' ');
+                if (top == 0) { // unbalanced
                     throw new SyntaxErrorException();
                 }
-                operator = stack.pop();
+                operator = stack[--top];
             }
         }
     }
-    while (!stack.empty()) {
-        if (stack.peek() == OPEN_PARENTHESIS) {
+    while (top > 0) {
+        if (stack[top - 1] == OPEN_PARENTHESIS) {
             throw new SyntaxErrorException(); // unbalanced
         }
-        output += stack.pop() + " ";
+        output.append(stack[--top]).append(' ');
     }
-    return output;
+    return output.toString();
+  }
+
+  /**
+   * Method name: compile
+   * Description: checks the format of an infix expression and compiles it
+   * into a program that can be evaluated many times without re-parsing
+   * @param input, expression in infix notation
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @return compiled expression
+   */
+  public static CompiledExpression compile(String input)
+          throws InvalidCharacterException, SyntaxErrorException {
+      Tokenizer tokens = new Tokenizer();
+      tokens.tokenize(input);
+      return CompiledExpression.fromTokens(tokens);
+  }
+
+  /**
+   * Method name: calculate
+   * Description: evaluates an infix expression without throwing: an
+   * invalid expression or a division by zero is returned as an error code
+   * with its position, and no exception or stack trace is created. Each
+   * thread reuses its own scratch, see Evaluator; records metrics if
+   * enabled.
+   * @param input, expression in infix notation
+   * @return value of the expression, or its error
+   */
+  public static Result calculate(CharSequence input) {
+      return EVALUATOR.calculate(input);
   }
 
   /**
    * Method name: parseString
    * Description: evaluates postfix expression
    * @param expression in postfix format
+   * @throws SyntaxErrorException when an operator is missing an operand or
+   * the expression is empty
+   * @throws DivisionByZeroException when trying to divide by zero
    * @return evaluated mathematical expression
    */
   public static double parseString(String expression)
-          throws SyntaxErrorException {
-      // separate numbers and operators
-      String split[] = expression.split(" ");
-      Stack<Double> stack = new Stack<>();
-      // iterates through each operator and number
-      for (int i = 0; i < split.length; i++) {
-          // reached an operator
-          if (split[i].equals("+") || split[i].equals("-")
-                  || split[i].equals("*") || split[i].equals("/")) {
-              if (stack.size() > 1) { // must have two numbers to evaluate
-                  // quantity
-                  double num2 = stack.pop();
-                  double num1 = stack.pop();
-                  try {
-                      double ans = evaluate(num1, num2, split[i]);
-                      stack.push(ans);
-                  } catch (DivisionByZeroException e) { // division by 0
-                      System.out.println(e.getMessage());
-                      System.exit(1);
+          throws SyntaxErrorException, DivisionByZeroException {
+      return CompiledExpression.fromPostfix(expression).evaluate();
+  }
+
+  /**
+   * Method name: batch
+   * Description: evaluates every line of a file in parallel, printing one
+   * answer or error message per line, and exits
+   * @param args, --batch followed by a file name
+   */
+  private static void batch(String[] args) {
+      if (args.length != 2) {
+          System.out.println(BATCH_USAGE);
+          System.exit(1);
+      }
+      ForkJoinPool pool
+              = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+      try {
+          new BatchEvaluator(pool).evaluate(Paths.get(args[1]), out);
+          System.exit(0);
+      }
+      catch (IOException e) {
+          System.out.println(e.getMessage());
+          System.exit(1);
+      }
+  }
+
+  /**
+   * Method name: serve
+   * Description: runs the calculator as a server until the process is
+   * stopped
+   * @param args, --server optionally followed by a port or socket path and
+   * --cache with the number of answers to cache
+   */
+  private static void serve(String[] args) {
+      String address = Integer.toString(CalculatorServer.DEFAULT_PORT);
+      ResultCache cache = null;
+      try {
+          for (int i = 1; i < args.length; i++) {
+              if (args[i].equals(CACHE)) {
+                  if (i + 1 == args.length) {
+                      throw new IllegalArgumentException();
                   }
+                  cache = new ResultCache(Integer.parseInt(args[++i]));
               }
-              else {
-                  throw new SyntaxErrorException();
+              else if (i == 1) {
+                  address = args[i];
               }
-          }
-          // reached a numerical value
-          else {
-              // invalid empty string
-              if (split[i].length() == 0) {
-                  throw new SyntaxErrorException();
+              else {
+                  throw new IllegalArgumentException();
               }
-              stack.push(Double.parseDouble(split[i]));
           }
       }
-      if (!stack.empty()) {
-          return stack.pop();
+      catch (IllegalArgumentException e) { // also NumberFormatException
+          System.out.println(SERVER_USAGE);
+          System.exit(1);
+      }
+      try (CalculatorServer server = new CalculatorServer(
+              CalculatorServer.address(address), cache)) {
+          System.out.printf(LISTENING, server.localAddress());
+          server.serve();
       }
-      else {
-          throw new SyntaxErrorException();
+      catch (IOException | IllegalArgumentException e) {
+          System.out.println(e.getMessage());
+          System.exit(1);
+      }
+  }
+
+  /**
+   * Method name: decimal
+   * Description: prints the exact decimal answer of an expression, or its
+   * error message, and exits
+   * @param args, --decimal followed by the expression
+   */
+  private static void decimal(String[] args) {
+      String arg = "";
+      for (int i = 1; i < args.length; i++) {
+          arg += args[i];
+      }
+      if (arg.length() == 0) {
+          System.out.println(DECIMAL_USAGE);
+          System.exit(1);
+      }
+      try {
+          BigDecimal answer = DecimalExpression.compile(arg).evaluate();
+          System.out.println(arg + " = " + answer.toPlainString());
+          System.exit(0);
+      }
+      catch (InvalidCharacterException | SyntaxErrorException
+              | DivisionByZeroException | NumberFormatException e) {
+          System.out.println(e.getMessage());
+          System.exit(1);
+      }
+  }
+
+  /**
+   * Method name: stream
+   * Description: evaluates one expression read in chunks from a file, or
+   * from standard input, prints its answer or error message, and exits
+   * @param args, --stream optionally followed by a file name
+   */
+  private static void stream(String[] args) {
+      if (args.length > 2) {
+          System.out.println(STREAM_USAGE);
+          System.exit(1);
+      }
+      try (ReadableByteChannel in = args.length == 2
+              ? FileChannel.open(Paths.get(args[1]))
+              : Channels.newChannel(System.in)) {
+          Result result = new StreamingEvaluator().calculate(in);
+          System.out.println(result);
+          System.exit(result.ok() ? 0 : 1);
+      }
+      catch (IOException e) {
+          System.out.println(e.getMessage());
+          System.exit(1);
       }
   }
 
+  /**
+   * Method name: repl
+   * Description: evaluates expressions typed one per line until the end of
+   * standard input, and exits
+   */
+  private static void repl() {
+      System.out.println(PROMPT);
+      BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+      try {
+          new Repl(in, System.out).run();
+          System.exit(0);
+      }
+      catch (IOException e) {
+          System.out.println(e.getMessage());
+          System.exit(1);
+      }
+  }
+
+  /**
+   * Method name: metrics
+   * Description: makes the metrics available over JMX and prints them to
+   * standard error when the calculator exits
+   */
+  private static void metrics() {
+      Metrics.register();
+      Runtime.getRuntime().addShutdownHook(new Thread(
+              () -> System.err.print(Metrics.get().getReport())));
+  }
+
   /**
    * Method name: main
    * Description: checks for number of arguments and prints out evaluated
@@ -303,33 +400,41 @@ public class Calculator {
    *
    */
   public static void main(String[] args)  {
-      String arg = "";
-      // no in-line command given, ask for an expression
+      if (Metrics.ENABLED) {
+          metrics();
+      }
+      if (args.length > 0 && args[0].equals(BATCH)) {
+          batch(args);
+      }
+      if (args.length > 0 && args[0].equals(SERVER)) {
+          serve(args);
+      }
+      if (args.length > 0 && args[0].equals(DECIMAL_MODE)) {
+          decimal(args);
+      }
+      if (args.length > 0 && args[0].equals(STREAM)) {
+          stream(args);
+      }
+      // no in-line command given, ask for expressions
       if (args.length == 0) {
-          System.out.println(PROMPT);
-          Scanner sc = new Scanner(System.in);
-          arg  = sc.nextLine();
+          repl();
       }
       // expression given
-      else {
-          for (String str : args) {
-              arg += str;
-          }
+      String arg = "";
+      for (String str : args) {
+          arg += str;
       }
       if (arg.length() == 0) {
           System.out.println(NO_INPUT);
           System.exit(0);
       }
       // evaluates expression
-      try {
-          String postfixFormat = postfix(simpleFormat(arg));
-          double ans = parseString(postfixFormat);
-          System.out.println(arg + " = " + ans);
+      Result result = calculate(arg);
+      if (result.ok()) {
+          System.out.println(arg + " = " + result.value());
           System.exit(0);
       }
-      catch (InvalidCharacterException | SyntaxErrorException e) {
-          System.out.println(e.getMessage());
-          System.exit(1);
-      }
+      System.out.println(result.message());
+      System.exit(1);
   }
 }
@@ -0,0 +1,249 @@
+/**
+ * Filename: CalculatorServer.java
+ * Usage: java Calculator --server [port]
+ *        java Calculator --server [unix socket path]
+ * Description: this file contains the server mode of the calculator, which
+ * keeps one warm JVM evaluating expressions for local clients. It listens
+ * on a loopback TCP port or a Unix domain socket and handles each
+ * connection on its own virtual thread.
+ *
+ * Protocol: the client sends expressions in infix notation, one per line.
+ * For every line the server sends back one line, in the same order: the
+ * answer, or "ERROR " followed by the error message. Requests may be
+ * pipelined; the server answers everything it has received with a single
+ * write, without waiting for the client between lines. An invalid
+ * expression, including a division by zero, only produces an error line.
+ *
+ * Given a ResultCache, the server answers repeated expressions from it,
+ * whichever connection sent them first.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public final class CalculatorServer implements Closeable {
+    public static final int DEFAULT_PORT = 8686;
+
+    private static final int BUFFER_SIZE = 1 << 14;
+    // longest line accepted before the connection is closed
+    private static final int MAX_LINE = 1 << 20;
+    private static final String ERROR = "ERROR ";
+    private static final String LINE_TOO_LONG = "Line too long.";
+
+    private final ServerSocketChannel server;
+    private final Path socketFile;
+    private final ResultCache cache;
+
+  /**
+   * Constructor creates a server listening on the given address
+   * @param address, loopback InetSocketAddress or UnixDomainSocketAddress
+   * @throws IOException when the address cannot be bound
+   */
+  public CalculatorServer(SocketAddress address) throws IOException {
+      this(address, null);
+  }
+
+  /**
+   * Constructor creates a server listening on the given address that
+   * answers repeated expressions from a cache
+   * @param address, loopback InetSocketAddress or UnixDomainSocketAddress
+   * @param cache, answers shared by all connections, or null for none
+   * @throws IOException when the address cannot be bound
+   */
+  public CalculatorServer(SocketAddress address, ResultCache cache)
+          throws IOException {
+      this.cache = cache;
+      if (address instanceof UnixDomainSocketAddress) {
+          server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+          socketFile = ((UnixDomainSocketAddress) address).getPath();
+      }
+      else {
+          server = ServerSocketChannel.open();
+          socketFile = null;
+      }
+      try {
+          server.bind(address);
+      } catch (IOException e) {
+          server.close();
+          throw e;
+      }
+  }
+
+  /**
+   * Method name: address
+   * Description: parses a command line argument into a socket address
+   * @param arg, port number, or path of a Unix domain socket
+   * @return loopback address with the port, or Unix domain socket address
+   */
+  public static SocketAddress address(String arg) {
+      if (!arg.isEmpty() && arg.chars().allMatch(Character::isDigit)) {
+          return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                  Integer.parseInt(arg));
+      }
+      return UnixDomainSocketAddress.of(arg);
+  }
+
+  /**
+   * Method name: localAddress
+   * @return address the server is bound to, with the actual port
+   * @throws IOException when the server is closed
+   */
+  public SocketAddress localAddress() throws IOException {
+      return server.getLocalAddress();
+  }
+
+  /**
+   * Method name: serve
+   * Description: accepts connections until the server is closed, starting
+   * a virtual thread for each
+   * @throws IOException when accepting fails for a reason other than the
+   * server being closed
+   */
+  public void serve() throws IOException {
+      while (true) {
+          SocketChannel client;
+          try {
+              client = server.accept();
+          } catch (ClosedChannelException e) { // closed by close()
+              return;
+          }
+          Thread.ofVirtual().name("calculator-client")
+                  .start(() -> handle(client, cache));
+      }
+  }
+
+  /**
+   * Method name: close
+   * Description: stops accepting connections; connections already open are
+   * served until their clients close them
+   * @throws IOException when the socket cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+      server.close();
+      if (socketFile != null) {
+          Files.deleteIfExists(socketFile);
+      }
+  }
+
+  /**
+   * Method name: handle
+   * Description: answers the lines sent on one connection until the client
+   * closes it; a failure closes only this connection
+   * @param client, connection to serve
+   * @param cache, answers shared by all connections, or null for none
+   */
+  private static void handle(SocketChannel client, ResultCache cache) {
+      try (client) {
+          ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+          ByteLine line = new ByteLine(in);
+          Tokenizer tokens = new Tokenizer();
+          StringBuilder out = new StringBuilder();
+          while (true) {
+              int read = client.read(in);
+              int end = in.position();
+              int start = 0;
+              // answers every complete line received so far
+              for (int i = 0; i < end; i++) {
+                  if (in.get(i) == '\n') {
+                      int lineEnd = lineEnd(in, start, i);
+                      respond(tokens, cache, line.of(start, lineEnd), out);
+                      start = i + 1;
+                  }
+              }
+              // the last line need not end with a newline
+              if (read < 0 && start < end) {
+                  int lineEnd = lineEnd(in, start, end);
+                  respond(tokens, cache, line.of(start, lineEnd), out);
+                  start = end;
+              }
+              // a line too long for the buffer is refused
+              boolean tooLong = start == 0 && end == in.capacity()
+                      && in.capacity() >= MAX_LINE;
+              if (tooLong) {
+                  out.append(ERROR).append(LINE_TOO_LONG).append('\n');
+              }
+              write(client, out);
+              if (read < 0 || tooLong) {
+                  return;
+              }
+              // keeps the partial line at the start of the buffer
+              in.limit(end).position(start);
+              in.compact();
+              if (!in.hasRemaining()) {
+                  ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+                  in.flip();
+                  larger.put(in);
+                  in = larger;
+                  line = new ByteLine(in);
+              }
+          }
+      } catch (IOException e) {
+          // client went away; nothing to answer
+      }
+  }
+
+  /**
+   * Method name: lineEnd
+   * @param in, received bytes
+   * @param start, offset of the first byte of the line
+   * @param end, offset of the newline or end of input
+   * @return end, less a trailing carriage return
+   */
+  private static int lineEnd(ByteBuffer in, int start, int end) {
+      return end > start && in.get(end - 1) == '\r' ? end - 1 : end;
+  }
+
+  /**
+   * Method name: respond
+   * Description: evaluates one expression and appends its answer or error
+   * @param tokens, tokenizer of the connection
+   * @param cache, answers shared by all connections, or null for none
+   * @param expression, expression in infix notation
+   * @param out, responses not yet written
+   */
+  static void respond(Tokenizer tokens, ResultCache cache,
+          CharSequence expression, StringBuilder out) {
+      Result result = cache != null ? cache.calculate(tokens, expression)
+              : Metrics.calculate(tokens, expression);
+      if (result.ok()) {
+          out.append(result.value());
+      }
+      else {
+          out.append(ERROR).append(result.message());
+      }
+      out.append('\n');
+  }
+
+  /**
+   * Method name: write
+   * Description: sends and clears the pending responses
+   * @param client, connection to write to
+   * @param out, responses not yet written
+   * @throws IOException when the client has gone away
+   */
+  private static void write(SocketChannel client, StringBuilder out)
+          throws IOException {
+      if (out.length() == 0) {
+          return;
+      }
+      ByteBuffer bytes = ByteBuffer.wrap(
+              out.toString().getBytes(StandardCharsets.UTF_8));
+      while (bytes.hasRemaining()) {
+          client.write(bytes);
+      }
+      out.setLength(0);
+  }
+}
@@ -0,0 +1,30 @@
+/**
+ * Filename: CircularReferenceException.java
+ * Usage: throws an exception when a cell of a sheet would depend on itself
+ * Description: this file contains an exception for when a cell's expression
+ * references the cell itself, directly or through other cells
+ */
+
+ public class CircularReferenceException extends Exception {
+   private static final String EXCEPTION_MSG = "Circular reference to %s.";
+
+   private String cell;
+   /**
+    * Constructor creates a new exception when a cell would depend on itself
+    * @param cell, name of the cell
+    */
+    public CircularReferenceException(String cell) {
+      super(String.format(EXCEPTION_MSG, cell));
+      this.cell = cell;
+    }
+
+    /**
+     * Method name: toString
+     * Description: overrides toString method to throw Exception
+     * @return String with error message containing the name of the cell
+     */
+     @Override
+     public String toString() {
+       return String.format(EXCEPTION_MSG, this.cell);
+     }
+ }
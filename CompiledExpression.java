@@ -0,0 +1,549 @@
+/**
+ * Filename: CompiledExpression.java
+ * Usage: CompiledExpression expr = Calculator.compile("(24.3 + 4) / 78");
+ *        double ans = expr.evaluate();
+ * Description: this file contains an expression that has already been
+ * checked and converted into a flat program of opcodes with a constant pool
+ * of numbers. A formula compiled with variables also loads their values,
+ * see Formula. A compiled expression is immutable and thread-safe, so it can
+ * be evaluated any number of times, from any thread, without re-tokenizing
+ * or re-parsing the original expression.
+ */
+
+import java.util.Arrays;
+
+public final class CompiledExpression {
+    // opcodes; PUSH is followed by an index into the constant pool
+    static final int PUSH = 0;
+    static final int ADD = 1;
+    static final int SUBTRACT = 2;
+    static final int MULTIPLY = 3;
+    static final int DIVIDE = 4;
+    // followed by the index of a variable, or its complement if negated
+    static final int LOAD = 8;
+    // followed by a temporary; SAVE copies the top of the stack into it,
+    // RECALL pushes it back, so a shared subexpression is computed once
+    static final int SAVE = 9;
+    static final int RECALL = 10;
+
+    // operand stack reused by evaluate() on each thread
+    private static final ThreadLocal<double[]> SCRATCH
+            = ThreadLocal.withInitial(() -> new double[16]);
+    static final double[] NO_VALUES = {};
+
+    final int[] code;
+    final double[] constants;
+    private final int maxStack;
+    // temporaries are kept at the end of the operand stack
+    final int temps;
+    // dispatches opcodes from Operators.FIRST_OPCODE
+    final Operators operators;
+
+  /**
+   * Constructor creates a compiled expression from an already validated
+   * program
+   * @param code, opcodes in postfix order
+   * @param constants, numbers referenced by PUSH instructions
+   * @param maxStack, deepest operand stack the program reaches
+   */
+  CompiledExpression(int[] code, double[] constants, int maxStack) {
+      this(code, constants, maxStack, 0);
+  }
+
+  /**
+   * Constructor creates a compiled expression from an already validated
+   * program that keeps shared subexpressions in temporaries
+   * @param code, opcodes in postfix order
+   * @param constants, numbers referenced by PUSH instructions
+   * @param depth, deepest operand stack the program reaches
+   * @param temps, number of temporaries referenced by SAVE and RECALL
+   */
+  CompiledExpression(int[] code, double[] constants, int depth, int temps) {
+      this(code, constants, depth, temps, Operators.DEFAULT);
+  }
+
+  /**
+   * Constructor creates a compiled expression from an already validated
+   * program that may use registered operators and functions
+   * @param code, opcodes in postfix order
+   * @param constants, numbers referenced by PUSH instructions
+   * @param depth, deepest operand stack the program reaches
+   * @param temps, number of temporaries referenced by SAVE and RECALL
+   * @param operators, registry of the opcodes from Operators.FIRST_OPCODE
+   */
+  CompiledExpression(int[] code, double[] constants, int depth, int temps,
+          Operators operators) {
+      this.code = code;
+      this.constants = constants;
+      this.maxStack = depth + temps;
+      this.temps = temps;
+      this.operators = operators;
+  }
+
+  /**
+   * Method name: opcode
+   * Description: obtains the opcode of an operator token
+   * @param token, operator or number in string format
+   * @return opcode of operator, -1 if token is not an operator
+   */
+  static int opcode(String token) {
+      return token.length() == 1 ? opcode(token.charAt(0)) : -1;
+  }
+
+  /**
+   * Method name: opcode
+   * Description: obtains the opcode of an operator character
+   * @param operator, any character
+   * @return opcode of operator, -1 if character is not an operator
+   */
+  static int opcode(char operator) {
+      switch (operator) {
+          case '+': return ADD;
+          case '-': return SUBTRACT;
+          case '*': return MULTIPLY;
+          case '/': return DIVIDE;
+      }
+      return -1;
+  }
+
+  /**
+   * Method name: apply
+   * Description: completes the arithmetic of two numbers using the given
+   * opcode
+   * @param opcode, one of ADD, SUBTRACT, MULTIPLY or DIVIDE
+   * @param num1, left operand
+   * @param num2, right operand
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return result of arguments based on given opcode
+   */
+  static double apply(int opcode, double num1, double num2)
+          throws DivisionByZeroException {
+      // invalid division by zero
+      if (opcode == DIVIDE && num2 == 0) {
+          throw new DivisionByZeroException();
+      }
+      return operate(opcode, num1, num2);
+  }
+
+  /**
+   * Method name: operate
+   * Description: applies an operator whose divisor, if any, is not zero
+   * @param opcode, ADD, SUBTRACT, MULTIPLY or DIVIDE
+   * @param num1, first number
+   * @param num2, second number
+   * @return result of arguments based on given opcode
+   */
+  static double operate(int opcode, double num1, double num2) {
+      switch (opcode) {
+          case ADD: return num1 + num2;
+          case SUBTRACT: return num1 - num2;
+          case MULTIPLY: return num1 * num2;
+          case DIVIDE: return num1 / num2;
+      }
+      return 0;
+  }
+
+  /**
+   * Method name: fromPostfix
+   * Description: compiles a postfix expression, as produced by
+   * Calculator.postfix, into a program
+   * @param expression in postfix format
+   * @throws SyntaxErrorException when an operator is missing an operand or
+   * the expression is empty
+   * @return compiled expression
+   */
+  static CompiledExpression fromPostfix(String expression)
+          throws SyntaxErrorException {
+      int length = expression.length();
+      int[] code = new int[length + 1];
+      double[] constants = new double[length / 2 + 1];
+      int size = 0;
+      int constantCount = 0;
+      int depth = 0;
+      int maxStack = 0;
+      int start = 0;
+      // iterates through each number and operator separated by a space
+      while (true) {
+          int end = expression.indexOf(' ', start);
+          if (end < 0) {
+              end = length;
+          }
+          int opcode = end - start == 1 ? opcode(expression.charAt(start)) : -1;
+          // reached an operator
+          if (opcode > 0) {
+              if (depth < 2) { // must have two numbers to evaluate
+                  throw new SyntaxErrorException();
+              }
+              code[size++] = opcode;
+              depth--;
+          }
+          // reached a numerical value
+          else if (end > start) {
+              constants[constantCount]
+                      = Double.parseDouble(expression.substring(start, end));
+              code[size++] = PUSH;
+              code[size++] = constantCount++;
+              depth++;
+              maxStack = Math.max(maxStack, depth);
+          }
+          // invalid empty string, unless only spaces remain
+          else if (!isBlank(expression, start)) {
+              throw new SyntaxErrorException();
+          }
+          else {
+              break;
+          }
+          if (end == length) {
+              break;
+          }
+          start = end + 1;
+      }
+      if (depth == 0) {
+          throw new SyntaxErrorException();
+      }
+      return new CompiledExpression(Arrays.copyOf(code, size),
+              Arrays.copyOf(constants, constantCount), maxStack);
+  }
+
+  /**
+   * Method name: isBlank
+   * @param expression in postfix format
+   * @param start, offset to check from
+   * @return true if expression has only spaces from start to its end
+   */
+  private static boolean isBlank(String expression, int start) {
+      for (int i = start; i < expression.length(); i++) {
+          if (expression.charAt(i) != ' ') {
+              return false;
+          }
+      }
+      return true;
+  }
+
+  /**
+   * Method name: fromTokens
+   * Description: converts tokenized infix expression straight into a
+   * program, following the same precedence rules as Calculator.postfix
+   * without building the postfix string
+   * @param tokens, tokenized expression in infix notation
+   * @throws SyntaxErrorException when parentheses are unbalanced, an
+   * operator is missing an operand or the expression is empty
+   * @return compiled expression
+   */
+  static CompiledExpression fromTokens(Tokenizer tokens)
+          throws SyntaxErrorException {
+      CompiledExpression program = compile(tokens);
+      if (program == null) {
+          throwError(tokens);
+      }
+      return program;
+  }
+
+  /**
+   * Method name: throwError
+   * Description: throws the exception for the error found by compile
+   * @param tokens, tokens compile failed on
+   * @throws SyntaxErrorException always, unless the error is a malformed
+   * number, which Double reports with a NumberFormatException
+   */
+  static void throwError(Tokenizer tokens) throws SyntaxErrorException {
+      int token = tokens.errorToken();
+      if (token >= 0 && tokens.kind(token) == Tokenizer.NUMBER
+              && Double.isNaN(tokens.value(token))) {
+          Double.parseDouble(tokens.text(token));
+      }
+      throw new SyntaxErrorException();
+  }
+
+  /**
+   * Method name: compile
+   * Description: converts tokenized infix expression into a program, as
+   * fromTokens does, but reports an error by returning null and keeping
+   * the error in the tokenizer instead of throwing. Every operator is
+   * checked to have two operands and every number to be well formed as it
+   * is emitted, in program order, the way Calculator.parseString walks a
+   * postfix expression, and so is every function to have as many arguments
+   * as its arity; unbalanced parentheses, and commas outside the arguments
+   * of a function, are reported first.
+   * @param tokens, tokenized expression in infix notation
+   * @return compiled expression, or null when the tokens are not a valid
+   * expression
+   */
+  static CompiledExpression compile(Tokenizer tokens) {
+      Operators registry = tokens.operators();
+      int size = tokens.size();
+      int[] code = new int[size * 2];
+      double[] constants = new double[size];
+      // token number of each operator, function and open parenthesis not
+      // yet emitted
+      int[] operators = new int[size];
+      // operands before each open parenthesis, and commas after it
+      int[] opened = new int[size];
+      int[] commas = new int[size];
+      int length = 0;
+      int constantCount = 0;
+      int top = 0;
+      int depth = 0;
+      int maxStack = 0;
+      // first operator missing an operand, or malformed number
+      int invalid = -1;
+      for (int i = 0; i < size; i++) {
+          int kind = tokens.kind(i);
+          if (kind == Tokenizer.NUMBER) {
+              double value = tokens.value(i);
+              if (Double.isNaN(value) && invalid < 0) {
+                  invalid = i;
+              }
+              constants[constantCount] = value;
+              code[length++] = PUSH;
+              code[length++] = constantCount++;
+              maxStack = Math.max(maxStack, ++depth);
+          }
+          else if (kind == Tokenizer.VARIABLE) {
+              code[length++] = LOAD;
+              code[length++] = tokens.variable(i);
+              maxStack = Math.max(maxStack, ++depth);
+          }
+          else if (kind == Tokenizer.OPEN_PARENTHESIS) {
+              opened[top] = depth;
+              commas[top] = 0;
+              operators[top++] = i;
+          }
+          else if (kind == Tokenizer.COMMA) {
+              // backtracks until the open parenthesis of the arguments
+              while (top > 0 && tokens.kind(operators[top - 1])
+                      != Tokenizer.OPEN_PARENTHESIS) {
+                  if (depth-- < 2 && invalid < 0) {
+                      invalid = operators[top - 1];
+                  }
+                  code[length++] = tokens.kind(operators[--top]);
+              }
+              if (top < 2 || !registry.isFunction(
+                      tokens.kind(operators[top - 2]))) { // not arguments
+                  tokens.fail(Result.SYNTAX_ERROR, i);
+                  return null;
+              }
+              commas[top - 1]++;
+          }
+          else if (registry.isFunction(kind)) { // applied after ')'
+              operators[top++] = i;
+          }
+          else if (kind == Tokenizer.CLOSED_PARENTHESIS) {
+              // backtracks until an open parenthesis is met
+              while (top > 0 && tokens.kind(operators[top - 1])
+                      != Tokenizer.OPEN_PARENTHESIS) {
+                  if (depth-- < 2 && invalid < 0) {
+                      invalid = operators[top - 1];
+                  }
+                  code[length++] = tokens.kind(operators[--top]);
+              }
+              if (top == 0) { // unbalanced
+                  tokens.fail(Result.SYNTAX_ERROR, i);
+                  return null;
+              }
+              int open = --top;
+              if (top > 0 && registry.isFunction(
+                      tokens.kind(operators[top - 1]))) {
+                  int function = operators[--top];
+                  int opcode = tokens.kind(function);
+                  int arity = registry.arity(opcode);
+                  if ((depth - opened[open] != arity
+                          || commas[open] != Math.max(arity - 1, 0))
+                          && invalid < 0) {
+                      invalid = function;
+                  }
+                  code[length++] = opcode;
+                  depth = opened[open] + 1;
+                  maxStack = Math.max(maxStack, depth);
+              }
+          }
+          else if (kind != Tokenizer.DECIMAL) { // operator
+              // stack has higher priority than current, add top to output;
+              // a right associative operator waits for an equal one
+              int precedence = registry.precedenceOf(kind);
+              boolean right = registry.isRightAssociative(kind);
+              while (top > 0 && (registry.precedenceOf(
+                      tokens.kind(operators[top - 1])) > precedence
+                      || !right && registry.precedenceOf(
+                      tokens.kind(operators[top - 1])) == precedence)) {
+                  if (depth-- < 2 && invalid < 0) {
+                      invalid = operators[top - 1];
+                  }
+                  code[length++] = tokens.kind(operators[--top]);
+              }
+              operators[top++] = i;
+          }
+      }
+      while (top > 0) {
+          int operator = operators[--top];
+          if (tokens.kind(operator) == Tokenizer.OPEN_PARENTHESIS) {
+              tokens.fail(Result.SYNTAX_ERROR, operator); // unbalanced
+              return null;
+          }
+          if (depth-- < 2 && invalid < 0) {
+              invalid = operator;
+          }
+          code[length++] = tokens.kind(operator);
+      }
+      if (invalid >= 0 || depth <= 0) { // nothing left to answer
+          tokens.fail(Result.SYNTAX_ERROR, invalid >= 0 ? invalid : -1);
+          return null;
+      }
+      return new CompiledExpression(Arrays.copyOf(code, length),
+              Arrays.copyOf(constants, constantCount), maxStack, 0,
+              registry);
+  }
+
+  /**
+   * Method name: usesOperations
+   * @return true if the program uses an operator or function registered
+   * beyond the four of Operators.DEFAULT
+   */
+  boolean usesOperations() {
+      for (int pc = 0; pc < code.length; pc++) {
+          int opcode = code[pc];
+          if (opcode >= Operators.FIRST_OPCODE) {
+              return true;
+          }
+          if (opcode == PUSH || opcode >= LOAD) {
+              pc++;
+          }
+      }
+      return false;
+  }
+
+  /**
+   * Method name: optimize
+   * Description: folds constant subexpressions and computes repeated
+   * subexpressions once, see ExpressionTree. The answer, and whether a
+   * division by zero is reported, stay exactly the same. A program that
+   * uses registered operators or functions is returned as it is.
+   * @return optimized expression
+   */
+  public CompiledExpression optimize() {
+      if (usesOperations()) { // the tree knows only the four operators
+          return this;
+      }
+      return ExpressionTree.of(this).optimize().compile();
+  }
+
+  /**
+   * Method name: maxStack
+   * @return size of the operand stack needed by evaluate(double[])
+   */
+  public int maxStack() {
+      return maxStack;
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: runs the program on an operand stack kept for the calling
+   * thread, so evaluating does not allocate
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate() throws DivisionByZeroException {
+      return evaluate(scratch(), NO_VALUES);
+  }
+
+  /**
+   * Method name: scratch
+   * @return operand stack of at least maxStack() numbers kept for the
+   * calling thread
+   */
+  double[] scratch() {
+      double[] stack = SCRATCH.get();
+      if (stack.length < maxStack) {
+          stack = new double[maxStack];
+          SCRATCH.set(stack);
+      }
+      return stack;
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: runs the program on the given operand stack and returns
+   * its answer; the top of the operand stack is the answer, as in
+   * Calculator.parseString
+   * @param stack, operand stack of at least maxStack() numbers; its contents
+   * are overwritten
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(double[] stack) throws DivisionByZeroException {
+      return evaluate(stack, NO_VALUES);
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: runs the program with the given variable values on the
+   * given operand stack and returns its answer
+   * @param stack, operand stack of at least maxStack() numbers; its contents
+   * are overwritten
+   * @param values, value of each variable, in the order the variables were
+   * given to the tokenizer
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  double evaluate(double[] stack, double[] values)
+          throws DivisionByZeroException {
+      int top = run(0, code.length, stack, 0, values);
+      if (top < 0) {
+          throw new DivisionByZeroException();
+      }
+      return stack[top - 1];
+  }
+
+  /**
+   * Method name: run
+   * Description: runs part of the program on an operand stack that may
+   * already hold operands
+   * @param from, offset in code of the first instruction to run
+   * @param to, offset in code after the last instruction to run
+   * @param stack, operand stack of at least maxStack() numbers
+   * @param top, number of operands already on the stack
+   * @param values, value of each variable
+   * @return number of operands on the stack afterwards, -1 when trying to
+   * divide by zero
+   */
+  int run(int from, int to, double[] stack, int top, double[] values) {
+      int tempBase = maxStack - temps;
+      for (int pc = from; pc < to; pc++) {
+          int opcode = code[pc];
+          switch (opcode) {
+              case PUSH:
+                  stack[top++] = constants[code[++pc]];
+                  break;
+              case LOAD:
+                  int variable = code[++pc];
+                  stack[top++] = variable >= 0
+                          ? values[variable] : -values[~variable];
+                  break;
+              case SAVE:
+                  stack[tempBase + code[++pc]] = stack[top - 1];
+                  break;
+              case RECALL:
+                  stack[top++] = stack[tempBase + code[++pc]];
+                  break;
+              case ADD:
+              case SUBTRACT:
+              case MULTIPLY:
+              case DIVIDE:
+                  top--;
+                  double num2 = stack[top];
+                  if (opcode == DIVIDE && num2 == 0) {
+                      return -1;
+                  }
+                  stack[top - 1] = operate(opcode, stack[top - 1], num2);
+                  break;
+              default: // registered operator or function
+                  top = operators.apply(opcode, stack, top);
+                  if (top < 0) {
+                      return -1;
+                  }
+          }
+      }
+      return top;
+  }
+
+}
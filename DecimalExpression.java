@@ -0,0 +1,442 @@
+/**
+ * Filename: DecimalExpression.java
+ * Usage: DecimalExpression expr
+ *                = DecimalExpression.compile("(58*3.2+(45--23))");
+ *        BigDecimal ans = expr.evaluate();            // 253.6
+ *        DecimalExpression.compile("10 / 3", 2, RoundingMode.HALF_UP);
+ * Description: this file contains an expression evaluated in exact decimal
+ * arithmetic instead of double, for answers such as amounts of money that
+ * must not pick up binary rounding errors. Literals keep the digits they
+ * were written with; addition, subtraction and multiplication are exact;
+ * a division is exact when its quotient has finitely many decimals, and
+ * is otherwise rounded to the configured scale (number of digits after the
+ * point) with the configured rounding mode.
+ *
+ * Values are held as a long of digits and a scale while they fit, so most
+ * operations are a few long operations with overflow checks. An operation
+ * that overflows, or a division that must be rounded, is done in
+ * BigDecimal, and its result goes back to a long when it fits.
+ *
+ * A decimal expression is immutable and thread-safe.
+ */
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+public final class DecimalExpression {
+    public static final int DEFAULT_SCALE = 16;
+    public static final RoundingMode DEFAULT_ROUNDING = RoundingMode.HALF_EVEN;
+
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_LONG_DIGITS + 1];
+    private static final BigInteger FIVE = BigInteger.valueOf(5);
+    // operand stack reused by evaluate() on each thread
+    private static final ThreadLocal<Stack> SCRATCH
+            = ThreadLocal.withInitial(() -> new Stack(16));
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_LONG_DIGITS; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int[] code;
+    // each literal as digits and scale, or as a BigDecimal if too long
+    private final long[] digits;
+    private final int[] scales;
+    private final BigDecimal[] bigs;
+    private final int maxStack;
+    private final int scale;
+    private final RoundingMode rounding;
+    // false to do every operation in BigDecimal, for comparison
+    private final boolean fast;
+
+  /**
+   * Constructor creates a decimal expression from a compiled program and
+   * the tokens it was compiled from
+   * @param program, compiled expression; not optimized
+   * @param tokens, tokens of the expression
+   * @param scale, digits after the point of a rounded quotient
+   * @param rounding, rounding mode of a rounded quotient
+   * @param fast, false to do every operation in BigDecimal
+   */
+  private DecimalExpression(CompiledExpression program, Tokenizer tokens,
+          int scale, RoundingMode rounding, boolean fast) {
+      this.code = program.code;
+      this.maxStack = program.maxStack();
+      this.scale = scale;
+      this.rounding = rounding;
+      this.fast = fast;
+      int count = program.constants.length;
+      digits = new long[count];
+      scales = new int[count];
+      bigs = new BigDecimal[count];
+      // PUSH constants are numbered in the order of the number tokens
+      int constant = 0;
+      for (int i = 0; i < tokens.size(); i++) {
+          if (tokens.kind(i) == Tokenizer.NUMBER) {
+              literal(tokens.text(i), constant++);
+          }
+      }
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles an infix expression for exact decimal
+   * evaluation, rounding inexact quotients to DEFAULT_SCALE digits
+   * @param expression in infix notation
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @return decimal expression
+   */
+  public static DecimalExpression compile(String expression)
+          throws InvalidCharacterException, SyntaxErrorException {
+      return compile(expression, DEFAULT_SCALE, DEFAULT_ROUNDING);
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles an infix expression for exact decimal evaluation
+   * @param expression in infix notation
+   * @param scale, digits after the point kept when a quotient is rounded
+   * @param rounding, how a quotient is rounded
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @return decimal expression
+   */
+  public static DecimalExpression compile(String expression, int scale,
+          RoundingMode rounding)
+          throws InvalidCharacterException, SyntaxErrorException {
+      return compile(expression, scale, rounding, true);
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles an infix expression for exact decimal
+   * evaluation, with or without the long fast path, for testing and
+   * benchmarks
+   * @param expression in infix notation
+   * @param scale, digits after the point kept when a quotient is rounded
+   * @param rounding, how a quotient is rounded
+   * @param fast, false to do every operation in BigDecimal
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @return decimal expression
+   */
+  static DecimalExpression compile(String expression, int scale,
+          RoundingMode rounding, boolean fast)
+          throws InvalidCharacterException, SyntaxErrorException {
+      if (rounding == RoundingMode.UNNECESSARY) {
+          throw new IllegalArgumentException("Rounding is necessary");
+      }
+      Tokenizer tokens = new Tokenizer();
+      tokens.tokenize(expression);
+      CompiledExpression program = CompiledExpression.fromTokens(tokens);
+      return new DecimalExpression(program, tokens, scale, rounding, fast);
+  }
+
+  /**
+   * Method name: scale
+   * @return digits after the point kept when a quotient is rounded
+   */
+  public int scale() {
+      return scale;
+  }
+
+  /**
+   * Method name: rounding
+   * @return how a quotient is rounded
+   */
+  public RoundingMode rounding() {
+      return rounding;
+  }
+
+  /**
+   * Method name: literal
+   * Description: stores a number token as digits and scale, or as a
+   * BigDecimal when it has too many digits for a long
+   * @param text, number as written, without white space
+   * @param constant, index of the literal
+   */
+  private void literal(String text, int constant) {
+      long value = 0;
+      int count = 0;
+      int scale = 0;
+      boolean point = false;
+      for (int i = 0; i < text.length(); i++) {
+          char c = text.charAt(i);
+          if (c == '.') {
+              point = true;
+          }
+          else if (c != '-') {
+              value = value * 10 + (c - '0');
+              count++;
+              if (point) {
+                  scale++;
+              }
+          }
+      }
+      if (count > MAX_LONG_DIGITS || !fast) {
+          bigs[constant] = new BigDecimal(text);
+      }
+      else {
+          digits[constant] = text.charAt(0) == '-' ? -value : value;
+          scales[constant] = scale;
+      }
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: runs the program in exact decimal arithmetic
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return value of the expression
+   */
+  public BigDecimal evaluate() throws DivisionByZeroException {
+      Stack stack = SCRATCH.get();
+      if (stack.digits.length < maxStack) {
+          stack = new Stack(maxStack);
+          SCRATCH.set(stack);
+      }
+      long[] digits = stack.digits;
+      int[] scales = stack.scales;
+      BigDecimal[] bigs = stack.bigs;
+      int top = 0;
+      for (int pc = 0; pc < code.length; pc++) {
+          int opcode = code[pc];
+          if (opcode == CompiledExpression.PUSH) {
+              int constant = code[++pc];
+              digits[top] = this.digits[constant];
+              scales[top] = this.scales[constant];
+              bigs[top] = this.bigs[constant];
+              top++;
+              continue;
+          }
+          top--;
+          int left = top - 1;
+          if (bigs[left] != null || bigs[top] != null
+                  || !stack.operate(opcode, left, top)) {
+              stack.operateBig(opcode, left, top, scale, rounding);
+          }
+      }
+      // the answer is the top, as in CompiledExpression.run
+      int last = top - 1;
+      BigDecimal answer = bigs[last] != null
+              ? bigs[last] : BigDecimal.valueOf(digits[last], scales[last]);
+      bigs[last] = null;
+      return answer;
+  }
+
+
+    /**
+     * operand stack: each operand is digits with a scale, for a value of
+     * digits * 10^-scale, or a BigDecimal when it does not fit
+     */
+    private static final class Stack {
+        private final long[] digits;
+        private final int[] scales;
+        private final BigDecimal[] bigs;
+
+        Stack(int size) {
+            digits = new long[size];
+            scales = new int[size];
+            bigs = new BigDecimal[size];
+        }
+
+        /**
+         * applies an operator to two long operands, leaving the result in
+         * left; false, with left unchanged, if the result needs BigDecimal
+         * or the divisor is zero
+         */
+        boolean operate(int opcode, int left, int right) {
+            long a = digits[left];
+            long b = digits[right];
+            int scaleA = scales[left];
+            int scaleB = scales[right];
+            long result;
+            int scale;
+            switch (opcode) {
+                case CompiledExpression.ADD:
+                case CompiledExpression.SUBTRACT:
+                    if (scaleA < scaleB) {
+                        a = scaleUp(a, scaleB - scaleA);
+                        if (a == Long.MIN_VALUE) {
+                            return false;
+                        }
+                    }
+                    else if (scaleB < scaleA) {
+                        b = scaleUp(b, scaleA - scaleB);
+                        if (b == Long.MIN_VALUE) {
+                            return false;
+                        }
+                    }
+                    if (opcode == CompiledExpression.SUBTRACT) {
+                        if (b == Long.MIN_VALUE) {
+                            return false;
+                        }
+                        b = -b;
+                    }
+                    result = a + b;
+                    if (((a ^ result) & (b ^ result)) < 0) { // overflow
+                        return false;
+                    }
+                    scale = Math.max(scaleA, scaleB);
+                    break;
+                case CompiledExpression.MULTIPLY:
+                    result = a * b;
+                    if (Math.multiplyHigh(a, b) != (result >> 63)) {
+                        return false;
+                    }
+                    scale = scaleA + scaleB;
+                    break;
+                default: // DIVIDE
+                    if (b == 0 || a == Long.MIN_VALUE
+                            || b == Long.MIN_VALUE) {
+                        return false;
+                    }
+                    long gcd = gcd(Math.abs(a), Math.abs(b));
+                    long numerator = a / gcd;
+                    long denominator = b / gcd;
+                    if (denominator < 0) {
+                        numerator = -numerator;
+                        denominator = -denominator;
+                    }
+                    // exact only if the denominator divides a power of ten
+                    int twos = Long.numberOfTrailingZeros(denominator);
+                    long odd = denominator >>> twos;
+                    int fives = 0;
+                    while (odd % 5 == 0) {
+                        odd /= 5;
+                        fives++;
+                    }
+                    int power = Math.max(twos, fives);
+                    if (odd != 1 || power > MAX_LONG_DIGITS) {
+                        return false; // rounded in BigDecimal
+                    }
+                    long factor = POWERS_OF_TEN[power] / denominator;
+                    result = numerator * factor;
+                    if (Math.multiplyHigh(numerator, factor)
+                            != (result >> 63)) {
+                        return false;
+                    }
+                    scale = scaleA - scaleB + power;
+            }
+            if (scale < 0) { // as a whole number
+                result = scaleUp(result, -scale);
+                if (result == Long.MIN_VALUE) {
+                    return false;
+                }
+                scale = 0;
+            }
+            digits[left] = result;
+            scales[left] = scale;
+            return true;
+        }
+
+        /**
+         * applies an operator in BigDecimal, leaving the result in left,
+         * as a long again if it fits
+         */
+        void operateBig(int opcode, int left, int right, int roundedScale,
+                RoundingMode rounding) throws DivisionByZeroException {
+            BigDecimal a = big(left);
+            BigDecimal b = big(right);
+            bigs[right] = null;
+            BigDecimal result;
+            switch (opcode) {
+                case CompiledExpression.ADD:
+                    result = a.add(b);
+                    break;
+                case CompiledExpression.SUBTRACT:
+                    result = a.subtract(b);
+                    break;
+                case CompiledExpression.MULTIPLY:
+                    result = a.multiply(b);
+                    break;
+                default: // DIVIDE
+                    if (b.signum() == 0) {
+                        bigs[left] = null;
+                        throw new DivisionByZeroException();
+                    }
+                    result = divide(a, b, roundedScale, rounding);
+            }
+            if (result.scale() < 0) { // as a whole number
+                result = result.setScale(0);
+            }
+            if (result.unscaledValue().bitLength() < Long.SIZE) {
+                digits[left] = result.unscaledValue().longValue();
+                scales[left] = result.scale();
+                bigs[left] = null;
+            }
+            else {
+                bigs[left] = result;
+            }
+        }
+
+        private BigDecimal big(int index) {
+            return bigs[index] != null
+                    ? bigs[index] : BigDecimal.valueOf(digits[index],
+                    scales[index]);
+        }
+
+        /**
+         * divides exactly if the quotient has finitely many decimals, and
+         * rounds it to the given scale otherwise
+         */
+        private static BigDecimal divide(BigDecimal a, BigDecimal b,
+                int scale, RoundingMode rounding) {
+            BigInteger numerator = a.unscaledValue();
+            BigInteger denominator = b.unscaledValue();
+            BigInteger gcd = numerator.gcd(denominator);
+            BigInteger odd = denominator.divide(gcd).abs();
+            int twos = odd.getLowestSetBit();
+            odd = odd.shiftRight(twos);
+            int fives = 0;
+            BigInteger[] division = odd.divideAndRemainder(FIVE);
+            while (division[1].signum() == 0) {
+                odd = division[0];
+                fives++;
+                division = odd.divideAndRemainder(FIVE);
+            }
+            if (!odd.equals(BigInteger.ONE)) {
+                return a.divide(b, scale, rounding);
+            }
+            int power = Math.max(twos, fives);
+            // exact: the quotient has at most this many more decimals
+            return a.divide(b, Math.max(a.scale() - b.scale() + power, 0),
+                    RoundingMode.UNNECESSARY);
+        }
+
+        /**
+         * multiplies by 10^power, Long.MIN_VALUE on overflow
+         */
+        private static long scaleUp(long value, int power) {
+            if (power > MAX_LONG_DIGITS) {
+                return value == 0 ? 0 : Long.MIN_VALUE;
+            }
+            long factor = POWERS_OF_TEN[power];
+            long result = value * factor;
+            if (Math.multiplyHigh(value, factor) != (result >> 63)
+                    || result == Long.MIN_VALUE) {
+                return Long.MIN_VALUE;
+            }
+            return result;
+        }
+
+        private static long gcd(long a, long b) {
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
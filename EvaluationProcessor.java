@@ -0,0 +1,370 @@
+/**
+ * Filename: EvaluationProcessor.java
+ * Usage: EvaluationProcessor processor = new EvaluationProcessor(pool);
+ *        expressions.subscribe(processor);
+ *        processor.subscribe(results);
+ * Description: this file contains an asynchronous evaluator for a stream of
+ * expressions, as a java.util.concurrent.Flow.Processor: expressions come
+ * in from a publisher, such as a message consumer, and their Results go
+ * out to a subscriber in the order the expressions came in.
+ *
+ * Expressions are evaluated in micro-batches on the executor. Whenever
+ * fewer than the maximum number of batches are in flight, the expressions
+ * received so far, up to a batch, become the next batch, so a slow stream
+ * is evaluated an expression at a time and a fast one in full batches.
+ * Results are handed on only as the subscriber requests them, a batch at a
+ * time from the oldest, and expressions are requested from the publisher
+ * only as results are handed on. At most batchSize * maxBatches
+ * expressions and results are held, however fast the publisher is; when
+ * the subscriber stops requesting, the processor stops requesting too.
+ *
+ * An error from the publisher is passed on after the results of the
+ * expressions received before it. A processor has one subscriber; another
+ * is sent an IllegalStateException. Errors in expressions are Results, not
+ * Flow errors. Signals are serialized through a single drain loop, so
+ * they may come from any thread.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class EvaluationProcessor
+        implements Flow.Processor<String, Result> {
+    static final int DEFAULT_BATCH_SIZE = 256;
+    static final int DEFAULT_MAX_BATCHES = 8;
+
+    private final Executor executor;
+    private final Evaluator evaluator = new Evaluator();
+    private final int batchSize;
+    private final int maxBatches;
+
+    // expressions received and not yet in a batch
+    private final ArrayBlockingQueue<String> received;
+    private final AtomicReference<Flow.Subscription> upstream
+            = new AtomicReference<>();
+    private final AtomicReference<Flow.Subscriber<? super Result>> downstream
+            = new AtomicReference<>();
+    // results requested by the subscriber in all, up to Long.MAX_VALUE
+    private final AtomicLong requested = new AtomicLong();
+    // calls to drain not yet served by the thread draining
+    private final AtomicInteger pending = new AtomicInteger();
+    // set once the publisher has completed or failed
+    private volatile boolean done;
+    private volatile Throwable error;
+    // a broken rule of Flow, passed on before any result still held
+    private volatile Throwable violation;
+    private volatile boolean cancelled;
+
+    // touched only by the thread draining
+    private final ArrayDeque<Batch> batches = new ArrayDeque<>();
+    private long emitted;
+    private int freed;
+    private boolean terminated;
+
+  /**
+   * Constructor creates a processor evaluating on the common pool
+   */
+  public EvaluationProcessor() {
+      this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructor creates a processor evaluating on the given executor
+   * @param executor, threads to evaluate batches on
+   */
+  public EvaluationProcessor(Executor executor) {
+      this(executor, DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCHES);
+  }
+
+  /**
+   * Constructor creates a processor with the given batch size and number
+   * of batches in flight
+   * @param executor, threads to evaluate batches on
+   * @param batchSize, most expressions in a batch
+   * @param maxBatches, most batches evaluated or waiting to be handed on
+   * @throws IllegalArgumentException when batchSize or maxBatches is below
+   * 1 or they hold more than Integer.MAX_VALUE expressions
+   */
+  public EvaluationProcessor(Executor executor, int batchSize,
+          int maxBatches) {
+      if (batchSize < 1 || maxBatches < 1
+              || (long) batchSize * maxBatches > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException("Invalid batch size "
+                  + batchSize + " or number of batches " + maxBatches);
+      }
+      this.executor = Objects.requireNonNull(executor);
+      this.batchSize = batchSize;
+      this.maxBatches = maxBatches;
+      this.received = new ArrayBlockingQueue<>(batchSize * maxBatches);
+  }
+
+  /**
+   * Method name: capacity
+   * @return most expressions and results the processor holds at once
+   */
+  public int capacity() {
+      return batchSize * maxBatches;
+  }
+
+  /**
+   * Method name: onSubscribe
+   * Description: takes the publisher's subscription and requests as many
+   * expressions as the processor holds; a second subscription is cancelled
+   * @param subscription, subscription to the publisher of expressions
+   */
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+      Objects.requireNonNull(subscription);
+      if (!upstream.compareAndSet(null, subscription) || cancelled) {
+          subscription.cancel();
+          return;
+      }
+      subscription.request(capacity());
+  }
+
+  /**
+   * Method name: onNext
+   * Description: takes an expression to evaluate
+   * @param expression, expression in infix notation
+   */
+  @Override
+  public void onNext(String expression) {
+      Objects.requireNonNull(expression);
+      if (!received.offer(expression)) { // more than was requested
+          fail(new IllegalStateException("Publisher sent more expressions"
+                  + " than were requested"));
+      }
+      drain();
+  }
+
+  /**
+   * Method name: onError
+   * Description: passes the publisher's error on after the results of the
+   * expressions received
+   * @param throwable, error of the publisher
+   */
+  @Override
+  public void onError(Throwable throwable) {
+      error = Objects.requireNonNull(throwable);
+      done = true;
+      drain();
+  }
+
+  /**
+   * Method name: onComplete
+   * Description: completes the subscriber after the results of the
+   * expressions received
+   */
+  @Override
+  public void onComplete() {
+      done = true;
+      drain();
+  }
+
+  /**
+   * Method name: subscribe
+   * Description: subscribes the receiver of the results; a processor has
+   * only one
+   * @param subscriber, receiver of a Result per expression, in order
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super Result> subscriber) {
+      Objects.requireNonNull(subscriber);
+      if (!downstream.compareAndSet(null, subscriber)) {
+          subscriber.onSubscribe(new Flow.Subscription() {
+              @Override
+              public void request(long n) {
+              }
+
+              @Override
+              public void cancel() {
+              }
+          });
+          subscriber.onError(new IllegalStateException(
+                  "Processor already has a subscriber"));
+          return;
+      }
+      subscriber.onSubscribe(new Demand());
+      drain();
+  }
+
+  /**
+   * Method name: fail
+   * Description: ends the stream with an error right away, cancelling the
+   * publisher and dropping the expressions and results held
+   * @param throwable, error to pass on
+   */
+  private void fail(Throwable throwable) {
+      violation = throwable;
+      done = true;
+      Flow.Subscription subscription = upstream.get();
+      if (subscription != null) {
+          subscription.cancel();
+      }
+  }
+
+  /**
+   * Method name: drain
+   * Description: starts batches, hands results on and requests more
+   * expressions, on one thread at a time; a call made while another thread
+   * drains makes that thread go round again
+   */
+  private void drain() {
+      if (pending.getAndIncrement() != 0) {
+          return;
+      }
+      int missed = 1;
+      do {
+          if (!terminated) {
+              dispatch();
+              emit();
+              dispatch(); // emitting may have freed batches
+          }
+          missed = pending.addAndGet(-missed);
+      } while (missed != 0);
+  }
+
+  /**
+   * Method name: dispatch
+   * Description: turns the expressions received into batches while fewer
+   * than maxBatches are in flight, and starts evaluating them
+   */
+  private void dispatch() {
+      while (batches.size() < maxBatches && !received.isEmpty()
+              && !cancelled && violation == null) {
+          Batch batch = new Batch(Math.min(batchSize, received.size()));
+          for (int i = 0; i < batch.size; i++) {
+              batch.expressions[i] = received.poll();
+          }
+          batches.add(batch);
+          try {
+              executor.execute(batch);
+          } catch (RejectedExecutionException e) {
+              fail(e);
+          }
+      }
+  }
+
+  /**
+   * Method name: emit
+   * Description: hands on the results of evaluated batches in order, as
+   * many as the subscriber has requested, then requests as many
+   * expressions as were handed on, and ends the stream once it is done
+   */
+  private void emit() {
+      Flow.Subscriber<? super Result> subscriber = downstream.get();
+      Batch batch;
+      while (subscriber != null && !cancelled && violation == null
+              && emitted < requested.get()
+              && (batch = batches.peek()) != null && batch.evaluated) {
+          if (batch.failure != null) {
+              fail(batch.failure);
+              break;
+          }
+          Result result = batch.results[batch.next];
+          batch.results[batch.next++] = null;
+          if (batch.next == batch.size) {
+              batches.poll();
+          }
+          emitted++;
+          freed++;
+          subscriber.onNext(result);
+      }
+      if (cancelled || (violation != null && subscriber != null)) {
+          terminated = true;
+          received.clear();
+          batches.clear();
+          if (!cancelled) {
+              subscriber.onError(violation);
+          }
+          return;
+      }
+      if (subscriber == null) {
+          return;
+      }
+      Flow.Subscription subscription = upstream.get();
+      if (freed >= batchSize && !done && subscription != null) {
+          subscription.request(freed);
+          freed = 0;
+      }
+      if (done && batches.isEmpty() && received.isEmpty()) {
+          terminated = true;
+          if (error != null) {
+              subscriber.onError(error);
+          }
+          else {
+              subscriber.onComplete();
+          }
+      }
+  }
+
+    /**
+     * demand of the subscriber of results
+     */
+    private final class Demand implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException(
+                        "Non-positive request: " + n));
+            }
+            else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE
+                        : r + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Flow.Subscription subscription = upstream.get();
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            drain();
+        }
+    }
+
+    /**
+     * expressions evaluated together on one executor thread, with their
+     * results and how many have been handed on
+     */
+    private final class Batch implements Runnable {
+        private final int size;
+        private final String[] expressions;
+        private final Result[] results;
+        private int next;
+        private volatile boolean evaluated;
+        private RuntimeException failure;
+
+        Batch(int size) {
+            this.size = size;
+            this.expressions = new String[size];
+            this.results = new Result[size];
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < size; i++) {
+                    results[i] = evaluator.calculate(expressions[i]);
+                    expressions[i] = null;
+                }
+            } catch (RuntimeException e) { // never expected of calculate
+                failure = e;
+            }
+            evaluated = true;
+            drain();
+        }
+    }
+}
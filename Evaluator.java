@@ -0,0 +1,161 @@
+/**
+ * Filename: Evaluator.java
+ * Usage: static final Evaluator EVALUATOR = new Evaluator();
+ *        Result result = EVALUATOR.calculate("(24.3 + 4) / 78");
+ *        double ans = EVALUATOR.evaluate("(24.3 + 4) / 78");
+ * Description: this file contains an evaluator of infix expressions meant
+ * to be shared by any number of threads, such as the request threads of a
+ * server. It keeps no state of its own between calls; each call borrows a
+ * tokenizer and an operand stack, which grow to the largest expression
+ * seen and are then reused, so a call allocates only its compiled program
+ * and the answer, and takes no lock.
+ *
+ * A platform thread keeps its scratch in a ThreadLocal. A virtual thread
+ * borrows one from a small array of slots instead, since a ThreadLocal
+ * would give each of possibly millions of short-lived virtual threads its
+ * own: it takes the scratch in a slot picked from its thread id with an
+ * atomic swap, trying the next slots if that one is empty, and puts it
+ * back when done. Evaluation never blocks, so no more virtual threads hold
+ * a scratch at once than there are carrier threads running them, and with
+ * twice as many slots as processors a slot is nearly always free.
+ *
+ * An evaluator recognizes the four operators, or the operators and
+ * functions of the registry it is created with, see Operators.
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class Evaluator {
+    private static final int INITIAL_STACK = 16;
+    // spreads thread ids over the slots
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final Operators operators;
+    private final ThreadLocal<Scratch> scratch;
+    // scratch lent to virtual threads; null while borrowed
+    private final AtomicReferenceArray<Scratch> slots;
+    private final int mask;
+
+  /**
+   * Constructor creates an evaluator of the four operators
+   */
+  public Evaluator() {
+      this(Operators.DEFAULT);
+  }
+
+  /**
+   * Constructor creates an evaluator of the operators and functions of a
+   * registry
+   * @param operators, operators and functions expressions may use
+   */
+  public Evaluator(Operators operators) {
+      this.operators = operators;
+      scratch = ThreadLocal.withInitial(() -> new Scratch(-1, operators));
+      int size = Integer.highestOneBit(
+              Runtime.getRuntime().availableProcessors() * 4 - 1);
+      slots = new AtomicReferenceArray<>(size);
+      for (int i = 0; i < size; i++) {
+          slots.set(i, new Scratch(i, operators));
+      }
+      mask = size - 1;
+  }
+
+  /**
+   * Method name: calculate
+   * Description: tokenizes, compiles and evaluates an infix expression
+   * @param input, expression in infix notation
+   * @return value of the expression, or its error
+   */
+  public Result calculate(CharSequence input) {
+      Scratch scratch = borrow();
+      try {
+          Tokenizer tokens = scratch.tokens;
+          if (!Metrics.scan(tokens, input)) {
+              return Result.failure(tokens);
+          }
+          CompiledExpression program = Metrics.compile(tokens);
+          if (program == null) {
+              return Result.failure(tokens);
+          }
+          double[] stack = scratch.stack(program.maxStack());
+          int top = Metrics.run(program, stack);
+          return top < 0 ? Result.dividedByZero()
+                  : Result.of(stack[top - 1]);
+      } finally {
+          giveBack(scratch);
+      }
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: tokenizes, compiles and evaluates an infix expression
+   * @param input, expression in infix notation
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(CharSequence input) throws InvalidCharacterException,
+          SyntaxErrorException, DivisionByZeroException {
+      return calculate(input).orThrow();
+  }
+
+  /**
+   * Method name: borrow
+   * @return scratch for the calling thread to use until giveBack
+   */
+  private Scratch borrow() {
+      Thread thread = Thread.currentThread();
+      if (!thread.isVirtual()) {
+          return scratch.get();
+      }
+      int start = Long.hashCode(thread.threadId() * GOLDEN_RATIO);
+      for (int i = 0; i <= mask; i++) {
+          int slot = (start + i) & mask;
+          if (slots.getPlain(slot) != null) {
+              Scratch borrowed = slots.getAndSet(slot, null);
+              if (borrowed != null) {
+                  return borrowed;
+              }
+          }
+      }
+      return new Scratch(-1, operators); // all taken; discarded after use
+  }
+
+  /**
+   * Method name: giveBack
+   * @param borrowed, scratch obtained from borrow
+   */
+  private void giveBack(Scratch borrowed) {
+      if (borrowed.slot >= 0) {
+          slots.setRelease(borrowed.slot, borrowed);
+      }
+  }
+
+    /**
+     * tokenizer and operand stack used by one thread at a time
+     */
+    private static final class Scratch {
+        private final Tokenizer tokens;
+        private double[] stack = new double[INITIAL_STACK];
+        // slot to return to, -1 if kept in a ThreadLocal or discarded
+        private final int slot;
+
+        Scratch(int slot, Operators operators) {
+            this.slot = slot;
+            this.tokens = new Tokenizer(operators);
+        }
+
+        /**
+         * returns an operand stack of at least the given size
+         */
+        double[] stack(int size) {
+            if (stack.length < size) {
+                stack = new double[Math.max(size, stack.length * 2)];
+            }
+            return stack;
+        }
+    }
+}
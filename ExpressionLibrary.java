@@ -0,0 +1,336 @@
+/**
+ * Filename: ExpressionLibrary.java
+ * Usage: ExpressionLibrary.write(path, expressions);
+ *        ExpressionLibrary library = ExpressionLibrary.open(path);
+ *        double ans = library.evaluate(42, price, qty);
+ * Description: this file contains a library of compiled expressions saved
+ * in a binary file, so a service that evaluates many formulas can load them
+ * at startup without tokenizing and compiling each one again. The file is
+ * memory-mapped and expressions are evaluated straight from the mapped
+ * bytes: opening a library reads only its header and index, and an
+ * expression's pages are read from disk the first time it is evaluated.
+ *
+ * The format, all numbers big-endian:
+ *   header   - int magic "CALC", int version (1), int number of expressions
+ *   index    - int offset of each expression from the start of the file,
+ *              then the size of the file
+ *   each     - int operand stack size, temporaries included, int number of
+ *   expression temporaries, int number of variables loaded, then the
+ *              program: a one byte opcode of CompiledExpression, followed
+ *              for PUSH by its number as a double and for LOAD, SAVE and
+ *              RECALL by an int
+ * Numbers are written in place rather than in a constant pool, so an
+ * expression is one run of bytes read in order. A mapping is limited to
+ * 2GB, and so is a library.
+ *
+ * A library is immutable and thread-safe.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public final class ExpressionLibrary {
+    // "CALC"
+    static final int MAGIC = 0x43414C43;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    // operand stack size, temporaries and variables of an expression
+    static final int RECORD_HEADER_SIZE = 12;
+
+    // operand stack reused by evaluate on each thread
+    private static final ThreadLocal<double[]> SCRATCH
+            = ThreadLocal.withInitial(() -> new double[16]);
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+  /**
+   * Constructor creates a library over a checked mapping
+   * @param buffer, the mapped file
+   * @param size, number of expressions
+   */
+  private ExpressionLibrary(ByteBuffer buffer, int size) {
+      this.buffer = buffer;
+      this.size = size;
+  }
+
+  /**
+   * Method name: write
+   * Description: saves compiled expressions to a library file, replacing
+   * the file if it exists
+   * @param file, path of the library
+   * @param expressions, compiled expressions or formulas, in index order
+   * @throws IOException when the file cannot be written, or the library
+   * would be larger than 2GB
+   * @throws IllegalArgumentException when an expression uses registered
+   * operators or functions, whose code cannot be saved
+   */
+  public static void write(Path file, List<CompiledExpression> expressions)
+          throws IOException {
+      for (CompiledExpression expression : expressions) {
+          if (expression.usesOperations()) {
+              throw new IllegalArgumentException("Registered operators and"
+                      + " functions cannot be saved");
+          }
+      }
+      int count = expressions.size();
+      long[] offsets = new long[count + 1];
+      offsets[0] = HEADER_SIZE + 4L * (count + 1);
+      for (int i = 0; i < count; i++) {
+          offsets[i + 1] = offsets[i] + recordSize(expressions.get(i));
+      }
+      if (offsets[count] > Integer.MAX_VALUE) {
+          throw new IOException("Library of " + offsets[count]
+                  + " bytes is larger than 2GB");
+      }
+      try (DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(file),
+                      1 << 16))) {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.writeInt(count);
+          for (long offset : offsets) {
+              out.writeInt((int) offset);
+          }
+          for (CompiledExpression expression : expressions) {
+              writeRecord(out, expression);
+          }
+      }
+  }
+
+  /**
+   * Method name: open
+   * Description: maps a library file and checks its header and index
+   * @param file, path of a file written by write
+   * @throws IOException when the file cannot be read, is larger than 2GB,
+   * or is not a library of this version
+   * @return library of the expressions in the file
+   */
+  public static ExpressionLibrary open(Path file) throws IOException {
+      ByteBuffer buffer;
+      try (FileChannel channel
+              = FileChannel.open(file, StandardOpenOption.READ)) {
+          long length = channel.size();
+          if (length > Integer.MAX_VALUE) {
+              throw new IOException(file + " is larger than 2GB");
+          }
+          buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      }
+      if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+          throw new IOException(file + " is not an expression library");
+      }
+      if (buffer.getInt(4) != VERSION) {
+          throw new IOException(file + " has version " + buffer.getInt(4)
+                  + ", expected " + VERSION);
+      }
+      int size = buffer.getInt(8);
+      long indexEnd = HEADER_SIZE + 4L * (size + 1);
+      if (size < 0 || indexEnd > buffer.limit()) {
+          throw new IOException(file + " has a truncated index");
+      }
+      // a record starts after the index and ends where the next starts
+      int previous = (int) indexEnd;
+      for (int i = 0; i <= size; i++) {
+          int offset = buffer.getInt(HEADER_SIZE + 4 * i);
+          if (offset < previous || offset > buffer.limit()
+                  || (i > 0 && offset - previous < RECORD_HEADER_SIZE)) {
+              throw new IOException(file + " has an invalid offset for"
+                      + " expression " + i);
+          }
+          previous = offset;
+      }
+      if (previous != buffer.limit()) {
+          throw new IOException(file + " has been truncated");
+      }
+      return new ExpressionLibrary(buffer, size);
+  }
+
+  /**
+   * Method name: size
+   * @return number of expressions in the library
+   */
+  public int size() {
+      return size;
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: evaluates an expression straight from the mapped file
+   * @param index, position of the expression in the list given to write
+   * @param values, value of each variable, in the order the variables were
+   * given when the expression was compiled
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @throws IndexOutOfBoundsException when there is no such expression
+   * @throws IllegalArgumentException when fewer values are given than the
+   * expression loads
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(int index, double... values)
+          throws DivisionByZeroException {
+      int start = start(index);
+      int end = buffer.getInt(HEADER_SIZE + 4 * (index + 1));
+      int maxStack = buffer.getInt(start);
+      int tempBase = maxStack - buffer.getInt(start + 4);
+      int variables = buffer.getInt(start + 8);
+      if (values.length < variables) {
+          throw new IllegalArgumentException("Expected " + variables
+                  + " values, got " + values.length);
+      }
+      double[] stack = SCRATCH.get();
+      if (stack.length < maxStack) {
+          stack = new double[maxStack];
+          SCRATCH.set(stack);
+      }
+      int top = 0;
+      for (int pc = start + RECORD_HEADER_SIZE; pc < end; ) {
+          int opcode = buffer.get(pc++);
+          switch (opcode) {
+              case CompiledExpression.PUSH:
+                  stack[top++] = buffer.getDouble(pc);
+                  pc += 8;
+                  break;
+              case CompiledExpression.LOAD:
+                  int variable = buffer.getInt(pc);
+                  pc += 4;
+                  stack[top++] = variable >= 0
+                          ? values[variable] : -values[~variable];
+                  break;
+              case CompiledExpression.SAVE:
+                  stack[tempBase + buffer.getInt(pc)] = stack[top - 1];
+                  pc += 4;
+                  break;
+              case CompiledExpression.RECALL:
+                  stack[top++] = stack[tempBase + buffer.getInt(pc)];
+                  pc += 4;
+                  break;
+              default:
+                  top--;
+                  double num2 = stack[top];
+                  if (opcode == CompiledExpression.DIVIDE && num2 == 0) {
+                      throw new DivisionByZeroException();
+                  }
+                  stack[top - 1] = CompiledExpression.operate(opcode,
+                          stack[top - 1], num2);
+          }
+      }
+      return stack[top - 1];
+  }
+
+  /**
+   * Method name: expression
+   * Description: decodes an expression into a compiled expression on the
+   * heap, for handing to code that takes one
+   * @param index, position of the expression in the list given to write
+   * @throws IndexOutOfBoundsException when there is no such expression
+   * @return the expression as it was written
+   */
+  public CompiledExpression expression(int index) {
+      int start = start(index);
+      int end = buffer.getInt(HEADER_SIZE + 4 * (index + 1));
+      int maxStack = buffer.getInt(start);
+      int temps = buffer.getInt(start + 4);
+      int[] code = new int[end - start];
+      double[] constants = new double[(end - start) / 9];
+      int length = 0;
+      int constantCount = 0;
+      for (int pc = start + RECORD_HEADER_SIZE; pc < end; ) {
+          int opcode = buffer.get(pc++);
+          code[length++] = opcode;
+          if (opcode == CompiledExpression.PUSH) {
+              constants[constantCount] = buffer.getDouble(pc);
+              code[length++] = constantCount++;
+              pc += 8;
+          }
+          else if (opcode >= CompiledExpression.LOAD) {
+              code[length++] = buffer.getInt(pc);
+              pc += 4;
+          }
+      }
+      return new CompiledExpression(Arrays.copyOf(code, length),
+              Arrays.copyOf(constants, constantCount), maxStack - temps,
+              temps);
+  }
+
+  /**
+   * Method name: start
+   * @param index, position of an expression
+   * @throws IndexOutOfBoundsException when there is no such expression
+   * @return offset of the expression in the file
+   */
+  private int start(int index) {
+      if (index < 0 || index >= size) {
+          throw new IndexOutOfBoundsException("Expression " + index
+                  + " of " + size);
+      }
+      return buffer.getInt(HEADER_SIZE + 4 * index);
+  }
+
+  /**
+   * Method name: recordSize
+   * @param expression, compiled expression
+   * @return bytes the expression takes in a library
+   */
+  private static long recordSize(CompiledExpression expression) {
+      int[] code = expression.code;
+      long size = RECORD_HEADER_SIZE;
+      for (int pc = 0; pc < code.length; pc++) {
+          if (code[pc] == CompiledExpression.PUSH) {
+              size += 9;
+              pc++;
+          }
+          else if (code[pc] >= CompiledExpression.LOAD) {
+              size += 5;
+              pc++;
+          }
+          else {
+              size++;
+          }
+      }
+      return size;
+  }
+
+  /**
+   * Method name: writeRecord
+   * Description: writes one expression in the library format
+   * @param out, library file
+   * @param expression, compiled expression
+   * @throws IOException when the file cannot be written
+   */
+  private static void writeRecord(DataOutputStream out,
+          CompiledExpression expression) throws IOException {
+      int[] code = expression.code;
+      int variables = 0;
+      for (int pc = 0; pc < code.length; pc++) {
+          if (code[pc] == CompiledExpression.LOAD) {
+              int variable = code[++pc];
+              variables = Math.max(variables,
+                      (variable >= 0 ? variable : ~variable) + 1);
+          }
+          else if (code[pc] == CompiledExpression.PUSH
+                  || code[pc] > CompiledExpression.LOAD) {
+              pc++;
+          }
+      }
+      out.writeInt(expression.maxStack());
+      out.writeInt(expression.temps);
+      out.writeInt(variables);
+      for (int pc = 0; pc < code.length; pc++) {
+          int opcode = code[pc];
+          out.writeByte(opcode);
+          if (opcode == CompiledExpression.PUSH) {
+              out.writeDouble(expression.constants[code[++pc]]);
+          }
+          else if (opcode >= CompiledExpression.LOAD) {
+              out.writeInt(code[++pc]);
+          }
+      }
+  }
+}
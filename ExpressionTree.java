@@ -0,0 +1,281 @@
+/**
+ * Filename: ExpressionTree.java
+ * Usage: CompiledExpression optimized
+ *                = ExpressionTree.of(program).optimize().compile();
+ * Description: this file contains the expression tree of a compiled
+ * program and the optimizer pass over it. The tree is rebuilt from the
+ * program's postfix code, so its nodes come in postfix order: every node
+ * after its operands.
+ *
+ * The optimizer folds every operator whose operands are both numbers into
+ * a number, and hash-conses the nodes: a subexpression that appears twice
+ * becomes one node with two parents, turning the tree into a DAG. When the
+ * DAG is compiled back into a program, a node used more than once is
+ * computed the first time, kept in a temporary with SAVE, and pushed again
+ * with RECALL.
+ *
+ * Answers stay bit-identical. Folding performs the same double operations
+ * as evaluating would, only earlier; identical subexpressions give
+ * identical values; and no other algebra is applied, since even x + 0 and
+ * a + b + c = a + (b + c) change some results. A division by zero is
+ * never folded, so it is still reported on every evaluation, and a value
+ * left unused on the stack is kept only if it may divide by zero.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+final class ExpressionTree {
+    // every node, operands before operators
+    private final Node[] nodes;
+    // values the program leaves on the stack; the last is the answer
+    private final Node[] roots;
+
+  /**
+   * Constructor creates a tree from its nodes
+   * @param nodes, every node in postfix order
+   * @param roots, values left on the stack, the answer last
+   */
+  private ExpressionTree(Node[] nodes, Node[] roots) {
+      this.nodes = nodes;
+      this.roots = roots;
+  }
+
+  /**
+   * Method name: of
+   * Description: rebuilds the tree of a compiled program by running its
+   * code on a stack of nodes instead of numbers
+   * @param expression, program to rebuild
+   * @return expression tree
+   */
+  static ExpressionTree of(CompiledExpression expression) {
+      int[] code = expression.code;
+      ArrayList<Node> nodes = new ArrayList<>(code.length);
+      Node[] stack = new Node[expression.maxStack()];
+      Node[] temps = new Node[expression.temps];
+      int top = 0;
+      for (int pc = 0; pc < code.length; pc++) {
+          int opcode = code[pc];
+          Node node;
+          switch (opcode) {
+              case CompiledExpression.PUSH:
+                  node = Node.number(expression.constants[code[++pc]]);
+                  break;
+              case CompiledExpression.LOAD:
+                  node = Node.variable(code[++pc]);
+                  break;
+              case CompiledExpression.SAVE:
+                  temps[code[++pc]] = stack[top - 1];
+                  continue;
+              case CompiledExpression.RECALL:
+                  stack[top++] = temps[code[++pc]];
+                  continue;
+              default:
+                  Node right = stack[--top];
+                  Node left = stack[--top];
+                  node = new Node(opcode, 0, 0, left, right);
+          }
+          nodes.add(node);
+          stack[top++] = node;
+      }
+      return new ExpressionTree(nodes.toArray(new Node[0]),
+              Arrays.copyOf(stack, top));
+  }
+
+  /**
+   * Method name: optimize
+   * Description: folds constant subexpressions and merges identical ones
+   * @return optimized tree
+   */
+  ExpressionTree optimize() {
+      HashMap<Node, Node> unique = new HashMap<>(nodes.length * 2);
+      ArrayList<Node> optimized = new ArrayList<>(nodes.length);
+      for (Node node : nodes) {
+          Node result = node;
+          if (node.left != null) {
+              Node left = node.left.optimized;
+              Node right = node.right.optimized;
+              result = null;
+              if (left.kind == CompiledExpression.PUSH
+                      && right.kind == CompiledExpression.PUSH) {
+                  try {
+                      result = Node.number(CompiledExpression.apply(
+                              node.kind, left.value, right.value));
+                  } catch (DivisionByZeroException e) {
+                      // left for evaluate to report
+                  }
+              }
+              if (result == null) {
+                  result = new Node(node.kind, 0, 0, left, right);
+              }
+          }
+          Node existing = unique.putIfAbsent(result, result);
+          if (existing == null) {
+              optimized.add(result);
+              node.optimized = result;
+          }
+          else {
+              node.optimized = existing;
+          }
+      }
+      // drops unused values that cannot divide by zero
+      ArrayList<Node> roots = new ArrayList<>(this.roots.length);
+      for (int i = 0; i < this.roots.length; i++) {
+          Node root = this.roots[i].optimized;
+          if (i == this.roots.length - 1 || root.mayDivideByZero) {
+              roots.add(root);
+          }
+      }
+      return new ExpressionTree(optimized.toArray(new Node[0]),
+              roots.toArray(new Node[0]));
+  }
+
+  /**
+   * Method name: compile
+   * Description: converts the tree back into a program, computing each
+   * node used more than once a single time
+   * @return compiled expression
+   */
+  CompiledExpression compile() {
+      // counts the uses of each node, parents before their operands
+      for (Node node : nodes) {
+          node.uses = 0;
+          node.index = -1;
+      }
+      for (Node root : roots) {
+          root.uses++;
+      }
+      for (int i = nodes.length - 1; i >= 0; i--) {
+          Node node = nodes[i];
+          if (node.uses > 0 && node.left != null) {
+              node.left.uses++;
+              node.right.uses++;
+          }
+      }
+      // at most 3 ints per node and 2 per further use
+      int[] code = new int[nodes.length * 7 + roots.length * 2];
+      double[] constants = new double[nodes.length];
+      int length = 0;
+      int constantCount = 0;
+      int temps = 0;
+      int depth = 0;
+      int maxDepth = 0;
+      // nodes being emitted and how many of their operands are done
+      Node[] work = new Node[nodes.length + 1];
+      int[] done = new int[nodes.length + 1];
+      for (Node root : roots) {
+          work[0] = root;
+          done[0] = 0;
+          int top = 1;
+          while (top > 0) {
+              Node node = work[top - 1];
+              if (node.left == null || node.index >= 0) {
+                  if (node.kind == CompiledExpression.PUSH) {
+                      if (node.index < 0) {
+                          node.index = constantCount;
+                          constants[constantCount++] = node.value;
+                      }
+                      code[length++] = CompiledExpression.PUSH;
+                      code[length++] = node.index;
+                  }
+                  else if (node.kind == CompiledExpression.LOAD) {
+                      code[length++] = CompiledExpression.LOAD;
+                      code[length++] = node.variable;
+                  }
+                  else { // computed already
+                      code[length++] = CompiledExpression.RECALL;
+                      code[length++] = node.index;
+                  }
+                  maxDepth = Math.max(maxDepth, ++depth);
+                  top--;
+              }
+              else if (done[top - 1] < 2) {
+                  work[top] = done[top - 1]++ == 0 ? node.left : node.right;
+                  done[top] = 0;
+                  top++;
+              }
+              else {
+                  code[length++] = node.kind;
+                  depth--;
+                  if (node.uses > 1) {
+                      node.index = temps++;
+                      code[length++] = CompiledExpression.SAVE;
+                      code[length++] = node.index;
+                  }
+                  top--;
+              }
+          }
+      }
+      return new CompiledExpression(Arrays.copyOf(code, length),
+              Arrays.copyOf(constants, constantCount), maxDepth, temps);
+  }
+
+    /**
+     * a number, a variable, or an operator applied to two nodes; nodes are
+     * equal when they compute the same thing from the same operand nodes
+     */
+    private static final class Node {
+        private final int kind;
+        private final double value;
+        private final int variable;
+        private final Node left;
+        private final Node right;
+        private final int hash;
+        private final boolean mayDivideByZero;
+        // node replacing this one in the optimized tree
+        private Node optimized;
+        // state of compile: number of parents, then the constant or
+        // temporary the node is kept in, -1 if none yet
+        private int uses;
+        private int index;
+
+        Node(int kind, double value, int variable, Node left, Node right) {
+            this.kind = kind;
+            this.value = value;
+            this.variable = variable;
+            this.left = left;
+            this.right = right;
+            int hash = kind;
+            hash = hash * 31 + Double.hashCode(value);
+            hash = hash * 31 + variable;
+            if (left != null) {
+                hash = hash * 31 + left.hash;
+                hash = hash * 31 + right.hash;
+            }
+            this.hash = hash;
+            this.mayDivideByZero = left != null && (left.mayDivideByZero
+                    || right.mayDivideByZero
+                    || (kind == CompiledExpression.DIVIDE
+                    && !(right.kind == CompiledExpression.PUSH
+                    && right.value != 0)));
+        }
+
+        static Node number(double value) {
+            return new Node(CompiledExpression.PUSH, value, 0, null, null);
+        }
+
+        static Node variable(int variable) {
+            return new Node(CompiledExpression.LOAD, 0, variable, null, null);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Node)) {
+                return false;
+            }
+            Node node = (Node) other;
+            // operands are compared by identity: they are unique already
+            return kind == node.kind && hash == node.hash
+                    && Double.doubleToRawLongBits(value)
+                    == Double.doubleToRawLongBits(node.value)
+                    && variable == node.variable
+                    && left == node.left && right == node.right;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
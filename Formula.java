@@ -0,0 +1,553 @@
+/**
+ * Filename: Formula.java
+ * Usage: Formula formula = Formula.compile("price * qty - discount",
+ *                "price", "qty", "discount");
+ *        double ans = formula.evaluate(2.5, 4, 1);
+ *        formula.evaluate(new double[][] {prices, qtys, discounts}, out);
+ * Description: this file contains a formula: an infix expression over named
+ * variables, compiled once and then evaluated for any number of rows of
+ * variable values. A row can be evaluated on its own, or a whole table of
+ * rows can be evaluated column by column.
+ *
+ * Column evaluation runs the program one instruction at a time over a block
+ * of rows instead of one row at a time over the program. Each instruction
+ * becomes a plain loop over primitive arrays with no calls or branches in
+ * its body, which the JIT compiles to SIMD instructions, and the operands
+ * of a block stay in the CPU cache between instructions. Variables are read
+ * straight from their columns and numbers stay scalars, so neither is
+ * copied into the block.
+ *
+ * Formulas are optimized when compiled: constant subexpressions are folded
+ * and repeated subexpressions are computed once, see ExpressionTree.
+ *
+ * A formula evaluated row by row starts in the interpreter. Once it has
+ * been evaluated calculator.jit.threshold times (10000 by default) it is
+ * compiled to a class of its own, see BytecodeCompiler, whose code the JIT
+ * then compiles like hand-written arithmetic; the class is unloaded with the
+ * formula.
+ *
+ * A formula may use the operators and functions of a registry, see
+ * Operators. Those are applied through the registry, so such a formula is
+ * neither optimized nor compiled to bytecode, and its columns are
+ * evaluated row by row.
+ *
+ * A formula is thread-safe. The count of evaluations is not synchronized,
+ * so threads racing on it may compile the formula a little later or more
+ * than once, which changes nothing but the time.
+ */
+
+import java.util.Arrays;
+
+public final class Formula {
+    // rows evaluated per instruction; a block of operands fits in L1 cache
+    private static final int BLOCK_SIZE = 1024;
+    // row evaluations before a formula is compiled to bytecode
+    static final int COMPILE_THRESHOLD
+            = Integer.getInteger("calculator.jit.threshold", 10000);
+
+    private final CompiledExpression expression;
+    private final String[] variables;
+    private final int threshold;
+    private int invocations;
+    // the formula as bytecode, null until compiled
+    private volatile Code code;
+
+  /**
+   * Constructor creates a formula from a compiled expression
+   * @param expression, program that loads the variables
+   * @param variables, names of the variables, in load order
+   * @param threshold, row evaluations before compiling to bytecode
+   */
+  private Formula(CompiledExpression expression, String[] variables,
+          int threshold) {
+      this.expression = expression;
+      this.variables = variables;
+      this.threshold = threshold;
+      if (threshold <= 0) {
+          code = BytecodeCompiler.compile(expression);
+      }
+  }
+
+  /**
+   * Method name: compile
+   * Description: checks an infix expression over the given variables and
+   * converts it into a formula
+   * @param expression in infix notation
+   * @param variables, names the expression may use; a name is a letter or
+   * underscore followed by letters, digits or underscores
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value, or a name that is not one of the variables
+   * @throws SyntaxErrorException when argument is empty, has double
+   * operators, double decimals, unbalanced parentheses, or begins/ends with
+   * an operator
+   * @throws IllegalArgumentException when a variable name is invalid or
+   * given twice
+   * @return compiled formula
+   */
+  public static Formula compile(String expression, String... variables)
+          throws InvalidCharacterException, SyntaxErrorException {
+      return compile(expression, true, COMPILE_THRESHOLD, Operators.DEFAULT,
+              variables);
+  }
+
+  /**
+   * Method name: compile
+   * Description: checks an infix expression over the given variables, which
+   * may use the operators and functions of a registry, and converts it into
+   * a formula
+   * @param expression in infix notation
+   * @param operators, operators and functions the expression may use
+   * @param variables, names the expression may use
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value, or a name that is neither a variable nor a function
+   * @throws SyntaxErrorException when argument is not a valid expression, or
+   * calls a function with the wrong number of arguments
+   * @throws IllegalArgumentException when a variable name is invalid or
+   * given twice
+   * @return compiled formula
+   */
+  public static Formula compile(String expression, Operators operators,
+          String... variables)
+          throws InvalidCharacterException, SyntaxErrorException {
+      return compile(expression, true, COMPILE_THRESHOLD, operators,
+              variables);
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles a formula with or without optimizing it, for
+   * comparing the two
+   * @param expression in infix notation
+   * @param optimize, false to evaluate the formula as written
+   * @param variables, names the expression may use
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value, or a name that is not one of the variables
+   * @throws SyntaxErrorException when argument is not a valid expression
+   * @return compiled formula
+   */
+  static Formula compile(String expression, boolean optimize,
+          String... variables)
+          throws InvalidCharacterException, SyntaxErrorException {
+      return compile(expression, optimize, COMPILE_THRESHOLD, variables);
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles a formula, for comparing it optimized or not,
+   * interpreted or as bytecode
+   * @param expression in infix notation
+   * @param optimize, false to evaluate the formula as written
+   * @param threshold, row evaluations before compiling to bytecode; 0 to
+   * compile at once, Integer.MAX_VALUE never to
+   * @param variables, names the expression may use
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value, or a name that is not one of the variables
+   * @throws SyntaxErrorException when argument is not a valid expression
+   * @return compiled formula
+   */
+  static Formula compile(String expression, boolean optimize, int threshold,
+          String... variables)
+          throws InvalidCharacterException, SyntaxErrorException {
+      return compile(expression, optimize, threshold, Operators.DEFAULT,
+              variables);
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles a formula over a registry of operators and
+   * functions, for comparing it optimized or not, interpreted or as bytecode
+   * @param expression in infix notation
+   * @param optimize, false to evaluate the formula as written
+   * @param threshold, row evaluations before compiling to bytecode; 0 to
+   * compile at once, Integer.MAX_VALUE never to
+   * @param operators, operators and functions the expression may use
+   * @param variables, names the expression may use
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value, or a name that is not one of the variables
+   * @throws SyntaxErrorException when argument is not a valid expression
+   * @return compiled formula
+   */
+  static Formula compile(String expression, boolean optimize, int threshold,
+          Operators operators, String... variables)
+          throws InvalidCharacterException, SyntaxErrorException {
+      String[] names = variables.clone();
+      for (int i = 0; i < names.length; i++) {
+          if (!Tokenizer.isName(names[i])) {
+              throw new IllegalArgumentException(
+                      "Invalid variable name: " + names[i]);
+          }
+          for (int j = 0; j < i; j++) {
+              if (names[j].equals(names[i])) {
+                  throw new IllegalArgumentException(
+                          "Duplicate variable name: " + names[i]);
+              }
+          }
+      }
+      Tokenizer tokens = new Tokenizer(operators);
+      tokens.tokenize(expression, names);
+      CompiledExpression program = CompiledExpression.fromTokens(tokens);
+      return new Formula(optimize ? program.optimize() : program, names,
+              threshold);
+  }
+
+  /**
+   * Method name: variables
+   * @return names of the variables, in the order values are given
+   */
+  public String[] variables() {
+      return variables.clone();
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: evaluates the formula for one row of variable values
+   * @param values, value of each variable, in the order of variables()
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @throws IllegalArgumentException when the number of values is not the
+   * number of variables
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(double... values) throws DivisionByZeroException {
+      if (values.length != variables.length) {
+          throw new IllegalArgumentException("Expected " + variables.length
+                  + " values, got " + values.length);
+      }
+      Code compiled = code;
+      if (compiled != null) {
+          return compiled.evaluate(values);
+      }
+      // stops writing the count once reached, so threads do not contend
+      if (invocations < threshold && ++invocations == threshold) {
+          code = BytecodeCompiler.compile(expression);
+      }
+      return expression.evaluate(expression.scratch(), values);
+  }
+
+  /**
+   * Method name: isCompiled
+   * @return whether rows are evaluated by bytecode rather than interpreted
+   */
+  boolean isCompiled() {
+      return code != null;
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: evaluates the formula for every row of a table given as
+   * columns, writing row i's answer to out[i]
+   * @param columns, one column of values per variable, in the order of
+   * variables(); each holds at least out.length values
+   * @param out, array the answers are written to
+   * @throws DivisionByZeroException when any row divides by zero; out is
+   * then partly written
+   * @throws IllegalArgumentException when the number of columns is not the
+   * number of variables, or a column is shorter than out
+   */
+  public void evaluate(double[][] columns, double[] out)
+          throws DivisionByZeroException {
+      if (columns.length != variables.length) {
+          throw new IllegalArgumentException("Expected " + variables.length
+                  + " columns, got " + columns.length);
+      }
+      for (double[] column : columns) {
+          if (column.length < out.length) {
+              throw new IllegalArgumentException("Column of "
+                      + column.length + " values for " + out.length + " rows");
+          }
+      }
+      if (expression.usesOperations()) { // no column loop to run them in
+          double[] stack = expression.scratch();
+          double[] row = new double[columns.length];
+          for (int i = 0; i < out.length; i++) {
+              for (int j = 0; j < row.length; j++) {
+                  row[j] = columns[j][i];
+              }
+              out[i] = expression.evaluate(stack, row);
+          }
+          return;
+      }
+      Block block = new Block(expression.maxStack(),
+              Math.min(BLOCK_SIZE, out.length));
+      for (int start = 0; start < out.length; start += BLOCK_SIZE) {
+          int rows = Math.min(BLOCK_SIZE, out.length - start);
+          block.evaluate(expression, columns, start, rows, out);
+      }
+  }
+
+  /**
+   * Method name: checkDivisor
+   * Description: checks a column of divisors before dividing by it
+   * @param opcode, operator about to be applied
+   * @param b, divisors
+   * @param bOffset, offset of the first divisor
+   * @param rows, number of divisors
+   * @throws DivisionByZeroException when opcode is DIVIDE and a divisor is
+   * zero
+   */
+  private static void checkDivisor(int opcode, double[] b, int bOffset,
+          int rows) throws DivisionByZeroException {
+      if (opcode != CompiledExpression.DIVIDE) {
+          return;
+      }
+      for (int i = 0; i < rows; i++) {
+          if (b[bOffset + i] == 0) {
+              throw new DivisionByZeroException();
+          }
+      }
+  }
+
+  /**
+   * Method name: negate
+   * @param result, array the negated values are written to from 0
+   * @param a, values to negate
+   * @param aOffset, offset of the first value
+   * @param rows, number of values
+   */
+  private static void negate(double[] result, double[] a, int aOffset,
+          int rows) {
+      for (int i = 0; i < rows; i++) {
+          result[i] = -a[aOffset + i];
+      }
+  }
+
+  /**
+   * Method name: applyArrays
+   * Description: result[i] = a[aOffset + i] op b[bOffset + i]
+   * @param opcode, one of ADD, SUBTRACT, MULTIPLY or DIVIDE
+   * @param result, array the results are written to from 0
+   * @param a, left operands
+   * @param aOffset, offset of the first left operand
+   * @param b, right operands; nonzero if opcode is DIVIDE
+   * @param bOffset, offset of the first right operand
+   * @param rows, number of results
+   */
+  private static void applyArrays(int opcode, double[] result, double[] a,
+          int aOffset, double[] b, int bOffset, int rows) {
+      switch (opcode) {
+          case CompiledExpression.ADD:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] + b[bOffset + i];
+              }
+              break;
+          case CompiledExpression.SUBTRACT:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] - b[bOffset + i];
+              }
+              break;
+          case CompiledExpression.MULTIPLY:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] * b[bOffset + i];
+              }
+              break;
+          case CompiledExpression.DIVIDE:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] / b[bOffset + i];
+              }
+              break;
+      }
+  }
+
+  /**
+   * Method name: applyNumber
+   * Description: result[i] = a[aOffset + i] op number
+   * @param opcode, one of ADD, SUBTRACT, MULTIPLY or DIVIDE
+   * @param result, array the results are written to from 0
+   * @param a, left operands
+   * @param aOffset, offset of the first left operand
+   * @param number, right operand
+   * @param rows, number of results
+   * @throws DivisionByZeroException when dividing by a zero number
+   */
+  private static void applyNumber(int opcode, double[] result, double[] a,
+          int aOffset, double number, int rows)
+          throws DivisionByZeroException {
+      switch (opcode) {
+          case CompiledExpression.ADD:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] + number;
+              }
+              break;
+          case CompiledExpression.SUBTRACT:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] - number;
+              }
+              break;
+          case CompiledExpression.MULTIPLY:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] * number;
+              }
+              break;
+          case CompiledExpression.DIVIDE:
+              if (number == 0) {
+                  throw new DivisionByZeroException();
+              }
+              for (int i = 0; i < rows; i++) {
+                  result[i] = a[aOffset + i] / number;
+              }
+              break;
+      }
+  }
+
+  /**
+   * Method name: applyToNumber
+   * Description: result[i] = number op b[bOffset + i]
+   * @param opcode, one of ADD, SUBTRACT, MULTIPLY or DIVIDE
+   * @param result, array the results are written to from 0
+   * @param number, left operand
+   * @param b, right operands; nonzero if opcode is DIVIDE
+   * @param bOffset, offset of the first right operand
+   * @param rows, number of results
+   */
+  private static void applyToNumber(int opcode, double[] result,
+          double number, double[] b, int bOffset, int rows) {
+      switch (opcode) {
+          case CompiledExpression.ADD:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = number + b[bOffset + i];
+              }
+              break;
+          case CompiledExpression.SUBTRACT:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = number - b[bOffset + i];
+              }
+              break;
+          case CompiledExpression.MULTIPLY:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = number * b[bOffset + i];
+              }
+              break;
+          case CompiledExpression.DIVIDE:
+              for (int i = 0; i < rows; i++) {
+                  result[i] = number / b[bOffset + i];
+              }
+              break;
+      }
+  }
+
+    /**
+     * operand stack of column evaluation; each operand is a number, or a
+     * run of rows of an array, which is either an input column or a buffer
+     * owned by the operand's stack slot; temporaries take the slots above
+     * the deepest operand
+     */
+    private static final class Block {
+        private final double[][] buffers;
+        private final double[][] arrays;
+        private final int[] offsets;
+        private final double[] numbers;
+
+        Block(int maxStack, int size) {
+            buffers = new double[maxStack][size];
+            arrays = new double[maxStack][];
+            offsets = new int[maxStack];
+            numbers = new double[maxStack];
+        }
+
+        /**
+         * runs the program over rows start to start + rows - 1, writing
+         * the answers to out
+         */
+        void evaluate(CompiledExpression expression, double[][] columns,
+                int start, int rows, double[] out)
+                throws DivisionByZeroException {
+            int[] code = expression.code;
+            int tempBase = expression.maxStack() - expression.temps;
+            int top = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                int opcode = code[pc];
+                if (opcode == CompiledExpression.PUSH) {
+                    arrays[top] = null;
+                    numbers[top++] = expression.constants[code[++pc]];
+                }
+                else if (opcode == CompiledExpression.LOAD) {
+                    int variable = code[++pc];
+                    if (variable >= 0) {
+                        arrays[top] = columns[variable];
+                        offsets[top] = start;
+                    }
+                    else {
+                        negate(buffers[top], columns[~variable], start,
+                                rows);
+                        arrays[top] = buffers[top];
+                        offsets[top] = 0;
+                    }
+                    top++;
+                }
+                else if (opcode == CompiledExpression.SAVE) {
+                    save(top - 1, tempBase + code[++pc]);
+                }
+                else if (opcode == CompiledExpression.RECALL) {
+                    int temp = tempBase + code[++pc];
+                    arrays[top] = arrays[temp];
+                    offsets[top] = offsets[temp];
+                    numbers[top++] = numbers[temp];
+                }
+                else {
+                    top--;
+                    apply(opcode, top - 1, top, rows);
+                }
+            }
+            top--;
+            if (arrays[top] == null) {
+                Arrays.fill(out, start, start + rows, numbers[top]);
+            }
+            else {
+                System.arraycopy(arrays[top], offsets[top], out, start, rows);
+            }
+        }
+
+        /**
+         * keeps the operand in slot top in slot temp; a buffer is handed
+         * over to the temporary rather than copied
+         */
+        private void save(int top, int temp) {
+            arrays[temp] = arrays[top];
+            offsets[temp] = offsets[top];
+            numbers[temp] = numbers[top];
+            if (arrays[top] == buffers[top]) {
+                buffers[top] = buffers[temp];
+                buffers[temp] = arrays[top];
+            }
+        }
+
+        /**
+         * applies an operator to the operands in slots left and right,
+         * leaving the result in slot left
+         */
+        private void apply(int opcode, int left, int right, int rows)
+                throws DivisionByZeroException {
+            double[] a = arrays[left];
+            double[] b = arrays[right];
+            if (a == null && b == null) {
+                numbers[left] = CompiledExpression.apply(opcode,
+                        numbers[left], numbers[right]);
+                return;
+            }
+            double[] result = buffers[left];
+            if (b == null) {
+                applyNumber(opcode, result, a, offsets[left], numbers[right],
+                        rows);
+            }
+            else if (a == null) {
+                checkDivisor(opcode, b, offsets[right], rows);
+                applyToNumber(opcode, result, numbers[left], b,
+                        offsets[right], rows);
+            }
+            else {
+                checkDivisor(opcode, b, offsets[right], rows);
+                applyArrays(opcode, result, a, offsets[left], b,
+                        offsets[right], rows);
+            }
+            arrays[left] = result;
+            offsets[left] = 0;
+        }
+    }
+
+    /**
+     * a formula compiled to bytecode, implemented by the hidden classes of
+     * BytecodeCompiler
+     */
+    interface Code {
+        double evaluate(double[] values) throws DivisionByZeroException;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Filename: FusedEvaluator.java
+ * Usage: FusedEvaluator evaluator = new FusedEvaluator();
+ *        Result result = evaluator.calculate("(24.3 + 4) / 78");
+ *        double ans = evaluator.evaluate("(24.3 + 4) / 78");
+ * Description: this file contains an evaluator for expressions evaluated
+ * only once, which checks, parses and evaluates an expression in a single
+ * left-to-right pass. The tokenizer hands each token over as it is found
+ * rather than keeping it, and each operator is applied as soon as the next
+ * operator of no higher precedence, a closing parenthesis or the end shows
+ * that its right operand is complete, which is precedence climbing with
+ * the recursion kept on an operator stack. No token list, postfix text or
+ * program is built; only the operands and operators waiting on open
+ * parentheses or higher precedence are kept.
+ *
+ * It accepts and rejects exactly the expressions Calculator.calculate
+ * does, with the same errors at the same offsets: an error of the
+ * tokenizer anywhere before an error of the compiler, and a division by
+ * zero only if there is neither, so an expression is read to the end
+ * unless the tokenizer fails.
+ *
+ * An evaluator may be reused, but not by two threads at once.
+ */
+
+import java.util.Arrays;
+
+public final class FusedEvaluator {
+    private static final int INITIAL_DEPTH = 16;
+    private static final int NONE = -1;
+
+    private final Tokenizer tokens = new Tokenizer();
+    private final Tokenizer.Sink sink = this::token;
+
+    // operands, and operators with their offsets, waiting to be applied
+    private double[] operands = new double[INITIAL_DEPTH];
+    private int depth;
+    private int[] operators = new int[INITIAL_DEPTH];
+    private int[] operatorStarts = new int[INITIAL_DEPTH];
+    private int top;
+    // false once the answer can no longer be a value
+    private boolean computing;
+    private boolean dividedByZero;
+    // first operator missing an operand, or malformed number
+    private int invalid;
+    // unbalanced closing parenthesis, which stops the compiler
+    private int unbalanced;
+
+  /**
+   * Method name: calculate
+   * Description: checks, parses and evaluates an infix expression in one
+   * pass
+   * @param input, expression in infix notation
+   * @return value of the expression, or its error
+   */
+  public Result calculate(CharSequence input) {
+      depth = 0;
+      top = 0;
+      computing = true;
+      dividedByZero = false;
+      invalid = NONE;
+      unbalanced = NONE;
+      if (!tokens.scan(input, sink)) {
+          return Result.failure(tokens);
+      }
+      if (unbalanced != NONE) {
+          return Result.failure(Result.SYNTAX_ERROR, unbalanced, null);
+      }
+      while (top > 0) {
+          top--;
+          if (operators[top] == Tokenizer.OPEN_PARENTHESIS) { // unbalanced
+              return Result.failure(Result.SYNTAX_ERROR, operatorStarts[top],
+                      null);
+          }
+          apply(operators[top], operatorStarts[top]);
+      }
+      if (invalid != NONE) {
+          return Result.failure(Result.SYNTAX_ERROR, invalid, null);
+      }
+      if (depth <= 0) { // nothing left to answer
+          return Result.failure(Result.SYNTAX_ERROR, input.length(), null);
+      }
+      if (dividedByZero) {
+          return Result.dividedByZero();
+      }
+      return Result.of(operands[depth - 1]);
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: checks, parses and evaluates an infix expression in one
+   * pass
+   * @param input, expression in infix notation
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(CharSequence input) throws InvalidCharacterException,
+          SyntaxErrorException, DivisionByZeroException {
+      return calculate(input).orThrow();
+  }
+
+  /**
+   * Method name: token
+   * Description: takes the next token from the tokenizer, applying the
+   * operators it completes, as CompiledExpression.compile would emit them
+   * @param kind, token kind of Tokenizer
+   * @param start, offset of the token in the input
+   * @param value, value of a number token
+   */
+  private void token(int kind, int start, double value) {
+      if (unbalanced != NONE) { // the compiler has stopped
+          return;
+      }
+      if (kind == Tokenizer.NUMBER) {
+          if (Double.isNaN(value) && invalid == NONE) {
+              invalid = start;
+              computing = false;
+          }
+          push(value);
+      }
+      else if (kind == Tokenizer.OPEN_PARENTHESIS) {
+          pushOperator(kind, start);
+      }
+      else if (kind == Tokenizer.CLOSED_PARENTHESIS) {
+          // backtracks until an open parenthesis is met
+          while (top > 0
+                  && operators[top - 1] != Tokenizer.OPEN_PARENTHESIS) {
+              top--;
+              apply(operators[top], operatorStarts[top]);
+          }
+          if (top == 0) {
+              unbalanced = start;
+              return;
+          }
+          top--;
+      }
+      else if (kind != Tokenizer.DECIMAL) { // operator
+          // stack has higher priority than current, apply top
+          while (top > 0 && precedence(operators[top - 1])
+                  >= precedence(kind)) {
+              top--;
+              apply(operators[top], operatorStarts[top]);
+          }
+          pushOperator(kind, start);
+      }
+  }
+
+  /**
+   * Method name: push
+   * @param value, operand to push
+   */
+  private void push(double value) {
+      if (computing) {
+          if (depth == operands.length) {
+              operands = Arrays.copyOf(operands, depth * 2);
+          }
+          operands[depth] = value;
+      }
+      depth++;
+  }
+
+  /**
+   * Method name: pushOperator
+   * @param kind, operator or OPEN_PARENTHESIS
+   * @param start, offset of the operator in the input
+   */
+  private void pushOperator(int kind, int start) {
+      if (top == operators.length) {
+          operators = Arrays.copyOf(operators, top * 2);
+          operatorStarts = Arrays.copyOf(operatorStarts, top * 2);
+      }
+      operators[top] = kind;
+      operatorStarts[top] = start;
+      top++;
+  }
+
+  /**
+   * Method name: apply
+   * Description: applies an operator to the two operands on top
+   * @param opcode, operator
+   * @param start, offset of the operator in the input
+   */
+  private void apply(int opcode, int start) {
+      if (depth-- < 2) {
+          if (invalid == NONE) {
+              invalid = start;
+          }
+          computing = false;
+      }
+      if (!computing) {
+          return;
+      }
+      double num2 = operands[depth];
+      if (opcode == CompiledExpression.DIVIDE && num2 == 0) {
+          dividedByZero = true;
+          computing = false;
+          return;
+      }
+      operands[depth - 1]
+              = CompiledExpression.operate(opcode, operands[depth - 1], num2);
+  }
+
+  /**
+   * Method name: precedence
+   * @param kind, operator opcode or OPEN_PARENTHESIS
+   * @return 1 if ADD or SUBTRACT, 2 if MULTIPLY or DIVIDE, 0 otherwise
+   */
+  private static int precedence(int kind) {
+      switch (kind) {
+          case Tokenizer.ADD:
+          case Tokenizer.SUBTRACT: return 1;
+          case Tokenizer.MULTIPLY:
+          case Tokenizer.DIVIDE: return 2;
+      }
+      return 0;
+  }
+}
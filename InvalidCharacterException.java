@@ -15,10 +15,20 @@
     * @param c, invalid character
     */
     public InvalidCharacterException(String c) {
-      super(String.format(EXCEPTION_MSG, c));
+      super(message(c));
       this.invalidChar = c;
     }
 
+    /**
+     * Method name: message
+     * Description: formats the message without creating the exception
+     * @param c, invalid character
+     * @return String with error message containing which invalid character
+     */
+     static String message(String c) {
+       return String.format(EXCEPTION_MSG, c);
+     }
+
     /**
      * Method name: toString
      * Description: overrides toString method to throw Exception
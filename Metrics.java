@@ -0,0 +1,389 @@
+/**
+ * Filename: Metrics.java
+ * Usage: java -Dcalculator.metrics=true Calculator ...
+ *        double ans = Metrics.calculate(tokens, expression);
+ * Description: this file contains the instrumentation of the calculator.
+ * When enabled, the time of each phase of every expression (tokenize,
+ * compile to postfix code, evaluate) is recorded in a latency histogram,
+ * and evaluations, tokens and errors by exception are counted. The metrics
+ * are an MXBean named Calculator:type=Metrics, and the command line prints
+ * them to standard error when it exits.
+ *
+ * Metrics are enabled by the system property calculator.metrics, read once.
+ * The static methods test a static final flag, so when disabled the JIT
+ * removes the instrumentation and they cost the same as the phases alone.
+ *
+ * Histograms keep 8 buckets per power of two, so a percentile is within
+ * 12.5% of the true value; recording is a few atomic increments and takes
+ * no lock.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public final class Metrics implements MetricsMXBean {
+    public static final String PROPERTY = "calculator.metrics";
+    public static final String NAME = "Calculator:type=Metrics";
+    static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    // exception for each error code of Result
+    private static final String[] ERROR_NAMES = {null,
+            "InvalidCharacterException", "SyntaxErrorException",
+            "DivisionByZeroException"};
+    private static final Metrics GLOBAL = new Metrics();
+    private static final String HEADER = "%-10s%12s%12s%12s%12s%12s%12s%12s%n";
+    private static final String ROW = "%-10s%12d%12d%12d%12d%12d%12d%12d%n";
+
+    private final Histogram tokenize = new Histogram();
+    private final Histogram compile = new Histogram();
+    private final Histogram evaluate = new Histogram();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    // errors by error code of Result
+    private final LongAdder[] errors = new LongAdder[ERROR_NAMES.length];
+
+  /**
+   * Constructor creates empty metrics; the calculator records into the one
+   * returned by get
+   */
+  Metrics() {
+      for (int i = 1; i < errors.length; i++) {
+          errors[i] = new LongAdder();
+      }
+  }
+
+  /**
+   * Method name: get
+   * @return metrics recorded by the calculator
+   */
+  public static Metrics get() {
+      return GLOBAL;
+  }
+
+  /**
+   * Method name: register
+   * Description: makes the calculator's metrics available over JMX; does
+   * nothing if they are already
+   * @return name of the MXBean
+   */
+  public static ObjectName register() {
+      try {
+          ObjectName name = new ObjectName(NAME);
+          try {
+              ManagementFactory.getPlatformMBeanServer()
+                      .registerMBean(GLOBAL, name);
+          } catch (InstanceAlreadyExistsException e) {
+              // registered before
+          }
+          return name;
+      } catch (JMException e) {
+          throw new IllegalStateException(e);
+      }
+  }
+
+  /**
+   * Method name: calculate
+   * Description: tokenizes, compiles and evaluates an expression, recording
+   * metrics if enabled
+   * @param tokens, tokenizer of the current thread
+   * @param expression, expression in infix notation
+   * @return value of the expression, or its error
+   */
+  static Result calculate(Tokenizer tokens, CharSequence expression) {
+      if (!scan(tokens, expression)) {
+          return Result.failure(tokens);
+      }
+      CompiledExpression program = compile(tokens);
+      if (program == null) {
+          return Result.failure(tokens);
+      }
+      double[] stack = program.scratch();
+      int top = run(program, stack);
+      return top < 0 ? Result.dividedByZero() : Result.of(stack[top - 1]);
+  }
+
+  /**
+   * Method name: scan
+   * Description: tokenizes an expression, recording metrics if enabled
+   * @param tokens, tokenizer of the current thread
+   * @param expression, expression in infix notation
+   * @return true if the expression was split into tokens, false if the
+   * tokenizer holds an error
+   */
+  static boolean scan(Tokenizer tokens, CharSequence expression) {
+      if (ENABLED) {
+          return GLOBAL.timeScan(tokens, expression);
+      }
+      return tokens.scan(expression);
+  }
+
+  /**
+   * Method name: compile
+   * Description: compiles tokenized expression, recording metrics if
+   * enabled
+   * @param tokens, tokenized expression
+   * @return compiled expression, or null if the tokenizer holds an error
+   */
+  static CompiledExpression compile(Tokenizer tokens) {
+      if (ENABLED) {
+          return GLOBAL.timeCompile(tokens);
+      }
+      return CompiledExpression.compile(tokens);
+  }
+
+  /**
+   * Method name: run
+   * Description: evaluates a compiled expression, recording metrics if
+   * enabled
+   * @param program, compiled expression
+   * @param stack, operand stack of at least program.maxStack() numbers
+   * @return number of operands left on the stack, the answer on top; -1
+   * when trying to divide by zero
+   */
+  static int run(CompiledExpression program, double[] stack) {
+      if (ENABLED) {
+          return GLOBAL.timeRun(program, stack);
+      }
+      return program.run(0, program.code.length, stack, 0,
+              CompiledExpression.NO_VALUES);
+  }
+
+  /**
+   * Method name: timeScan
+   * Description: tokenizes an expression and records the time taken and
+   * the number of tokens, or the error
+   * @param tokens, tokenizer of the current thread
+   * @param expression, expression in infix notation
+   * @return true if the expression was split into tokens
+   */
+  boolean timeScan(Tokenizer tokens, CharSequence expression) {
+      long start = System.nanoTime();
+      if (!tokens.scan(expression)) {
+          failed(tokens.error());
+          return false;
+      }
+      tokenize.record(System.nanoTime() - start);
+      this.tokens.add(tokens.size());
+      return true;
+  }
+
+  /**
+   * Method name: timeCompile
+   * Description: compiles tokenized expression and records the time
+   * taken, or the error
+   * @param tokens, tokenized expression
+   * @return compiled expression, or null if the tokenizer holds an error
+   */
+  CompiledExpression timeCompile(Tokenizer tokens) {
+      long start = System.nanoTime();
+      CompiledExpression program = CompiledExpression.compile(tokens);
+      if (program == null) {
+          failed(tokens.error());
+          return null;
+      }
+      compile.record(System.nanoTime() - start);
+      return program;
+  }
+
+  /**
+   * Method name: timeRun
+   * Description: evaluates a compiled expression and records the time
+   * taken, or the division by zero
+   * @param program, compiled expression
+   * @param stack, operand stack of at least program.maxStack() numbers
+   * @return number of operands left on the stack, -1 when trying to divide
+   * by zero
+   */
+  int timeRun(CompiledExpression program, double[] stack) {
+      long start = System.nanoTime();
+      int top = program.run(0, program.code.length, stack, 0,
+              CompiledExpression.NO_VALUES);
+      if (top < 0) {
+          failed(Result.DIVISION_BY_ZERO);
+          return top;
+      }
+      evaluate.record(System.nanoTime() - start);
+      evaluations.increment();
+      return top;
+  }
+
+  /**
+   * Method name: failed
+   * Description: counts an error
+   * @param error, error code of Result
+   */
+  void failed(int error) {
+      errors[error].increment();
+  }
+
+  @Override
+  public boolean isEnabled() {
+      return ENABLED;
+  }
+
+  @Override
+  public long getEvaluations() {
+      return evaluations.sum();
+  }
+
+  @Override
+  public long getTokens() {
+      return tokens.sum();
+  }
+
+  @Override
+  public Map<String, Long> getErrors() {
+      TreeMap<String, Long> counts = new TreeMap<>();
+      for (int i = 1; i < errors.length; i++) {
+          long count = errors[i].sum();
+          if (count > 0) {
+              counts.put(ERROR_NAMES[i], count);
+          }
+      }
+      return counts;
+  }
+
+  @Override
+  public Map<String, Long> getTokenizeNanos() {
+      return tokenize.summary();
+  }
+
+  @Override
+  public Map<String, Long> getCompileNanos() {
+      return compile.summary();
+  }
+
+  @Override
+  public Map<String, Long> getEvaluateNanos() {
+      return evaluate.summary();
+  }
+
+  @Override
+  public String getReport() {
+      StringBuilder out = new StringBuilder();
+      out.append(String.format(HEADER, "phase (ns)", "count", "mean", "p50",
+              "p90", "p99", "p99.9", "max"));
+      tokenize.appendRow("tokenize", out);
+      compile.appendRow("compile", out);
+      evaluate.appendRow("evaluate", out);
+      out.append("evaluations ").append(getEvaluations())
+              .append(", tokens ").append(getTokens())
+              .append(", errors ").append(getErrors())
+              .append(System.lineSeparator());
+      return out.toString();
+  }
+
+  @Override
+  public void reset() {
+      tokenize.reset();
+      compile.reset();
+      evaluate.reset();
+      evaluations.reset();
+      tokens.reset();
+      for (int i = 1; i < errors.length; i++) {
+          errors[i].reset();
+      }
+  }
+
+    /**
+     * counts of latencies in buckets 8 to a power of two: values below 8
+     * have a bucket each, and [8 << k, 16 << k) is cut into 8 equal buckets
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        private static final int BUCKETS = 61 * SUB_BUCKETS;
+        private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+        private static final String[] PERCENTILE_NAMES
+                = {"p50", "p90", "p99", "p99.9"};
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts.incrementAndGet(bucket(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - 2) * SUB_BUCKETS
+                    + (int) ((value >>> (exponent - 3)) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * largest value in a bucket
+         */
+        static long highest(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long low = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return low + (1L << shift) - 1;
+        }
+
+        /**
+         * value below which the given fraction of recorded values fall, at
+         * most the largest recorded
+         */
+        long percentile(double fraction) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS && total > 0; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(highest(i), max.get());
+                }
+            }
+            return 0;
+        }
+
+        Map<String, Long> summary() {
+            Map<String, Long> summary = new TreeMap<>();
+            long n = count.sum();
+            summary.put("count", n);
+            summary.put("mean", n == 0 ? 0 : sum.sum() / n);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                summary.put(PERCENTILE_NAMES[i], percentile(PERCENTILES[i]));
+            }
+            summary.put("max", max.get());
+            return summary;
+        }
+
+        void appendRow(String phase, StringBuilder out) {
+            Map<String, Long> summary = summary();
+            out.append(String.format(ROW, phase, summary.get("count"),
+                    summary.get("mean"), summary.get("p50"),
+                    summary.get("p90"), summary.get("p99"),
+                    summary.get("p99.9"), summary.get("max")));
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Filename: MetricsMXBean.java
+ * Usage: jconsole, attributes of Calculator:type=Metrics
+ * Description: this file contains the management interface of Metrics, as
+ * seen over JMX. Latencies are in nanoseconds, summarized by count, mean,
+ * percentiles and maximum; maps of counts appear as tables.
+ */
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+
+  /**
+   * Method name: isEnabled
+   * @return true if the calculator records metrics
+   */
+  boolean isEnabled();
+
+  /**
+   * Method name: getEvaluations
+   * @return number of expressions evaluated without error
+   */
+  long getEvaluations();
+
+  /**
+   * Method name: getTokens
+   * @return number of tokens in all expressions tokenized
+   */
+  long getTokens();
+
+  /**
+   * Method name: getErrors
+   * @return number of errors by exception name
+   */
+  Map<String, Long> getErrors();
+
+  /**
+   * Method name: getTokenizeNanos
+   * @return summary of the latency of tokenizing
+   */
+  Map<String, Long> getTokenizeNanos();
+
+  /**
+   * Method name: getCompileNanos
+   * @return summary of the latency of compiling tokens into a program
+   */
+  Map<String, Long> getCompileNanos();
+
+  /**
+   * Method name: getEvaluateNanos
+   * @return summary of the latency of evaluating a program
+   */
+  Map<String, Long> getEvaluateNanos();
+
+  /**
+   * Method name: getReport
+   * @return every metric as a printable table
+   */
+  String getReport();
+
+  /**
+   * Method name: reset
+   * Description: sets every counter and histogram back to zero
+   */
+  void reset();
+}
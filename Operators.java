@@ -0,0 +1,336 @@
+/**
+ * Filename: Operators.java
+ * Usage: Evaluator evaluator = new Evaluator(Operators.STANDARD);
+ *        Operators mine = Operators.STANDARD.withFunction("hypot", 2,
+ *                (args, i) -> Math.hypot(args[i], args[i + 1]));
+ * Description: this file contains a registry of the operators and functions
+ * an expression may use, with the arity, precedence and associativity of
+ * each. DEFAULT holds the four operators of the calculator, and is what
+ * every mode uses; STANDARD adds ^ (power, right associative, above * and
+ * /), % (remainder, with * and /), sqrt(x), min(x, y) and max(x, y). A
+ * function is a name followed by its arguments in parentheses, separated by
+ * commas.
+ *
+ * Each registered operator and function is resolved to a dense opcode when
+ * an expression is tokenized, from FIRST_OPCODE up. A program dispatches
+ * the four operators of DEFAULT with a switch on its opcode and any other
+ * through the entry at its opcode in a table, and the tokenizer finds an
+ * operator character through a table indexed by the character and a
+ * function through a hash map, so no lookup grows with the number of
+ * operators and functions registered.
+ *
+ * A registry is immutable and thread-safe; withOperator and withFunction
+ * return a new one.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class Operators {
+    // opcode of the first registered operator or function
+    static final int FIRST_OPCODE = 16;
+    // characters that are not operators but are part of the grammar
+    private static final String RESERVED = "().,_";
+    private static final int ASCII = 128;
+
+    public static final Operators DEFAULT = new Operators();
+    public static final Operators STANDARD = DEFAULT
+            .withOperator('%', 2, false, Operators::remainder)
+            .withOperator('^', 3, true, Math::pow)
+            .withFunction("sqrt", 1, (args, i) -> Math.sqrt(args[i]))
+            .withFunction("min", 2,
+                    (args, i) -> Math.min(args[i], args[i + 1]))
+            .withFunction("max", 2,
+                    (args, i) -> Math.max(args[i], args[i + 1]));
+
+    // precedence of each ASCII character: above 0 for an operator, 0 for a
+    // parenthesis, -1 otherwise, as Calculator.precedence
+    private final int[] precedences;
+    // token kind of each ASCII character, -1 if it is not a symbol
+    private final int[] kinds;
+    // registered operators and functions, by opcode - FIRST_OPCODE
+    private final Entry[] entries;
+    private final Map<String, Integer> functions;
+
+  /**
+   * Constructor creates the registry of the four operators
+   */
+  private Operators() {
+      precedences = new int[ASCII];
+      kinds = new int[ASCII];
+      Arrays.fill(precedences, -1);
+      Arrays.fill(kinds, -1);
+      precedences['+'] = 1;
+      precedences['-'] = 1;
+      precedences['*'] = 2;
+      precedences['/'] = 2;
+      precedences['('] = 0;
+      precedences[')'] = 0;
+      kinds['+'] = Tokenizer.ADD;
+      kinds['-'] = Tokenizer.SUBTRACT;
+      kinds['*'] = Tokenizer.MULTIPLY;
+      kinds['/'] = Tokenizer.DIVIDE;
+      kinds['('] = Tokenizer.OPEN_PARENTHESIS;
+      kinds[')'] = Tokenizer.CLOSED_PARENTHESIS;
+      kinds['.'] = Tokenizer.DECIMAL;
+      entries = new Entry[0];
+      functions = new HashMap<>();
+  }
+
+  /**
+   * Constructor creates a registry with one more entry than another
+   * @param base, registry to copy
+   * @param entry, operator or function to add
+   */
+  private Operators(Operators base, Entry entry) {
+      precedences = base.precedences.clone();
+      kinds = base.kinds.clone();
+      entries = Arrays.copyOf(base.entries, base.entries.length + 1);
+      entries[base.entries.length] = entry;
+      functions = new HashMap<>(base.functions);
+      int opcode = FIRST_OPCODE + base.entries.length;
+      if (entry.function) {
+          functions.put(entry.name, opcode);
+          kinds[','] = Tokenizer.COMMA;
+      }
+      else {
+          char symbol = entry.name.charAt(0);
+          precedences[symbol] = entry.precedence;
+          kinds[symbol] = opcode;
+      }
+  }
+
+  /**
+   * Method name: withOperator
+   * Description: registers a binary operator
+   * @param symbol, ASCII character that is not a letter, digit, white
+   * space, parenthesis, decimal, comma or underscore, and not yet an
+   * operator
+   * @param precedence, 1 binds as loosely as + and -, 2 as * and /, higher
+   * binds tighter
+   * @param rightAssociative, true if a ^ b ^ c is a ^ (b ^ c)
+   * @param operation, arithmetic of the operator
+   * @throws IllegalArgumentException when the symbol cannot be used or the
+   * precedence is below 1
+   * @return registry with the operator added
+   */
+  public Operators withOperator(char symbol, int precedence,
+          boolean rightAssociative, Binary operation) {
+      if (symbol >= ASCII || Character.isLetterOrDigit(symbol)
+              || Tokenizer.isSpace(symbol) || RESERVED.indexOf(symbol) >= 0
+              || Character.isISOControl(symbol)) {
+          throw new IllegalArgumentException("Invalid operator: " + symbol);
+      }
+      if (precedences[symbol] > 0) {
+          throw new IllegalArgumentException("Duplicate operator: "
+                  + symbol);
+      }
+      if (precedence < 1) {
+          throw new IllegalArgumentException("Precedence must be at least 1");
+      }
+      return new Operators(this, new Entry(String.valueOf(symbol), 2,
+              precedence, rightAssociative, false,
+              (args, i) -> operation.apply(args[i], args[i + 1])));
+  }
+
+  /**
+   * Method name: withFunction
+   * Description: registers a function
+   * @param name, a letter or underscore followed by letters, digits or
+   * underscores, not yet a function
+   * @param arity, number of arguments
+   * @param function, arithmetic of the function
+   * @throws IllegalArgumentException when the name is invalid or taken, or
+   * the arity is negative
+   * @return registry with the function added
+   */
+  public Operators withFunction(String name, int arity, Function function) {
+      if (!Tokenizer.isName(name)) {
+          throw new IllegalArgumentException("Invalid function name: "
+                  + name);
+      }
+      if (functions.containsKey(name)) {
+          throw new IllegalArgumentException("Duplicate function name: "
+                  + name);
+      }
+      if (arity < 0) {
+          throw new IllegalArgumentException("Arity must not be negative");
+      }
+      return new Operators(this, new Entry(name, arity, 0, false, true,
+              function));
+  }
+
+  /**
+   * Method name: precedence
+   * @param c, any character
+   * @return precedence of an operator character, 0 for a parenthesis, -1
+   * otherwise
+   */
+  int precedence(char c) {
+      return c < ASCII ? precedences[c] : -1;
+  }
+
+  /**
+   * Method name: isOperator
+   * @param c, any character
+   * @return true if c is an operator
+   */
+  boolean isOperator(char c) {
+      return c < ASCII && precedences[c] > 0;
+  }
+
+  /**
+   * Method name: kind
+   * @param c, any character
+   * @return token kind of an operator, parenthesis, decimal or, if there
+   * are functions, comma character; -1 otherwise
+   */
+  int kind(char c) {
+      return c < ASCII ? kinds[c] : -1;
+  }
+
+  /**
+   * Method name: function
+   * @param name, characters of a name
+   * @return opcode of the function of that name, -1 if there is none
+   */
+  int function(CharSequence name) {
+      if (functions.isEmpty()) {
+          return -1;
+      }
+      Integer opcode = functions.get(name.toString());
+      return opcode == null ? -1 : opcode;
+  }
+
+  /**
+   * Method name: isFunction
+   * @param kind, token kind or opcode
+   * @return true if kind is the opcode of a function
+   */
+  boolean isFunction(int kind) {
+      return kind >= FIRST_OPCODE && entries[kind - FIRST_OPCODE].function;
+  }
+
+  /**
+   * Method name: arity
+   * @param opcode, opcode of an operator or function
+   * @return number of operands it takes
+   */
+  int arity(int opcode) {
+      return opcode >= FIRST_OPCODE ? entries[opcode - FIRST_OPCODE].arity
+              : 2;
+  }
+
+  /**
+   * Method name: precedenceOf
+   * @param kind, operator opcode or OPEN_PARENTHESIS
+   * @return precedence of the operator, 0 otherwise
+   */
+  int precedenceOf(int kind) {
+      switch (kind) {
+          case Tokenizer.ADD:
+          case Tokenizer.SUBTRACT: return 1;
+          case Tokenizer.MULTIPLY:
+          case Tokenizer.DIVIDE: return 2;
+      }
+      return kind >= FIRST_OPCODE ? entries[kind - FIRST_OPCODE].precedence
+              : 0;
+  }
+
+  /**
+   * Method name: isRightAssociative
+   * @param kind, operator opcode
+   * @return true if a run of the operator groups from the right
+   */
+  boolean isRightAssociative(int kind) {
+      return kind >= FIRST_OPCODE
+              && entries[kind - FIRST_OPCODE].rightAssociative;
+  }
+
+  /**
+   * Method name: apply
+   * Description: applies a registered operator or function to the operands
+   * on top of a stack
+   * @param opcode, opcode from FIRST_OPCODE
+   * @param stack, operand stack
+   * @param top, number of operands on the stack, at least the arity
+   * @return number of operands on the stack afterwards, -1 when the
+   * operation divides by zero
+   */
+  int apply(int opcode, double[] stack, int top) {
+      Entry entry = entries[opcode - FIRST_OPCODE];
+      int from = top - entry.arity;
+      try {
+          stack[from] = entry.operation.apply(stack, from);
+      } catch (DivisionByZeroException e) {
+          return -1;
+      }
+      return from + 1;
+  }
+
+  /**
+   * Method name: size
+   * @return number of registered operators and functions, beyond the four
+   * of DEFAULT
+   */
+  public int size() {
+      return entries.length;
+  }
+
+  /**
+   * Method name: remainder
+   * Description: remainder of a division, which is checked as / is
+   * @param num1, dividend
+   * @param num2, divisor
+   * @throws DivisionByZeroException when the divisor is zero
+   * @return num1 % num2
+   */
+  private static double remainder(double num1, double num2)
+          throws DivisionByZeroException {
+      if (num2 == 0) {
+          throw new DivisionByZeroException();
+      }
+      return num1 % num2;
+  }
+
+    /**
+     * arithmetic of a binary operator
+     */
+    public interface Binary {
+        double apply(double num1, double num2)
+                throws DivisionByZeroException;
+    }
+
+    /**
+     * arithmetic of a function; its arguments are arguments[offset] to
+     * arguments[offset + arity - 1]
+     */
+    public interface Function {
+        double apply(double[] arguments, int offset)
+                throws DivisionByZeroException;
+    }
+
+    /**
+     * one registered operator or function
+     */
+    private static final class Entry {
+        private final String name;
+        private final int arity;
+        private final int precedence;
+        private final boolean rightAssociative;
+        private final boolean function;
+        private final Function operation;
+
+        Entry(String name, int arity, int precedence,
+                boolean rightAssociative, boolean function,
+                Function operation) {
+            this.name = name;
+            this.arity = arity;
+            this.precedence = precedence;
+            this.rightAssociative = rightAssociative;
+            this.function = function;
+            this.operation = operation;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Filename: ParallelExpression.java
+ * Usage: ParallelExpression parallel
+ *                = ParallelExpression.of(Calculator.compile(expression));
+ *        double ans = parallel.evaluate(ForkJoinPool.commonPool());
+ * Description: this file contains a compiled expression prepared for
+ * evaluating its independent subtrees in parallel, for expressions of
+ * millions of operations.
+ *
+ * The expression tree is not built out of node objects. In the postfix
+ * code every subtree is a contiguous range that ends with its operator, so
+ * recording where the subtree ending at each offset starts is enough to
+ * find the two operands of any operator. A task walks down from its
+ * subtree towards the larger operand, forking the smaller operand as a task
+ * of its own whenever that is larger than the cutoff; this keeps the
+ * nesting of tasks logarithmic even for lopsided trees. It then runs the
+ * rest of its range in one pass on an operand stack, pushing the value of
+ * each forked subtree in its place. Subtrees no larger than the cutoff are
+ * never split, so small expressions never pay for tasks.
+ *
+ * Each operator sees the same operands as in sequential evaluation, so the
+ * answer is exactly the same, and a division by zero anywhere is reported.
+ * An optimized expression shares subexpressions between subtrees through
+ * temporaries and is evaluated sequentially, as is an expression using
+ * registered operators or functions.
+ */
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public final class ParallelExpression {
+    // instructions below which a subtree is evaluated on one thread
+    static final int DEFAULT_CUTOFF = 1 << 13;
+
+    private final CompiledExpression expression;
+    private final int cutoff;
+    // starts[end] is the offset of the subtree whose code ends at end
+    private final int[] starts;
+    // offsets of the values the program leaves on the stack, in order
+    private final int[] roots;
+
+  /**
+   * Constructor creates a parallel expression
+   * @param expression, program to evaluate
+   * @param cutoff, largest subtree evaluated on one thread, in ints of code
+   * @param starts, start of the subtree ending at each offset
+   * @param roots, start of each value left on the stack
+   */
+  private ParallelExpression(CompiledExpression expression, int cutoff,
+          int[] starts, int[] roots) {
+      this.expression = expression;
+      this.cutoff = cutoff;
+      this.starts = starts;
+      this.roots = roots;
+  }
+
+  /**
+   * Method name: of
+   * Description: prepares a compiled expression for parallel evaluation
+   * with the default cutoff
+   * @param expression, program to evaluate
+   * @return parallel expression
+   */
+  public static ParallelExpression of(CompiledExpression expression) {
+      return of(expression, DEFAULT_CUTOFF);
+  }
+
+  /**
+   * Method name: of
+   * Description: prepares a compiled expression for parallel evaluation by
+   * recording the start of every subtree in one pass over its code
+   * @param expression, program to evaluate
+   * @param cutoff, largest subtree evaluated on one thread, in ints of code
+   * @throws IllegalArgumentException when cutoff is below 2, the size of a
+   * literal, which cannot be split
+   * @return parallel expression
+   */
+  static ParallelExpression of(CompiledExpression expression, int cutoff) {
+      if (cutoff < 2) {
+          throw new IllegalArgumentException("Invalid cutoff " + cutoff);
+      }
+      int[] code = expression.code;
+      // shared temporaries, and registered operations of any arity, are
+      // evaluated sequentially
+      if (expression.temps > 0 || expression.usesOperations()) {
+          return new ParallelExpression(expression, cutoff, null, null);
+      }
+      int[] starts = new int[code.length + 1];
+      int[] stack = new int[expression.maxStack()];
+      int top = 0;
+      int pc = 0;
+      while (pc < code.length) {
+          int start = pc;
+          if (code[pc] == CompiledExpression.PUSH
+                  || code[pc] == CompiledExpression.LOAD) {
+              pc += 2;
+          }
+          else { // operator; the subtree starts with its left operand
+              top--;
+              start = stack[--top];
+              pc++;
+          }
+          stack[top++] = start;
+          starts[pc] = start;
+      }
+      int[] roots = new int[top];
+      System.arraycopy(stack, 0, roots, 0, top);
+      return new ParallelExpression(expression, cutoff, starts, roots);
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: evaluates the expression, splitting it into tasks on the
+   * given pool
+   * @param pool, threads to evaluate subtrees on
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(ForkJoinPool pool) throws DivisionByZeroException {
+      if (starts == null) {
+          return expression.evaluate();
+      }
+      int count = roots.length;
+      Subtree[] subtrees = new Subtree[count];
+      for (int i = 0; i < count; i++) {
+          int end = i + 1 < count ? roots[i + 1] : expression.code.length;
+          subtrees[i] = new Subtree(roots[i], end);
+      }
+      try {
+          pool.invoke(new RecursiveAction() {
+              @Override
+              protected void compute() {
+                  invokeAll(subtrees);
+              }
+          });
+      } catch (Failure e) {
+          throw new DivisionByZeroException();
+      }
+      return subtrees[count - 1].value;
+  }
+
+    /**
+     * thrown through the pool in place of DivisionByZeroException, which
+     * is checked
+     */
+    private static final class Failure extends RuntimeException {
+        Failure() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * evaluates the subtree whose code is start to end - 1
+     */
+    private final class Subtree extends RecursiveAction {
+        private final int start;
+        private final int end;
+        private double value;
+
+        Subtree(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            // forked subtrees before and after the subtree walked down to
+            ArrayList<Subtree> before = new ArrayList<>();
+            ArrayList<Subtree> after = new ArrayList<>();
+            int from = start;
+            int to = end;
+            while (to - from > cutoff) {
+                // left operand is from to middle - 1, right is middle to
+                // to - 2, and the operator is at to - 1
+                int middle = starts[to - 1];
+                if (middle - from >= to - 1 - middle) {
+                    if (to - 1 - middle > cutoff) {
+                        Subtree right = new Subtree(middle, to - 1);
+                        right.fork();
+                        after.add(right);
+                    }
+                    to = middle;
+                }
+                else {
+                    if (middle - from > cutoff) {
+                        Subtree left = new Subtree(from, middle);
+                        left.fork();
+                        before.add(left);
+                    }
+                    from = middle;
+                    to--;
+                }
+            }
+            for (Subtree subtree : before) {
+                subtree.join();
+            }
+            for (Subtree subtree : after) {
+                subtree.join();
+            }
+            // joined first, so no other task runs on this thread's stack
+            double[] stack = expression.scratch();
+            int top = 0;
+            int pc = start;
+            for (Subtree subtree : before) {
+                top = run(stack, pc, subtree.start, top);
+                stack[top++] = subtree.value;
+                pc = subtree.end;
+            }
+            for (int i = after.size() - 1; i >= 0; i--) {
+                Subtree subtree = after.get(i);
+                top = run(stack, pc, subtree.start, top);
+                stack[top++] = subtree.value;
+                pc = subtree.end;
+            }
+            top = run(stack, pc, end, top);
+            value = stack[top - 1];
+        }
+
+        /**
+         * runs the code between from and to, failing the task on a
+         * division by zero
+         */
+        private int run(double[] stack, int from, int to, int top) {
+            top = expression.run(from, to, stack, top,
+                    CompiledExpression.NO_VALUES);
+            if (top < 0) {
+                throw new Failure();
+            }
+            return top;
+        }
+    }
+}
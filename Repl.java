@@ -0,0 +1,237 @@
+/**
+ * Filename: Repl.java
+ * Usage: java Calculator
+ *        new Repl(new BufferedReader(new InputStreamReader(System.in)),
+ *                System.out).run();
+ * Description: this file contains the interactive mode of the calculator:
+ * it evaluates one expression per line until the end of the input, so one
+ * JVM answers every calculation of a session and its code is compiled
+ * after the first few. An error is printed in place of the answer, with
+ * the offset of the character in error, and the session goes on.
+ *   ans              - the last answer, 0 before the first
+ *   :time            - turns on or off printing how long each phase of an
+ *                      evaluation took: tokenizing, compiling, evaluating
+ *   :bench expr n    - evaluates expr n times to warm up, then n times
+ *                      more, and prints the throughput of the second run
+ *   :help            - prints the commands
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+public final class Repl {
+    static final String ANS = "ans";
+    private static final String[] VARIABLES = {ANS};
+    private static final String PROMPT = "> ";
+    private static final String TIME = ":time";
+    private static final String BENCH = ":bench";
+    private static final String HELP = ":help";
+    private static final String COMMANDS = "Commands: ans (last answer),"
+            + " :time (toggle phase timings), :bench <expression> <count>";
+    private static final String UNKNOWN = "Unknown command %s; %s%n";
+    private static final String AT = "%s (at %d)%n";
+    private static final String TIMING
+            = "tokenize %.1f us, compile %.1f us, evaluate %.1f us%n";
+    private static final String TIME_STATE = "Timing is %s%n";
+    private static final String BENCH_USAGE
+            = "Usage: :bench <expression> <count>";
+    private static final String THROUGHPUT
+            = "%,d evaluations in %.3f s: %,.0f per second, %.1f ns each%n";
+    private static final double NANOS_PER_MICRO = 1e3;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final Tokenizer tokens = new Tokenizer();
+    private final double[] values = new double[1];
+    private double[] stack = new double[16];
+    private boolean timing;
+    // defeats dead code elimination in :bench
+    private double sink;
+
+  /**
+   * Constructor creates a session
+   * @param in, lines typed by the user
+   * @param out, where answers and errors are printed
+   */
+  public Repl(BufferedReader in, PrintStream out) {
+      this.in = in;
+      this.out = out;
+  }
+
+  /**
+   * Method name: run
+   * Description: evaluates lines until the end of the input
+   * @throws IOException when the input cannot be read
+   */
+  public void run() throws IOException {
+      out.print(PROMPT);
+      out.flush();
+      String line;
+      while ((line = in.readLine()) != null) {
+          line(line);
+          out.print(PROMPT);
+          out.flush();
+      }
+      out.println();
+  }
+
+  /**
+   * Method name: ans
+   * @return the last answer, 0 before the first
+   */
+  double ans() {
+      return values[0];
+  }
+
+  /**
+   * Method name: line
+   * Description: runs a command or evaluates an expression and prints the
+   * outcome
+   * @param line, one line of input
+   */
+  void line(String line) {
+      String command = line.trim();
+      if (command.isEmpty()) {
+          return;
+      }
+      if (command.equals(TIME)) {
+          timing = !timing;
+          out.printf(TIME_STATE, timing ? "on" : "off");
+      }
+      else if (command.startsWith(BENCH)
+              && (command.length() == BENCH.length()
+              || Character.isWhitespace(command.charAt(BENCH.length())))) {
+          bench(command.substring(BENCH.length()).trim());
+      }
+      else if (command.equals(HELP)) {
+          out.println(COMMANDS);
+      }
+      else if (command.startsWith(":")) {
+          out.printf(UNKNOWN, command, COMMANDS);
+      }
+      else {
+          evaluate(line);
+      }
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: evaluates an expression, printing its answer or error and
+   * the time of each phase if timing is on; a valid answer becomes ans
+   * @param expression, expression in infix notation that may use ans
+   */
+  private void evaluate(String expression) {
+      long start = System.nanoTime();
+      boolean valid = tokens.scan(expression, VARIABLES);
+      long scanned = System.nanoTime();
+      if (!valid) {
+          error(Result.failure(tokens));
+          return;
+      }
+      CompiledExpression program = CompiledExpression.compile(tokens);
+      long compiled = System.nanoTime();
+      if (program == null) {
+          error(Result.failure(tokens));
+          return;
+      }
+      int top = run(program);
+      long evaluated = System.nanoTime();
+      if (top < 0) {
+          error(Result.dividedByZero());
+      }
+      else {
+          values[0] = stack[top - 1];
+          out.println(values[0]);
+      }
+      if (timing) {
+          out.printf(TIMING, (scanned - start) / NANOS_PER_MICRO,
+                  (compiled - scanned) / NANOS_PER_MICRO,
+                  (evaluated - compiled) / NANOS_PER_MICRO);
+      }
+  }
+
+  /**
+   * Method name: run
+   * @param program, compiled expression that may use ans
+   * @return number of operands left on the stack, the answer on top; -1
+   * when trying to divide by zero
+   */
+  private int run(CompiledExpression program) {
+      if (stack.length < program.maxStack()) {
+          stack = new double[program.maxStack()];
+      }
+      return program.run(0, program.code.length, stack, 0, values);
+  }
+
+  /**
+   * Method name: error
+   * Description: prints an error, with its offset in the line if it has
+   * one
+   * @param result, error
+   */
+  private void error(Result result) {
+      if (result.position() == Result.NO_POSITION) {
+          out.println(result.message());
+      }
+      else {
+          out.printf(AT, result.message(), result.position());
+      }
+  }
+
+  /**
+   * Method name: bench
+   * Description: tokenizes, compiles and evaluates an expression count
+   * times to warm up and count times more, and prints the throughput of
+   * the second run; ans is left unchanged
+   * @param arguments, the expression followed by the count
+   */
+  private void bench(String arguments) {
+      int split = arguments.lastIndexOf(' ');
+      long count;
+      try {
+          count = Long.parseLong(arguments.substring(split + 1));
+      } catch (NumberFormatException e) {
+          count = 0;
+      }
+      if (split < 0 || count < 1) {
+          out.println(BENCH_USAGE);
+          return;
+      }
+      String expression = arguments.substring(0, split).trim();
+      // reports an invalid expression once, not count times
+      if (!tokens.scan(expression, VARIABLES)) {
+          error(Result.failure(tokens));
+          return;
+      }
+      if (CompiledExpression.compile(tokens) == null) {
+          error(Result.failure(tokens));
+          return;
+      }
+      repeat(expression, count);
+      long start = System.nanoTime();
+      repeat(expression, count);
+      long elapsed = Math.max(System.nanoTime() - start, 1);
+      out.printf(THROUGHPUT, count, elapsed / NANOS_PER_SECOND,
+              count * NANOS_PER_SECOND / elapsed, (double) elapsed / count);
+  }
+
+  /**
+   * Method name: repeat
+   * Description: tokenizes, compiles and evaluates a valid expression
+   * several times
+   * @param expression, valid expression that may use ans
+   * @param count, number of evaluations
+   */
+  private void repeat(String expression, long count) {
+      double sum = 0;
+      for (long i = 0; i < count; i++) {
+          tokens.scan(expression, VARIABLES);
+          CompiledExpression program = CompiledExpression.compile(tokens);
+          int top = run(program);
+          sum += top < 0 ? 0 : stack[top - 1];
+      }
+      sink += sum;
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Filename: Result.java
+ * Usage: Result result = Calculator.calculate("(24.3 + 4) / 78");
+ *        if (result.ok()) { ... result.value() ... }
+ *        else { ... result.error(), result.position() ... }
+ * Description: this file contains the outcome of evaluating an expression
+ * without exceptions: either its value, or an error code with the offset
+ * in the expression where the error was found and the message the
+ * matching exception would have. An invalid expression costs no stack
+ * trace, so callers that see many of them, such as a service evaluating
+ * what users type, pay little for each. A result is immutable.
+ */
+
+public final class Result {
+    // error codes
+    public static final int OK = 0;
+    public static final int INVALID_CHARACTER = 1;
+    public static final int SYNTAX_ERROR = 2;
+    public static final int DIVISION_BY_ZERO = 3;
+    // position of an error found while evaluating
+    public static final int NO_POSITION = -1;
+
+    private static final String SYNTAX_ERROR_MSG = new SyntaxErrorException()
+            .getMessage();
+    private static final String DIVISION_BY_ZERO_MSG
+            = new DivisionByZeroException().getMessage();
+    private static final Result DIVIDED_BY_ZERO
+            = new Result(0, DIVISION_BY_ZERO, NO_POSITION, null);
+    private static final String NO_VALUE = "%s at %d has no value";
+
+    private final double value;
+    private final int error;
+    private final int position;
+    // characters in error, for INVALID_CHARACTER
+    private final String text;
+
+  /**
+   * Constructor creates a result
+   * @param value, value of the expression, 0 on error
+   * @param error, error code, OK if none
+   * @param position, offset of the error in the expression
+   * @param text, characters in error, or null
+   */
+  private Result(double value, int error, int position, String text) {
+      this.value = value;
+      this.error = error;
+      this.position = position;
+      this.text = text;
+  }
+
+  /**
+   * Method name: of
+   * @param value, value of an expression
+   * @return result holding the value
+   */
+  static Result of(double value) {
+      return new Result(value, OK, NO_POSITION, null);
+  }
+
+  /**
+   * Method name: failure
+   * Description: obtains the error found by the last call to scan or
+   * compile on a tokenizer
+   * @param tokens, tokenizer that failed
+   * @return result holding the error
+   */
+  static Result failure(Tokenizer tokens) {
+      int error = tokens.error();
+      return failure(error, tokens.errorPosition(),
+              error == INVALID_CHARACTER ? tokens.errorText() : null);
+  }
+
+  /**
+   * Method name: failure
+   * @param error, error code other than OK
+   * @param position, offset of the error in the expression
+   * @param text, characters in error, for INVALID_CHARACTER
+   * @return result holding the error
+   */
+  static Result failure(int error, int position, String text) {
+      return new Result(0, error, position, text);
+  }
+
+  /**
+   * Method name: dividedByZero
+   * @return result of an expression that divides by zero
+   */
+  static Result dividedByZero() {
+      return DIVIDED_BY_ZERO;
+  }
+
+  /**
+   * Method name: ok
+   * @return true if the result is a value, not an error
+   */
+  public boolean ok() {
+      return error == OK;
+  }
+
+  /**
+   * Method name: value
+   * @throws IllegalStateException when the result is an error
+   * @return value of the expression
+   */
+  public double value() {
+      if (error != OK) {
+          throw new IllegalStateException(
+                  String.format(NO_VALUE, message(), position));
+      }
+      return value;
+  }
+
+  /**
+   * Method name: error
+   * @return OK, INVALID_CHARACTER, SYNTAX_ERROR or DIVISION_BY_ZERO
+   */
+  public int error() {
+      return error;
+  }
+
+  /**
+   * Method name: position
+   * @return offset in the expression of the first character in error, the
+   * length of the expression if it ended too early, or NO_POSITION for a
+   * value or a division by zero
+   */
+  public int position() {
+      return position;
+  }
+
+  /**
+   * Method name: message
+   * @return message of the exception for the error, as printed by the
+   * command line, or null for a value
+   */
+  public String message() {
+      switch (error) {
+          case INVALID_CHARACTER:
+              return InvalidCharacterException.message(text);
+          case SYNTAX_ERROR: return SYNTAX_ERROR_MSG;
+          case DIVISION_BY_ZERO: return DIVISION_BY_ZERO_MSG;
+      }
+      return null;
+  }
+
+  /**
+   * Method name: orThrow
+   * Description: converts the result to the exceptions thrown by the rest
+   * of the calculator
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @throws DivisionByZeroException when the expression divides by zero
+   * @return value of the expression
+   */
+  public double orThrow() throws InvalidCharacterException,
+          SyntaxErrorException, DivisionByZeroException {
+      switch (error) {
+          case INVALID_CHARACTER: throw new InvalidCharacterException(text);
+          case SYNTAX_ERROR: throw new SyntaxErrorException();
+          case DIVISION_BY_ZERO: throw new DivisionByZeroException();
+      }
+      return value;
+  }
+
+  /**
+   * Method name: toString
+   * @return the value, or the error message
+   */
+  @Override
+  public String toString() {
+      return error == OK ? Double.toString(value) : message();
+  }
+}
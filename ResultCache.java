@@ -0,0 +1,214 @@
+/**
+ * Filename: ResultCache.java
+ * Usage: ResultCache cache = new ResultCache(10_000);
+ *        double ans = cache.evaluate(tokens, "1 + 2");
+ * Description: this file contains a size-bounded cache of the answers of
+ * evaluated expressions, for callers that evaluate the same expressions
+ * again and again. Entries are keyed on the canonical form of the token
+ * stream, so "1 + 2", "1+2" and "1 - -2" share one entry, and a hit skips
+ * compiling and evaluating. Only answers are cached; an expression that
+ * fails is evaluated again each time.
+ *
+ * A lookup is a single read of a ConcurrentHashMap and never waits for a
+ * lock. When the cache is full, an insert evicts the least recently used
+ * entry as approximated by the CLOCK algorithm: each hit marks its entry,
+ * and the clock hand sweeps past marked entries, clearing their marks,
+ * until it finds one that was not used since the hand last passed it.
+ * Inserts take a lock only to move the hand, and an insert that finds the
+ * lock taken skips caching rather than wait.
+ *
+ * Metrics record the tokenizing of every lookup, but compiling and
+ * evaluating only on misses; hits are counted here.
+ *
+ * A result cache is thread-safe.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class ResultCache {
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> entries;
+    // clock of the entries in the cache; guarded by clockLock
+    private final Entry[] clock;
+    private final ReentrantLock clockLock = new ReentrantLock();
+    private int hand;
+    private int size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Constructor creates an empty cache
+   * @param capacity, largest number of answers kept
+   * @throws IllegalArgumentException when capacity is not positive
+   */
+  public ResultCache(int capacity) {
+      if (capacity < 1) {
+          throw new IllegalArgumentException(
+                  "Cache capacity must be positive: " + capacity);
+      }
+      this.capacity = capacity;
+      this.entries = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+      this.clock = new Entry[capacity];
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: answers an infix expression from the cache, or compiles
+   * and evaluates it and caches its answer
+   * @param tokens, tokenizer of the calling thread
+   * @param expression in infix notation
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is empty, has double
+   * operators, double decimals, unbalanced parentheses, or begins/ends with
+   * an operator
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(Tokenizer tokens, CharSequence expression)
+          throws InvalidCharacterException, SyntaxErrorException,
+          DivisionByZeroException {
+      return calculate(tokens, expression).orThrow();
+  }
+
+  /**
+   * Method name: calculate
+   * Description: answers an infix expression from the cache, or compiles
+   * and evaluates it and caches its answer, as evaluate does, but returns
+   * an error instead of throwing it
+   * @param tokens, tokenizer of the calling thread
+   * @param expression in infix notation
+   * @return value of the expression, or its error
+   */
+  public Result calculate(Tokenizer tokens, CharSequence expression) {
+      if (!Metrics.scan(tokens, expression)) {
+          return Result.failure(tokens);
+      }
+      String key = tokens.canonical();
+      Entry entry = entries.get(key);
+      if (entry != null) {
+          if (!entry.used) { // skips the write when already marked
+              entry.used = true;
+          }
+          hits.increment();
+          return entry.result;
+      }
+      misses.increment();
+      CompiledExpression program = Metrics.compile(tokens);
+      if (program == null) {
+          return Result.failure(tokens);
+      }
+      double[] stack = program.scratch();
+      int top = Metrics.run(program, stack);
+      if (top < 0) {
+          return Result.dividedByZero();
+      }
+      Result result = Result.of(stack[top - 1]);
+      insert(new Entry(key, result));
+      return result;
+  }
+
+  /**
+   * Method name: insert
+   * Description: adds an entry, evicting one if the cache is full; does
+   * nothing if another thread is inserting
+   * @param entry, answer to cache
+   */
+  private void insert(Entry entry) {
+      if (!clockLock.tryLock()) {
+          return;
+      }
+      try {
+          if (entries.containsKey(entry.key)) { // cached by another thread
+              return;
+          }
+          if (size < capacity) {
+              clock[size++] = entry;
+          }
+          else {
+              // passes over entries used since the last sweep
+              while (clock[hand].used) {
+                  clock[hand].used = false;
+                  hand = (hand + 1) % capacity;
+              }
+              entries.remove(clock[hand].key);
+              evictions.increment();
+              clock[hand] = entry;
+              hand = (hand + 1) % capacity;
+          }
+          entries.put(entry.key, entry);
+      } finally {
+          clockLock.unlock();
+      }
+  }
+
+  /**
+   * Method name: capacity
+   * @return largest number of answers kept
+   */
+  public int capacity() {
+      return capacity;
+  }
+
+  /**
+   * Method name: size
+   * @return number of answers cached
+   */
+  public int size() {
+      return entries.size();
+  }
+
+  /**
+   * Method name: hits
+   * @return number of lookups answered from the cache
+   */
+  public long hits() {
+      return hits.sum();
+  }
+
+  /**
+   * Method name: misses
+   * @return number of lookups that had to compile their expression,
+   * including those that then failed
+   */
+  public long misses() {
+      return misses.sum();
+  }
+
+  /**
+   * Method name: evictions
+   * @return number of answers removed to make room for others
+   */
+  public long evictions() {
+      return evictions.sum();
+  }
+
+  /**
+   * Method name: toString
+   * @return counters of the cache
+   */
+  @Override
+  public String toString() {
+      return "ResultCache[size=" + size() + "/" + capacity + ", hits="
+              + hits() + ", misses=" + misses() + ", evictions="
+              + evictions() + "]";
+  }
+
+    /**
+     * a cached answer; used is set on each hit and cleared by the clock hand
+     */
+    private static final class Entry {
+        private final String key;
+        private final Result result;
+        private volatile boolean used;
+
+        Entry(String key, Result result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+}
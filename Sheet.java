@@ -0,0 +1,358 @@
+/**
+ * Filename: Sheet.java
+ * Usage: Sheet sheet = new Sheet();
+ *        sheet.set("price", "2.5");
+ *        sheet.set("total", "price * 4 - discount");
+ *        sheet.set("discount", "1");
+ *        double ans = sheet.value("total");
+ * Description: this file contains a sheet of named cells, each holding an
+ * infix expression that may use the values of other cells by name. The
+ * sheet keeps the graph of which cells use which. When a cell is set, only
+ * that cell and the cells downstream of it are evaluated again, in
+ * topological order, and a cell whose inputs kept their values is skipped,
+ * so its own dependents are skipped too.
+ *
+ * Setting a cell that would depend on itself, directly or through other
+ * cells, is refused, so the graph never has a cycle. A cell may use a name
+ * that is not set yet; it has no value until that cell is set.
+ *
+ * Cells hold their compiled program, their inputs and their dependents as
+ * plain arrays, and visits are marked with a pass number instead of sets,
+ * so a sheet of a million cells takes a few hundred bytes per cell.
+ *
+ * A sheet is not thread-safe.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public final class Sheet {
+    // states of a cell
+    private static final int VALUE = 0;
+    private static final int DIVISION_BY_ZERO = 1;
+    private static final int UNDEFINED = 2;
+    private static final Cell[] NO_CELLS = {};
+
+    private final HashMap<String, Cell> cells = new HashMap<>();
+    private final Tokenizer tokens = new Tokenizer();
+    // number of the current walk over the graph, for marking visits
+    private int pass;
+    private long evaluations;
+
+    // reused by the graph walks and by evaluate
+    private Cell[] order = new Cell[16];
+    private Cell[] path = new Cell[16];
+    private int[] next = new int[16];
+    private double[] stack = new double[16];
+    private double[] values = new double[16];
+
+  /**
+   * Method name: set
+   * Description: sets the expression of a cell, creating the cell if
+   * needed, and evaluates it and every cell downstream of it
+   * @param name, name of the cell
+   * @param expression in infix notation; may use other cells by name
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is empty, has double
+   * operators, double decimals, unbalanced parentheses, or begins/ends with
+   * an operator
+   * @throws CircularReferenceException when the cell would depend on
+   * itself; the sheet is left unchanged
+   * @throws IllegalArgumentException when name is not a valid name
+   */
+  public void set(String name, String expression)
+          throws InvalidCharacterException, SyntaxErrorException,
+          CircularReferenceException {
+      if (!Tokenizer.isName(name)) {
+          throw new IllegalArgumentException("Invalid cell name: " + name);
+      }
+      String[] names = Tokenizer.names(expression);
+      tokens.tokenize(expression, names);
+      CompiledExpression program = CompiledExpression.fromTokens(tokens);
+      Cell cell = cells.get(name);
+      Cell[] inputs = new Cell[names.length];
+      for (int i = 0; i < names.length; i++) {
+          if (names[i].equals(name)) {
+              throw new CircularReferenceException(name);
+          }
+          inputs[i] = cells.get(names[i]);
+      }
+      if (cell != null && reaches(cell, inputs)) {
+          throw new CircularReferenceException(name);
+      }
+      // the expression is valid; changes the graph
+      if (cell == null) {
+          cell = cell(name);
+      }
+      for (int i = 0; i < names.length; i++) {
+          if (inputs[i] == null) {
+              inputs[i] = cell(names[i]);
+          }
+      }
+      for (Cell input : cell.inputs) {
+          input.removeDependent(cell);
+      }
+      for (Cell input : inputs) {
+          input.addDependent(cell);
+      }
+      cell.expression = expression;
+      cell.program = program;
+      cell.inputs = inputs;
+      recompute(cell);
+  }
+
+  /**
+   * Method name: value
+   * Description: obtains the value of a cell
+   * @param name, name of the cell
+   * @throws DivisionByZeroException when the cell, or a cell it uses,
+   * divides by zero
+   * @throws IllegalArgumentException when the cell, or a cell it uses, is
+   * not set
+   * @return value of the cell
+   */
+  public double value(String name) throws DivisionByZeroException {
+      Cell cell = cells.get(name);
+      if (cell == null || cell.state == UNDEFINED) {
+          throw new IllegalArgumentException("Undefined cell: " + name);
+      }
+      if (cell.state == DIVISION_BY_ZERO) {
+          throw new DivisionByZeroException();
+      }
+      return cell.value;
+  }
+
+  /**
+   * Method name: expression
+   * @param name, name of the cell
+   * @return expression of the cell, null if it is not set
+   */
+  public String expression(String name) {
+      Cell cell = cells.get(name);
+      return cell == null ? null : cell.expression;
+  }
+
+  /**
+   * Method name: size
+   * @return number of cells set or used by other cells
+   */
+  public int size() {
+      return cells.size();
+  }
+
+  /**
+   * Method name: evaluations
+   * @return number of times any cell has been evaluated
+   */
+  public long evaluations() {
+      return evaluations;
+  }
+
+  /**
+   * Method name: cell
+   * Description: creates an empty cell
+   * @param name, name of the cell
+   * @return new cell
+   */
+  private Cell cell(String name) {
+      Cell cell = new Cell();
+      cells.put(name, cell);
+      return cell;
+  }
+
+  /**
+   * Method name: reaches
+   * Description: checks whether any of the given cells is downstream of a
+   * cell, walking its dependents depth first; the walk covers at most the
+   * cells a change of the cell evaluates again
+   * @param from, cell to start from
+   * @param targets, cells to look for
+   * @return true if a target was found
+   */
+  private boolean reaches(Cell from, Cell[] targets) {
+      int marked = ++pass;
+      for (Cell target : targets) {
+          if (target != null) {
+              target.visited = marked;
+          }
+      }
+      pass++;
+      int depth = 0;
+      path[depth++] = from;
+      while (depth > 0) {
+          Cell cell = path[--depth];
+          for (int i = 0; i < cell.dependentCount; i++) {
+              Cell dependent = cell.dependents[i];
+              if (dependent.visited == marked) {
+                  return true;
+              }
+              if (dependent.visited != pass) {
+                  dependent.visited = pass;
+                  path = grow(path, depth);
+                  path[depth++] = dependent;
+              }
+          }
+      }
+      return false;
+  }
+
+  /**
+   * Method name: recompute
+   * Description: evaluates a changed cell and then, in topological order,
+   * every cell downstream of it that has an input whose value changed
+   * @param changed, cell whose expression was set
+   */
+  private void recompute(Cell changed) {
+      // depth first postorder over dependents; reversed, it is a
+      // topological order
+      pass++;
+      int count = 0;
+      int depth = 0;
+      changed.visited = pass;
+      path[depth] = changed;
+      next[depth++] = 0;
+      while (depth > 0) {
+          Cell cell = path[depth - 1];
+          if (next[depth - 1] < cell.dependentCount) {
+              Cell dependent = cell.dependents[next[depth - 1]++];
+              if (dependent.visited != pass) {
+                  dependent.visited = pass;
+                  path = grow(path, depth);
+                  next = grow(next, depth);
+                  path[depth] = dependent;
+                  next[depth++] = 0;
+              }
+          }
+          else {
+              order = grow(order, count);
+              order[count++] = cell;
+              depth--;
+          }
+      }
+      for (int i = count - 1; i >= 0; i--) {
+          Cell cell = order[i];
+          order[i] = null;
+          if (cell == changed || hasChangedInput(cell)) {
+              double value = cell.value;
+              int state = cell.state;
+              evaluate(cell);
+              if (cell.state != state || Double.doubleToRawLongBits(value)
+                      != Double.doubleToRawLongBits(cell.value)) {
+                  cell.changed = pass;
+              }
+          }
+      }
+  }
+
+  /**
+   * Method name: hasChangedInput
+   * @param cell, any cell
+   * @return true if the value of an input changed in the current pass
+   */
+  private boolean hasChangedInput(Cell cell) {
+      for (Cell input : cell.inputs) {
+          if (input.changed == pass) {
+              return true;
+          }
+      }
+      return false;
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: evaluates a cell from the values of its inputs
+   * @param cell, cell to evaluate
+   */
+  private void evaluate(Cell cell) {
+      evaluations++;
+      Cell[] inputs = cell.inputs;
+      values = grow(values, inputs.length);
+      cell.state = cell.program == null ? UNDEFINED : VALUE;
+      for (int i = 0; i < inputs.length && cell.state == VALUE; i++) {
+          cell.state = inputs[i].state;
+          values[i] = inputs[i].value;
+      }
+      if (cell.state != VALUE) {
+          cell.value = 0;
+          return;
+      }
+      stack = grow(stack, cell.program.maxStack());
+      try {
+          cell.value = cell.program.evaluate(stack, values);
+      } catch (DivisionByZeroException e) {
+          cell.value = 0;
+          cell.state = DIVISION_BY_ZERO;
+      }
+  }
+
+  /**
+   * Method name: grow
+   * @param array, reused array
+   * @param size, number of elements needed
+   * @return array, or a copy twice as large if it holds size or fewer
+   */
+  private static <T> T[] grow(T[] array, int size) {
+      return size < array.length
+              ? array : Arrays.copyOf(array,
+                      Math.max(size + 1, array.length * 2));
+  }
+
+  /**
+   * Method name: grow
+   * @param array, reused array
+   * @param size, number of elements needed
+   * @return array, or a copy twice as large if it holds size or fewer
+   */
+  private static int[] grow(int[] array, int size) {
+      return size < array.length
+              ? array : Arrays.copyOf(array,
+                      Math.max(size + 1, array.length * 2));
+  }
+
+  /**
+   * Method name: grow
+   * @param array, reused array
+   * @param size, number of elements needed
+   * @return array, or a copy twice as large if it holds size or fewer
+   */
+  private static double[] grow(double[] array, int size) {
+      return size < array.length
+              ? array : Arrays.copyOf(array,
+                      Math.max(size + 1, array.length * 2));
+  }
+
+    /**
+     * a named cell; unset cells have no program and no inputs
+     */
+    private static final class Cell {
+        private String expression;
+        private CompiledExpression program;
+        private Cell[] inputs = NO_CELLS;
+        private Cell[] dependents = NO_CELLS;
+        private int dependentCount;
+        private double value;
+        private int state = UNDEFINED;
+        // pass that last visited the cell, and that last changed its value
+        private int visited;
+        private int changed;
+
+        void addDependent(Cell cell) {
+            if (dependentCount == dependents.length) {
+                dependents = Arrays.copyOf(dependents,
+                        Math.max(2, dependentCount * 2));
+            }
+            dependents[dependentCount++] = cell;
+        }
+
+        void removeDependent(Cell cell) {
+            for (int i = 0; i < dependentCount; i++) {
+                if (dependents[i] == cell) {
+                    dependents[i] = dependents[--dependentCount];
+                    dependents[dependentCount] = null;
+                    return;
+                }
+            }
+        }
+    }
+}
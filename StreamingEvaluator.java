@@ -0,0 +1,442 @@
+/**
+ * Filename: StreamingEvaluator.java
+ * Usage: StreamingEvaluator evaluator = new StreamingEvaluator();
+ *        Result result = evaluator.calculate(reader);
+ *        double ans = evaluator.evaluate(FileChannel.open(path));
+ * Description: this file contains an evaluator of one infix expression read
+ * from a Reader or a channel in chunks, for machine-generated expressions
+ * too large to hold in memory as a String. It answers exactly as
+ * Calculator.calculate would on the whole text, with the same errors at
+ * the same offsets.
+ *
+ * The input is cut into pieces just before an operator that follows a
+ * digit or a closing parenthesis. Nothing the tokenizer decides before such
+ * a point depends on what comes after it, and what comes after depends
+ * only on whether the point follows a number or a parenthesis, so each
+ * piece is tokenized on its own after a short prefix that recreates that
+ * context ("0" or "(0)"), whose tokens are then dropped. The tokens are
+ * evaluated as they arrive by the same shunting-yard pass as
+ * CompiledExpression.compile, applying each operator as it would be
+ * emitted, so only the operators and operands waiting on open parentheses
+ * are kept: memory grows with the nesting depth, not with the length of
+ * the input. A single piece is at least one chunk, and longer only when a
+ * number or a run of white space or parentheses is.
+ *
+ * Errors are reported in the order Calculator.calculate reports them: an
+ * error of the tokenizer anywhere before an error of the compiler, and a
+ * division by zero only if there is neither, so the input is read to the
+ * end unless the tokenizer fails. Offsets beyond Integer.MAX_VALUE are
+ * reported as Integer.MAX_VALUE. An evaluator may be reused, but not by two
+ * threads at once.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class StreamingEvaluator {
+    public static final int DEFAULT_CHUNK = 8192;
+
+    // recreate the context of a piece that follows a number or a ')'
+    private static final String AFTER_NUMBER = "0";
+    private static final String AFTER_PARENTHESIS = "(0)";
+    private static final int INITIAL_DEPTH = 16;
+    private static final long NONE = -1;
+
+    private final int chunk;
+    private final char[] buffer;
+    private final Tokenizer tokens = new Tokenizer();
+    // characters read but not yet tokenized, starting at offset
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder piece = new StringBuilder();
+    private long offset;
+    private boolean first;
+    // last character that is not white space, and the cut after it
+    private char previous;
+    private int cut;
+    private char beforeCut;
+    // character before the start of pending, a digit or ')'
+    private char beforePending;
+
+    // operands, and operators with their offsets, waiting to be applied
+    private double[] operands = new double[INITIAL_DEPTH];
+    private int depth;
+    private int[] operators = new int[INITIAL_DEPTH];
+    private long[] operatorStarts = new long[INITIAL_DEPTH];
+    private int top;
+    // false once the answer can no longer be a value
+    private boolean computing;
+    private boolean dividedByZero;
+    // first operator missing an operand, or malformed number
+    private long invalid;
+    // unbalanced closing parenthesis, which stops the compiler
+    private long unbalanced;
+    // expression begins with an operator, found after its first piece
+    private long begins;
+
+  /**
+   * Constructor creates an evaluator that reads DEFAULT_CHUNK characters
+   * at a time
+   */
+  public StreamingEvaluator() {
+      this(DEFAULT_CHUNK);
+  }
+
+  /**
+   * Constructor creates an evaluator that reads the given number of
+   * characters at a time
+   * @param chunk, characters per read, at least 1
+   */
+  StreamingEvaluator(int chunk) {
+      if (chunk < 1) {
+          throw new IllegalArgumentException("Chunk must be at least 1");
+      }
+      this.chunk = chunk;
+      this.buffer = new char[chunk];
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: reads an expression to the end of a reader and evaluates
+   * it
+   * @param in, expression in infix notation
+   * @throws IOException when the reader fails
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(Reader in) throws IOException,
+          InvalidCharacterException, SyntaxErrorException,
+          DivisionByZeroException {
+      return calculate(in).orThrow();
+  }
+
+  /**
+   * Method name: evaluate
+   * Description: reads an expression in UTF-8 to the end of a channel and
+   * evaluates it
+   * @param in, expression in infix notation
+   * @throws IOException when the channel fails or the input is not UTF-8
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is not a valid infix
+   * expression
+   * @throws DivisionByZeroException when trying to divide by zero
+   * @return evaluated mathematical expression
+   */
+  public double evaluate(ReadableByteChannel in) throws IOException,
+          InvalidCharacterException, SyntaxErrorException,
+          DivisionByZeroException {
+      return calculate(in).orThrow();
+  }
+
+  /**
+   * Method name: calculate
+   * Description: reads an expression in UTF-8 to the end of a channel and
+   * evaluates it, returning an error instead of throwing
+   * @param in, expression in infix notation
+   * @throws IOException when the channel fails or the input is not UTF-8
+   * @return value of the expression, or its error
+   */
+  public Result calculate(ReadableByteChannel in) throws IOException {
+      return calculate(Channels.newReader(in, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Method name: calculate
+   * Description: reads an expression to the end of a reader and evaluates
+   * it, returning an error instead of throwing
+   * @param in, expression in infix notation
+   * @throws IOException when the reader fails
+   * @return value of the expression, or its error
+   */
+  public Result calculate(Reader in) throws IOException {
+      reset();
+      try {
+          int read;
+          while ((read = in.read(buffer)) >= 0) {
+              int start = pending.length();
+              pending.append(buffer, 0, read);
+              findCut(start);
+              if (cut > 0) {
+                  Result error = flush(cut, false);
+                  if (error != null) {
+                      return error;
+                  }
+              }
+          }
+          Result error = flush(pending.length(), true);
+          return error != null ? error : finish();
+      } finally {
+          // keeps no more than a chunk between calls
+          pending.setLength(0);
+          pending.trimToSize();
+          piece.setLength(0);
+          piece.trimToSize();
+      }
+  }
+
+  /**
+   * Method name: reset
+   * Description: forgets the previous expression
+   */
+  private void reset() {
+      pending.setLength(0);
+      offset = 0;
+      first = true;
+      previous = 0;
+      cut = -1;
+      depth = 0;
+      top = 0;
+      computing = true;
+      dividedByZero = false;
+      invalid = NONE;
+      unbalanced = NONE;
+      begins = NONE;
+  }
+
+  /**
+   * Method name: findCut
+   * Description: finds the last operator after a digit or a closing
+   * parenthesis among the characters just read
+   * @param start, offset in pending of the first character read
+   */
+  private void findCut(int start) {
+      for (int i = start; i < pending.length(); i++) {
+          char c = pending.charAt(i);
+          if (Calculator.precedence(c) > 0
+                  && (previous >= '0' && previous <= '9' || previous == ')')) {
+              cut = i;
+              beforeCut = previous;
+          }
+          if (!Tokenizer.isSpace(c)) {
+              previous = c;
+          }
+      }
+  }
+
+  /**
+   * Method name: flush
+   * Description: tokenizes the pending characters before a cut and
+   * evaluates their tokens
+   * @param end, offset in pending of the cut
+   * @param last, true if the input ends at the cut
+   * @return error that ends the expression, null to go on
+   */
+  private Result flush(int end, boolean last) {
+      String prefix = first ? ""
+              : beforePending == ')' ? AFTER_PARENTHESIS : AFTER_NUMBER;
+      piece.setLength(0);
+      piece.append(prefix).append(pending, 0, end);
+      boolean valid = tokens.scan(piece);
+      long base = offset - prefix.length();
+      if (!valid) {
+          int error = tokens.error();
+          int position = tokens.errorPosition();
+          if (error != Result.SYNTAX_ERROR) {
+              return failure(error, base + position, tokens.errorText());
+          }
+          if (last && position == piece.length()) { // ends with an operator
+              return failure(error, begins != NONE ? begins : base + position,
+                      null);
+          }
+          if (!first || last || position != firstSymbol()) {
+              return failure(error, base + position, null);
+          }
+          // begins with an operator; an error in a later piece comes first
+          begins = base + position;
+      }
+      if (begins == NONE && unbalanced == NONE) {
+          compile(prefix.length() == 0 ? 0 : prefix.length() == 1 ? 1 : 3,
+                  base);
+      }
+      offset += end;
+      pending.delete(0, end);
+      first = false;
+      beforePending = beforeCut;
+      cut = -1;
+      return null;
+  }
+
+  /**
+   * Method name: firstSymbol
+   * @return offset in the piece of its first character that is not white
+   * space and is an operator other than '-', -1 if there is none
+   */
+  private int firstSymbol() {
+      for (int i = 0; i < piece.length(); i++) {
+          char c = piece.charAt(i);
+          if (!Tokenizer.isSpace(c)) {
+              return c != '-' && Calculator.precedence(c) > 0 ? i : -1;
+          }
+      }
+      return -1;
+  }
+
+  /**
+   * Method name: compile
+   * Description: evaluates the tokens of a piece as they would be emitted
+   * by CompiledExpression.compile
+   * @param from, number of the first token of the piece after its prefix
+   * @param base, offset in the input of the start of the piece
+   */
+  private void compile(int from, long base) {
+      int size = tokens.size();
+      for (int i = from; i < size; i++) {
+          int kind = tokens.kind(i);
+          long start = base + tokens.position(i);
+          if (kind == Tokenizer.NUMBER) {
+              double value = tokens.value(i);
+              if (Double.isNaN(value) && invalid == NONE) {
+                  invalid = start;
+                  computing = false;
+              }
+              push(value);
+          }
+          else if (kind == Tokenizer.OPEN_PARENTHESIS) {
+              pushOperator(kind, start);
+          }
+          else if (kind == Tokenizer.CLOSED_PARENTHESIS) {
+              // backtracks until an open parenthesis is met
+              while (top > 0
+                      && operators[top - 1] != Tokenizer.OPEN_PARENTHESIS) {
+                  top--;
+                  apply(operators[top], operatorStarts[top]);
+              }
+              if (top == 0) {
+                  unbalanced = start;
+                  return;
+              }
+              top--;
+          }
+          else if (kind != Tokenizer.DECIMAL) { // operator
+              // stack has higher priority than current, apply top
+              while (top > 0 && precedence(operators[top - 1])
+                      >= precedence(kind)) {
+                  top--;
+                  apply(operators[top], operatorStarts[top]);
+              }
+              pushOperator(kind, start);
+          }
+      }
+  }
+
+  /**
+   * Method name: finish
+   * Description: applies the operators left once the input has ended
+   * @return value of the expression, or its error
+   */
+  private Result finish() {
+      if (begins != NONE) {
+          return failure(Result.SYNTAX_ERROR, begins, null);
+      }
+      if (unbalanced != NONE) {
+          return failure(Result.SYNTAX_ERROR, unbalanced, null);
+      }
+      while (top > 0) {
+          top--;
+          if (operators[top] == Tokenizer.OPEN_PARENTHESIS) { // unbalanced
+              return failure(Result.SYNTAX_ERROR, operatorStarts[top], null);
+          }
+          apply(operators[top], operatorStarts[top]);
+      }
+      if (invalid != NONE) {
+          return failure(Result.SYNTAX_ERROR, invalid, null);
+      }
+      if (depth <= 0) { // nothing left to answer
+          return failure(Result.SYNTAX_ERROR, offset, null);
+      }
+      if (dividedByZero) {
+          return Result.dividedByZero();
+      }
+      return Result.of(operands[depth - 1]);
+  }
+
+  /**
+   * Method name: push
+   * @param value, operand to push
+   */
+  private void push(double value) {
+      if (computing) {
+          if (depth == operands.length) {
+              operands = Arrays.copyOf(operands, depth * 2);
+          }
+          operands[depth] = value;
+      }
+      depth++;
+  }
+
+  /**
+   * Method name: pushOperator
+   * @param kind, operator or OPEN_PARENTHESIS
+   * @param start, offset of the operator in the input
+   */
+  private void pushOperator(int kind, long start) {
+      if (top == operators.length) {
+          operators = Arrays.copyOf(operators, top * 2);
+          operatorStarts = Arrays.copyOf(operatorStarts, top * 2);
+      }
+      operators[top] = kind;
+      operatorStarts[top] = start;
+      top++;
+  }
+
+  /**
+   * Method name: apply
+   * Description: applies an operator to the two operands on top
+   * @param opcode, operator
+   * @param start, offset of the operator in the input
+   */
+  private void apply(int opcode, long start) {
+      if (depth-- < 2) {
+          if (invalid == NONE) {
+              invalid = start;
+          }
+          computing = false;
+      }
+      if (!computing) {
+          return;
+      }
+      double num2 = operands[depth];
+      if (opcode == CompiledExpression.DIVIDE && num2 == 0) {
+          dividedByZero = true;
+          computing = false;
+          return;
+      }
+      operands[depth - 1]
+              = CompiledExpression.operate(opcode, operands[depth - 1], num2);
+  }
+
+  /**
+   * Method name: precedence
+   * @param kind, operator opcode or OPEN_PARENTHESIS
+   * @return 1 if ADD or SUBTRACT, 2 if MULTIPLY or DIVIDE, 0 otherwise
+   */
+  private static int precedence(int kind) {
+      switch (kind) {
+          case Tokenizer.ADD:
+          case Tokenizer.SUBTRACT: return 1;
+          case Tokenizer.MULTIPLY:
+          case Tokenizer.DIVIDE: return 2;
+      }
+      return 0;
+  }
+
+  /**
+   * Method name: failure
+   * @param error, error code of Result
+   * @param position, offset of the error in the input
+   * @param text, characters in error, for INVALID_CHARACTER
+   * @return result holding the error
+   */
+  private static Result failure(int error, long position, String text) {
+      return Result.failure(error, (int) Math.min(position,
+              Integer.MAX_VALUE), text);
+  }
+}
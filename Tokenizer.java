@@ -0,0 +1,770 @@
+/**
+ * Filename: Tokenizer.java
+ * Usage: Tokenizer tokens = new Tokenizer();
+ *        tokens.tokenize("(24.3 + 4) / 78");
+ * Description: this file contains a reusable tokenizer for infix
+ * expressions. It scans the original expression once, skipping white space
+ * as it goes, and stores each token as a kind code with its position and,
+ * for numbers, its parsed value. Token arrays are kept between calls, so a
+ * tokenizer that has warmed up does not allocate. It follows the same rules
+ * as Calculator.simpleFormat: double negatives become addition, negative
+ * numbers are folded into a single token, and invalid characters, double
+ * operators, double decimals and leading/trailing operators are rejected.
+ *
+ * When variable names are given, a name in the expression becomes a
+ * VARIABLE token, and a negative sign before it is folded in as for a
+ * number. Without variable names every letter is an invalid character.
+ *
+ * A tokenizer recognizes the four operators, or the operators and
+ * functions of the registry it is created with, see Operators. A function
+ * name followed by an open parenthesis becomes a token whose kind is the
+ * function's opcode, and commas between its arguments become COMMA tokens.
+ *
+ * A tokenizer is not thread-safe; use one per thread.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public final class Tokenizer {
+    // token kinds; operators use the opcodes of CompiledExpression
+    public static final int NUMBER = CompiledExpression.PUSH;
+    public static final int ADD = CompiledExpression.ADD;
+    public static final int SUBTRACT = CompiledExpression.SUBTRACT;
+    public static final int MULTIPLY = CompiledExpression.MULTIPLY;
+    public static final int DIVIDE = CompiledExpression.DIVIDE;
+    public static final int OPEN_PARENTHESIS = 5;
+    public static final int CLOSED_PARENTHESIS = 6;
+    public static final int DECIMAL = 7;
+    public static final int VARIABLE = CompiledExpression.LOAD;
+    // separates the arguments of a function; registered operators and
+    // functions have their opcodes as kinds, see Operators
+    public static final int COMMA = 11;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final String[] NO_VARIABLES = {};
+    // character of each operator, parenthesis and decimal kind; other
+    // kinds are written as in the input
+    private static final String SYMBOLS = " +-*/().";
+    // longest literal that is parsed exactly without Double.parseDouble
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Operators operators;
+    private CharSequence input;
+    private String[] variables = NO_VARIABLES;
+    private int count;
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private char[] literal = new char[INITIAL_CAPACITY];
+
+    // result of the last scanNumber call
+    private int numberEnd;
+    private int numberLength;
+    private double numberValue;
+    // result of the last scanVariable call
+    private int variableEnd;
+    // error found by the last call to scan or compile, see Result
+    private int error;
+    private int errorStart;
+    private int errorEnd;
+    private int errorToken;
+    // receives the tokens in place of the arrays, see scan(input, sink)
+    private Sink sink;
+
+  /**
+   * Constructor creates a tokenizer of the four operators
+   */
+  public Tokenizer() {
+      this(Operators.DEFAULT);
+  }
+
+  /**
+   * Constructor creates a tokenizer of the operators and functions of a
+   * registry
+   * @param operators, operators and functions expressions may use
+   */
+  public Tokenizer(Operators operators) {
+      this.operators = operators;
+  }
+
+  /**
+   * Method name: tokenize
+   * Description: splits an infix expression into tokens, replacing the
+   * tokens of any previous call
+   * @param input, expression in infix notation
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value
+   * @throws SyntaxErrorException when argument is empty, has double
+   * operators, double decimals, or begins/ends with an operator
+   */
+  public void tokenize(CharSequence input)
+          throws InvalidCharacterException, SyntaxErrorException {
+      tokenize(input, NO_VARIABLES);
+  }
+
+  /**
+   * Method name: tokenize
+   * Description: splits an infix expression that may use the given
+   * variables into tokens, replacing the tokens of any previous call
+   * @param input, expression in infix notation
+   * @param variables, names the expression may use; a name is a letter or
+   * underscore followed by letters, digits or underscores
+   * @throws InvalidCharacterException when argument has a non-digit or non-op
+   * value, or a name that is not one of the variables
+   * @throws SyntaxErrorException when argument is empty, has double
+   * operators, double decimals, or begins/ends with an operator
+   */
+  public void tokenize(CharSequence input, String[] variables)
+          throws InvalidCharacterException, SyntaxErrorException {
+      if (!scan(input, variables)) {
+          throwError();
+      }
+  }
+
+  /**
+   * Method name: scan
+   * Description: splits an infix expression into tokens, as tokenize
+   * does, but reports an error by returning false instead of throwing
+   * @param input, expression in infix notation
+   * @return true if the expression was split into tokens
+   */
+  boolean scan(CharSequence input) {
+      return scan(input, NO_VARIABLES);
+  }
+
+  /**
+   * Method name: scan
+   * Description: splits an infix expression that may use the given
+   * variables into tokens, as tokenize does, but reports an error by
+   * returning false instead of throwing; the error is kept until the next
+   * call, see error
+   * @param input, expression in infix notation
+   * @param variables, names the expression may use
+   * @return true if the expression was split into tokens
+   */
+  boolean scan(CharSequence input, String[] variables) {
+      this.input = input;
+      this.variables = variables;
+      count = 0;
+      error = Result.OK;
+      int length = input.length();
+      int index = skipSpaces(0);
+      if (index == length) { // nothing but white space
+          return fail(Result.SYNTAX_ERROR, length, length);
+      }
+      char first = input.charAt(index);
+      char previous = 0;
+      boolean atStart = true;
+      // iterates through each character that is not white space
+      while (index < length) {
+          char current = input.charAt(index);
+          int nextIndex = skipSpaces(index + 1);
+          // checks for doubles
+          if (nextIndex < length) {
+              char next = input.charAt(nextIndex);
+              // removes double negatives
+              if (current == '-' && next == '-') {
+                  add(ADD, index, nextIndex + 1, 0);
+                  previous = next;
+                  atStart = false;
+                  index = skipSpaces(nextIndex + 1);
+                  continue;
+              }
+              // invalid double operator
+              else if (current != '-' && operators.isOperator(current)
+                      && operators.isOperator(next)) {
+                  return fail(Result.SYNTAX_ERROR, nextIndex, nextIndex + 1);
+              }
+              // valid negative number after operator
+              else if (!atStart && current == '-'
+                      && (previous == '(' || previous == ','
+                      || operators.isOperator(previous))) {
+                  scanNumber(nextIndex, true);
+                  if (numberLength > 0) {
+                      add(NUMBER, index, numberEnd, numberValue);
+                      previous = input.charAt(numberEnd - 1);
+                      index = skipSpaces(numberEnd);
+                  }
+                  else if (isNameStart(next) && !isCall(nextIndex)) {
+                      // negative variable
+                      int variable = scanVariable(nextIndex);
+                      if (variable < 0) {
+                          return false;
+                      }
+                      add(VARIABLE, index, variableEnd, ~variable);
+                      previous = input.charAt(variableEnd - 1);
+                      index = skipSpaces(variableEnd);
+                  }
+                  else {
+                      add(SUBTRACT, index, index + 1, 0);
+                      previous = current;
+                      index = skipSpaces(index + 1);
+                  }
+                  continue;
+              }
+              // subtraction after end parenthesis
+              else if (!atStart && current == '-' && previous == ')') {
+                  add(SUBTRACT, index, index + 1, 0);
+                  previous = current;
+                  scanNumber(nextIndex, false);
+                  if (numberLength == 1 && literal[0] == '.') {
+                      add(DECIMAL, nextIndex, numberEnd, 0);
+                      previous = '.';
+                  }
+                  else if (numberLength > 0) {
+                      add(NUMBER, nextIndex, numberEnd, numberValue);
+                      previous = input.charAt(numberEnd - 1);
+                  }
+                  index = skipSpaces(numberLength > 0 ? numberEnd : index + 1);
+                  continue;
+              }
+              // beginning negative number
+              else if (atStart && current == '-') {
+                  scanNumber(nextIndex, true);
+                  if (numberLength > 0) {
+                      add(NUMBER, index, numberEnd, numberValue);
+                      previous = input.charAt(numberEnd - 1);
+                      atStart = false;
+                      index = skipSpaces(numberEnd);
+                      continue;
+                  }
+                  if (isNameStart(next) && !isCall(nextIndex)) {
+                      // beginning negative variable
+                      int variable = scanVariable(nextIndex);
+                      if (variable < 0) {
+                          return false;
+                      }
+                      add(VARIABLE, index, variableEnd, ~variable);
+                      previous = input.charAt(variableEnd - 1);
+                      atStart = false;
+                      index = skipSpaces(variableEnd);
+                      continue;
+                  }
+              }
+              // invalid double decimal
+              else if (current == '.' && next == '.') {
+                  return fail(Result.SYNTAX_ERROR, nextIndex, nextIndex + 1);
+              }
+          }
+          // valid operator
+          int kind = operators.kind(current);
+          if (kind > NUMBER) {
+              add(kind, index, index + 1, 0);
+              previous = current;
+              index = nextIndex;
+          }
+          // reached number
+          else if (Character.isDigit(current)) {
+              scanNumber(index, false);
+              add(NUMBER, index, numberEnd, numberValue);
+              previous = input.charAt(numberEnd - 1);
+              index = skipSpaces(numberEnd);
+          }
+          // reached function
+          else if (isNameStart(current) && isCall(index)) {
+              add(operators.function(input.subSequence(index, variableEnd)),
+                      index, variableEnd, 0);
+              previous = input.charAt(variableEnd - 1);
+              index = skipSpaces(variableEnd);
+          }
+          // reached variable
+          else if (isNameStart(current)) {
+              int variable = scanVariable(index);
+              if (variable < 0) {
+                  return false;
+              }
+              add(VARIABLE, index, variableEnd, variable);
+              previous = input.charAt(variableEnd - 1);
+              index = skipSpaces(variableEnd);
+          }
+          else { // invalid
+              return fail(Result.INVALID_CHARACTER, index, index + 1);
+          }
+          atStart = false;
+      }
+      // checks if expression begins or ends with an invalid operator
+      if (first != '-' && operators.isOperator(first)) {
+          int start = skipSpaces(0);
+          return fail(Result.SYNTAX_ERROR, start, start + 1);
+      }
+      if (operators.isOperator(previous)) {
+          return fail(Result.SYNTAX_ERROR, length, length);
+      }
+      return true;
+  }
+
+  /**
+   * Method name: scan
+   * Description: scans an infix expression as scan does, handing each token
+   * to a sink as it is found instead of keeping it, so size() is 0 after
+   * @param input, expression in infix notation
+   * @param sink, receiver of the tokens
+   * @return true if the expression was split into tokens
+   */
+  boolean scan(CharSequence input, Sink sink) {
+      this.sink = sink;
+      try {
+          return scan(input, NO_VARIABLES);
+      } finally {
+          this.sink = null;
+      }
+  }
+
+  /**
+   * Method name: fail
+   * Description: keeps the error found by scan
+   * @param error, error code of Result
+   * @param start, offset of the first character in error
+   * @param end, offset after the last character in error
+   * @return false
+   */
+  private boolean fail(int error, int start, int end) {
+      this.error = error;
+      errorStart = start;
+      errorEnd = end;
+      errorToken = -1;
+      return false;
+  }
+
+  /**
+   * Method name: fail
+   * Description: keeps an error found in a token after scanning, by the
+   * compiler
+   * @param error, error code of Result
+   * @param token, token number; -1 for the end of the input
+   */
+  void fail(int error, int token) {
+      if (token < 0) {
+          fail(error, input.length(), input.length());
+      }
+      else {
+          fail(error, starts[token], ends[token]);
+      }
+      errorToken = token;
+  }
+
+  /**
+   * Method name: error
+   * @return error code of Result for the last call to scan or compile,
+   * Result.OK if there was none
+   */
+  int error() {
+      return error;
+  }
+
+  /**
+   * Method name: errorPosition
+   * @return offset in the input of the error
+   */
+  int errorPosition() {
+      return errorStart;
+  }
+
+  /**
+   * Method name: errorToken
+   * @return number of the token in error, -1 if the error is not in a
+   * token
+   */
+  int errorToken() {
+      return errorToken;
+  }
+
+  /**
+   * Method name: errorText
+   * @return characters of the input in error
+   */
+  String errorText() {
+      return input.subSequence(errorStart, errorEnd).toString();
+  }
+
+  /**
+   * Method name: throwError
+   * Description: throws the exception for the error found by the last call
+   * to scan
+   * @throws InvalidCharacterException when the error is an invalid
+   * character
+   * @throws SyntaxErrorException otherwise
+   */
+  void throwError() throws InvalidCharacterException, SyntaxErrorException {
+      if (error == Result.INVALID_CHARACTER) {
+          throw new InvalidCharacterException(errorText());
+      }
+      throw new SyntaxErrorException();
+  }
+
+  /**
+   * Method name: operators
+   * @return operators and functions the tokenizer recognizes
+   */
+  Operators operators() {
+      return operators;
+  }
+
+  /**
+   * Method name: size
+   * @return number of tokens found by the last call to tokenize
+   */
+  public int size() {
+      return count;
+  }
+
+  /**
+   * Method name: kind
+   * @param index, token number
+   * @return NUMBER, an operator opcode, OPEN_PARENTHESIS,
+   * CLOSED_PARENTHESIS, DECIMAL, VARIABLE, COMMA or the opcode of a
+   * registered operator or function
+   */
+  public int kind(int index) {
+      return kinds[index];
+  }
+
+  /**
+   * Method name: value
+   * Description: obtains the parsed value of a number token; a malformed
+   * number such as 1..2 has the value NaN
+   * @param index, token number
+   * @return value of number, 0 for other tokens
+   */
+  public double value(int index) {
+      return values[index];
+  }
+
+  /**
+   * Method name: variable
+   * Description: obtains the variable of a VARIABLE token
+   * @param index, token number
+   * @return index of the variable among the names given to tokenize, or
+   * its complement (~index) if the variable is negated
+   */
+  public int variable(int index) {
+      return (int) values[index];
+  }
+
+  /**
+   * Method name: position
+   * @param index, token number
+   * @return offset of the first character of the token in the input
+   */
+  public int position(int index) {
+      return starts[index];
+  }
+
+  /**
+   * Method name: text
+   * Description: rebuilds a token as a string without white space, in the
+   * same format as Calculator.simpleFormat
+   * @param index, token number
+   * @return token in string format
+   */
+  public String text(int index) {
+      switch (kinds[index]) {
+          case ADD: return "+";
+          case SUBTRACT: return "-";
+          case MULTIPLY: return "*";
+          case DIVIDE: return "/";
+          case OPEN_PARENTHESIS: return "(";
+          case CLOSED_PARENTHESIS: return ")";
+          case DECIMAL: return ".";
+      }
+      StringBuilder number = new StringBuilder(ends[index] - starts[index]);
+      for (int i = starts[index]; i < ends[index]; i++) {
+          char c = input.charAt(i);
+          if (!isSpace(c)) {
+              number.append(c);
+          }
+      }
+      return number.toString();
+  }
+
+  /**
+   * Method name: canonical
+   * Description: rebuilds the tokens as one string, each token as given by
+   * text and separated by a single space, so expressions that differ only
+   * in white space or in double negatives have the same canonical form
+   * @return tokens found by the last call to tokenize, in canonical form
+   */
+  public String canonical() {
+      StringBuilder out = new StringBuilder(input.length());
+      for (int index = 0; index < count; index++) {
+          if (index > 0) {
+              out.append(' ');
+          }
+          int kind = kinds[index];
+          if (kind == NUMBER || kind >= SYMBOLS.length()) {
+              for (int i = starts[index]; i < ends[index]; i++) {
+                  char c = input.charAt(i);
+                  if (!isSpace(c)) {
+                      out.append(c);
+                  }
+              }
+          }
+          else {
+              out.append(SYMBOLS.charAt(kind));
+          }
+      }
+      return out.toString();
+  }
+
+  /**
+   * Method name: isSpace
+   * Description: matches the characters removed by the regex \s
+   * @param c, any character
+   * @return true if c is white space
+   */
+  static boolean isSpace(char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+              || c == '\f' || c == '\r';
+  }
+
+  /**
+   * Method name: isName
+   * Description: checks that a string can be used as a variable name
+   * @param name, any string
+   * @return true if name is a letter or underscore followed by letters,
+   * digits or underscores
+   */
+  static boolean isName(String name) {
+      if (name.isEmpty() || !isNameStart(name.charAt(0))) {
+          return false;
+      }
+      for (int i = 1; i < name.length(); i++) {
+          if (!isNamePart(name.charAt(i))) {
+              return false;
+          }
+      }
+      return true;
+  }
+
+  /**
+   * Method name: names
+   * Description: finds the names an expression uses, for declaring them
+   * as its variables
+   * @param input, expression in infix notation
+   * @return each name in the expression once, in order of first use
+   */
+  static String[] names(CharSequence input) {
+      ArrayList<String> names = new ArrayList<>();
+      int length = input.length();
+      int index = 0;
+      while (index < length) {
+          if (!isNameStart(input.charAt(index))) {
+              index++;
+              continue;
+          }
+          int end = index + 1;
+          while (end < length && isNamePart(input.charAt(end))) {
+              end++;
+          }
+          String name = input.subSequence(index, end).toString();
+          if (!names.contains(name)) {
+              names.add(name);
+          }
+          index = end;
+      }
+      return names.toArray(NO_VARIABLES);
+  }
+
+  /**
+   * Method name: isNameStart
+   * @param c, any character
+   * @return true if c can start a variable name
+   */
+  private static boolean isNameStart(char c) {
+      return Character.isLetter(c) || c == '_';
+  }
+
+  /**
+   * Method name: isNamePart
+   * @param c, any character
+   * @return true if c can be part of a variable name
+   */
+  private static boolean isNamePart(char c) {
+      return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  /**
+   * Method name: isCall
+   * Description: checks for a function name followed by an open
+   * parenthesis, storing the end of the name in variableEnd
+   * @param index, offset of the first character of a name
+   * @return true if the name is a function and is followed by its
+   * arguments
+   */
+  private boolean isCall(int index) {
+      if (operators.size() == 0) {
+          return false;
+      }
+      int length = input.length();
+      int end = index + 1;
+      while (end < length && isNamePart(input.charAt(end))) {
+          end++;
+      }
+      variableEnd = end;
+      int next = skipSpaces(end);
+      return next < length && input.charAt(next) == '('
+              && operators.function(input.subSequence(index, end)) >= 0;
+  }
+
+  /**
+   * Method name: skipSpaces
+   * @param index, offset to start from
+   * @return offset of the next character that is not white space, or the
+   * input length
+   */
+  private int skipSpaces(int index) {
+      int length = input.length();
+      while (index < length && isSpace(input.charAt(index))) {
+          index++;
+      }
+      return index;
+  }
+
+  /**
+   * Method name: scanNumber
+   * Description: reads the digits and decimals of a number starting at the
+   * given offset, skipping white space in between, and stores its end,
+   * length and value in numberEnd, numberLength and numberValue
+   * @param index, offset of the first character of the number
+   * @param negative, true if the number is preceded by a negative sign
+   */
+  private void scanNumber(int index, boolean negative) {
+      int length = input.length();
+      int end = index;
+      int digits = 0;
+      int fractionDigits = 0;
+      int decimals = 0;
+      boolean ascii = true;
+      long mantissa = 0;
+      numberLength = 0;
+      while (index < length) {
+          char c = input.charAt(index);
+          if (c == '.') {
+              decimals++;
+          }
+          else if (c >= '0' && c <= '9') {
+              if (digits < MAX_FAST_DIGITS) {
+                  mantissa = mantissa * 10 + (c - '0');
+              }
+              digits++;
+              if (decimals > 0) {
+                  fractionDigits++;
+              }
+          }
+          else if (Character.isDigit(c)) { // digit Double cannot parse
+              ascii = false;
+          }
+          else if (!isSpace(c)) {
+              break;
+          }
+          if (!isSpace(c)) {
+              if (numberLength == literal.length) {
+                  literal = Arrays.copyOf(literal, numberLength * 2);
+              }
+              literal[numberLength++] = c;
+              end = index + 1;
+          }
+          index++;
+      }
+      numberEnd = end;
+      if (digits == 0 || decimals > 1 || !ascii) {
+          numberValue = Double.NaN; // malformed, rejected on compile
+      }
+      else if (digits <= MAX_FAST_DIGITS
+              && fractionDigits < POWERS_OF_TEN.length) {
+          // both operands are exact, so the quotient is correctly rounded
+          double value = mantissa / POWERS_OF_TEN[fractionDigits];
+          numberValue = negative ? -value : value;
+      }
+      else {
+          double value
+                  = Double.parseDouble(new String(literal, 0, numberLength));
+          numberValue = negative ? -value : value;
+      }
+  }
+
+  /**
+   * Method name: scanVariable
+   * Description: reads a variable name starting at the given offset and
+   * stores its end in variableEnd
+   * @param index, offset of the first character of the name
+   * @return index of the variable; -1 when there are no variables, or the
+   * name is not one of them, after keeping the invalid character error
+   */
+  private int scanVariable(int index) {
+      if (variables.length == 0) { // letters are invalid, as in simpleFormat
+          fail(Result.INVALID_CHARACTER, index, index + 1);
+          return -1;
+      }
+      int length = input.length();
+      int end = index + 1;
+      while (end < length && isNamePart(input.charAt(end))) {
+          end++;
+      }
+      variableEnd = end;
+      for (int variable = 0; variable < variables.length; variable++) {
+          String name = variables[variable];
+          if (name.length() == end - index && matches(name, index)) {
+              return variable;
+          }
+      }
+      fail(Result.INVALID_CHARACTER, index, end);
+      return -1;
+  }
+
+  /**
+   * Method name: matches
+   * @param name, variable name
+   * @param index, offset in the input
+   * @return true if the input holds name at index
+   */
+  private boolean matches(String name, int index) {
+      for (int i = 0; i < name.length(); i++) {
+          if (input.charAt(index + i) != name.charAt(i)) {
+              return false;
+          }
+      }
+      return true;
+  }
+
+  /**
+   * Method name: add
+   * Description: appends a token, growing the token arrays when full, or
+   * hands it to the sink of scan(input, sink)
+   * @param kind, token kind
+   * @param start, offset of the first character of the token
+   * @param end, offset after the last character of the token
+   * @param value, value of a number token, or variable of a variable token
+   */
+  private void add(int kind, int start, int end, double value) {
+      if (sink != null) {
+          sink.token(kind, start, value);
+          return;
+      }
+      if (count == kinds.length) {
+          int capacity = count * 2;
+          kinds = Arrays.copyOf(kinds, capacity);
+          starts = Arrays.copyOf(starts, capacity);
+          ends = Arrays.copyOf(ends, capacity);
+          values = Arrays.copyOf(values, capacity);
+      }
+      kinds[count] = kind;
+      starts[count] = start;
+      ends[count] = end;
+      values[count] = value;
+      count++;
+  }
+
+    /**
+     * receiver of the tokens of scan(input, sink), in input order
+     */
+    interface Sink {
+        void token(int kind, int start, double value);
+    }
+}
@@ -0,0 +1,167 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class allocationTest {
+  // calls before measuring, so classes are loaded and the JIT has run
+  private static final int WARMUP = 5000;
+  private static final int CALLS = 5000;
+
+  // representative shapes: a single operator, double negatives, deep
+  // nesting, a long run of decimals, leading negatives, and a fraction
+  private static final String[] SHAPES = {"1 + 2", "(58*3.2+(45--23))",
+          "((((((((((1 + 2) * 3) - 4) / 5) + 6) * 7) - 8) / 9) + 10) * 11)",
+          "1.5 * 2 - 3.25 / 4 + 5 * 6 - 7.75 / 8 + 9 * 10 - 11 / 12 + 13.5"
+                  + " * 14 - 15 / 16",
+          "-1 - (2 * 3) -1 - - 3", "(24.3 + 4) / 78"};
+
+  // bytes allocated per expression by each path, one budget per shape;
+  // about a quarter above what each path allocated when checked in. Lower
+  // a budget when a change allocates less, raise one only on purpose.
+  private static final long[] SIMPLE_FORMAT_BUDGET
+          = {1024, 1536, 5824, 4480, 1664, 1280};
+  private static final long[] POSTFIX_BUDGET
+          = {256, 320, 576, 768, 320, 256};
+  private static final long[] PARSE_STRING_BUDGET
+          = {576, 1024, 2368, 3456, 1152, 832};
+  private static final long[] PIPELINE_BUDGET
+          = {1792, 2816, 8640, 8640, 3072, 2304};
+  private static final long[] CALCULATE_BUDGET
+          = {448, 768, 1984, 1728, 768, 576};
+
+  private static com.sun.management.ThreadMXBean threads;
+  // where answers are written, so a double is not boxed to be returned
+  private final double[] sink = new double[1];
+
+  /**
+   * Method name: setUp
+   * Description: turns on counting of the bytes each thread allocates,
+   * skipping the tests on a JVM that cannot count them
+   */
+  @BeforeClass
+  public static void setUp() {
+    assumeTrue(ManagementFactory.getThreadMXBean()
+            instanceof com.sun.management.ThreadMXBean);
+    threads = (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  /**
+   * Method name: testSimpleFormat
+   * Description: checks the bytes simpleFormat allocates per expression
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testSimpleFormat() throws Exception {
+    for (int i = 0; i < SHAPES.length; i++) {
+      String infix = SHAPES[i];
+      assertBudget("simpleFormat", infix, SIMPLE_FORMAT_BUDGET[i],
+              () -> Calculator.simpleFormat(infix));
+    }
+  }
+
+  /**
+   * Method name: testPostfix
+   * Description: checks the bytes postfix allocates per expression, given
+   * the list simpleFormat returns
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testPostfix() throws Exception {
+    for (int i = 0; i < SHAPES.length; i++) {
+      LinkedList<String> infix = Calculator.simpleFormat(SHAPES[i]);
+      assertBudget("postfix", SHAPES[i], POSTFIX_BUDGET[i],
+              () -> Calculator.postfix(infix));
+    }
+  }
+
+  /**
+   * Method name: testParseString
+   * Description: checks the bytes parseString allocates per expression,
+   * given the string postfix returns
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testParseString() throws Exception {
+    for (int i = 0; i < SHAPES.length; i++) {
+      String postfix = Calculator.postfix(Calculator.simpleFormat(
+              SHAPES[i]));
+      assertBudget("parseString", SHAPES[i], PARSE_STRING_BUDGET[i],
+              () -> {
+                sink[0] = Calculator.parseString(postfix);
+                return null;
+              });
+    }
+  }
+
+  /**
+   * Method name: testEndToEnd
+   * Description: checks the bytes allocated per expression from its text
+   * to its answer, through simpleFormat, postfix and parseString as main
+   * does, and through calculate
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEndToEnd() throws Exception {
+    for (int i = 0; i < SHAPES.length; i++) {
+      String infix = SHAPES[i];
+      assertBudget("simpleFormat, postfix and parseString", infix,
+              PIPELINE_BUDGET[i], () -> {
+                sink[0] = Calculator.parseString(Calculator.postfix(
+                        Calculator.simpleFormat(infix)));
+                return null;
+              });
+      assertBudget("calculate", infix, CALCULATE_BUDGET[i],
+              () -> Calculator.calculate(infix));
+    }
+  }
+
+  /**
+   * Method name: testCompiled
+   * Description: checks that evaluating a compiled expression on a given
+   * stack allocates nothing
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testCompiled() throws Exception {
+    for (String infix : SHAPES) {
+      CompiledExpression program = Calculator.compile(infix);
+      double[] stack = program.scratch();
+      assertBudget("CompiledExpression.evaluate", infix, 0,
+              () -> {
+                sink[0] = program.evaluate(stack);
+                return null;
+              });
+    }
+  }
+
+  /**
+   * Method name: assertBudget
+   * Description: measures the bytes a call allocates on average, after
+   * warming it up, and checks them against a budget
+   * @param path, name of what is measured, for the failure message
+   * @param infix, expression the call evaluates
+   * @param budget, most bytes the call may allocate
+   * @param call, the call to measure
+   * @throws Exception when the call fails
+   */
+  private static void assertBudget(String path, String infix, long budget,
+          Callable<?> call) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      call.call();
+    }
+    long before = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < CALLS; i++) {
+      call.call();
+    }
+    long bytes = (threads.getCurrentThreadAllocatedBytes() - before) / CALLS;
+    assertTrue(path + " allocated " + bytes + " bytes for " + infix
+            + ", over its budget of " + budget, bytes <= budget);
+  }
+}
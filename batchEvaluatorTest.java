@@ -0,0 +1,77 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.assertEquals;
+
+public class batchEvaluatorTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Method name: run
+   * Description: writes the input to a file and evaluates it in batch mode
+   * @param input, file contents
+   * @param blockSize, bytes per block
+   * @param regionSize, bytes mapped at once
+   * @return batch output
+   * @throws IOException when the file cannot be written or read
+   */
+  private String run(String input, int blockSize, int regionSize)
+          throws IOException {
+    Path file = folder.newFile().toPath();
+    Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      new BatchEvaluator(pool, blockSize, regionSize).evaluate(file, out);
+    } finally {
+      pool.shutdown();
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Method name: testAnswersAndErrors
+   * Description: checks that every line gets its answer or error message,
+   * in input order
+   * @throws IOException when the file cannot be written or read
+   */
+  @Test
+  public void testAnswersAndErrors() throws IOException {
+    String input = "1 + 2\n(24.3 + 4) / 78\n\nhello\n1/0\n(()\r\n"
+            + "58*3.2+(45--23)";
+    String expected = "3.0\n0.3628205128205128\nNo input was given.\n"
+            + "h is Invalid\nInvalid division by zero.\nSyntax Error.\n"
+            + "253.60000000000002\n";
+    assertEquals(expected, run(input, 1 << 20, 1 << 30));
+  }
+
+  /**
+   * Method name: testBlocksAndRegions
+   * Description: checks that output order and content do not depend on
+   * how the file is cut into blocks and mapped regions
+   * @throws Exception when an expression is invalid
+   */
+  @Test
+  public void testBlocksAndRegions() throws Exception {
+    StringBuilder input = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      String line = i + " * 2 - (" + (i % 7) + " + 0.5)";
+      input.append(line).append('\n');
+      expected.append(Calculator.compile(line).evaluate()).append('\n');
+    }
+    String output = run(input.toString(), 1 << 20, 1 << 30);
+    assertEquals(expected.toString(), output);
+    assertEquals(output, run(input.toString(), 7, 1 << 30));
+    assertEquals(output, run(input.toString(), 100, 4096));
+    assertEquals(output, run(input.toString(), 1, 64));
+  }
+}
@@ -0,0 +1,247 @@
+/**
+ * Filename: CalculatorStages.java
+ * Usage: loaded by benchmarks.Stages.load()
+ * Description: this file contains the default package implementation of
+ * benchmarks.Stages, which forwards each stage to Calculator.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class CalculatorStages implements benchmarks.Stages {
+    private final Tokenizer tokenizer = new Tokenizer();
+
+    @Override
+    public LinkedList<String> simpleFormat(String infix) throws Exception {
+        return Calculator.simpleFormat(infix);
+    }
+
+    @Override
+    public String postfix(LinkedList<String> tokens) throws Exception {
+        return Calculator.postfix(tokens);
+    }
+
+    @Override
+    public double parseString(String postfix) throws Exception {
+        return Calculator.parseString(postfix);
+    }
+
+    @Override
+    public double evaluate(double num1, double num2, String operator)
+            throws Exception {
+        return Calculator.evaluate(num1, num2, operator);
+    }
+
+    @Override
+    public int tokenize(String infix) throws Exception {
+        tokenizer.tokenize(infix);
+        return tokenizer.size();
+    }
+
+    @Override
+    public Object compile(String infix) throws Exception {
+        return Calculator.compile(infix);
+    }
+
+    @Override
+    public double evaluateCompiled(Object compiled) throws Exception {
+        return ((CompiledExpression) compiled).evaluate();
+    }
+
+    @Override
+    public double pipeline(String infix) throws Exception {
+        return Calculator.parseString(
+                Calculator.postfix(Calculator.simpleFormat(infix)));
+    }
+
+    @Override
+    public double calculate(String infix) throws Exception {
+        return Calculator.compile(infix).evaluate();
+    }
+
+    @Override
+    public long batch(ForkJoinPool pool, Path input, OutputStream output)
+            throws Exception {
+        return new BatchEvaluator(pool).evaluate(input, output);
+    }
+
+    @Override
+    public Object formula(String expression, String... variables)
+            throws Exception {
+        return Formula.compile(expression, variables);
+    }
+
+    @Override
+    public Object unoptimizedFormula(String expression, String... variables)
+            throws Exception {
+        return Formula.compile(expression, false, variables);
+    }
+
+    @Override
+    public double evaluateFormula(Object formula, double[] values)
+            throws Exception {
+        return ((Formula) formula).evaluate(values);
+    }
+
+    @Override
+    public void evaluateColumns(Object formula, double[][] columns,
+            double[] out) throws Exception {
+        ((Formula) formula).evaluate(columns, out);
+    }
+
+    @Override
+    public Object cache(int capacity) {
+        return new ResultCache(capacity);
+    }
+
+    @Override
+    public double cached(Object cache, String infix) throws Exception {
+        return ((ResultCache) cache).evaluate(tokenizer, infix);
+    }
+
+    @Override
+    public Object parallel(Object compiled) {
+        return ParallelExpression.of((CompiledExpression) compiled);
+    }
+
+    @Override
+    public double evaluateParallel(Object parallel, ForkJoinPool pool)
+            throws Exception {
+        return ((ParallelExpression) parallel).evaluate(pool);
+    }
+
+    @Override
+    public Object sheet() {
+        return new Sheet();
+    }
+
+    @Override
+    public void set(Object sheet, String name, String expression)
+            throws Exception {
+        ((Sheet) sheet).set(name, expression);
+    }
+
+    @Override
+    public double value(Object sheet, String name) throws Exception {
+        return ((Sheet) sheet).value(name);
+    }
+
+    @Override
+    public double direct(String infix) throws Exception {
+        tokenizer.tokenize(infix);
+        return CompiledExpression.fromTokens(tokenizer).evaluate();
+    }
+
+    @Override
+    public double measured(String infix) throws Exception {
+        return Metrics.calculate(tokenizer, infix).orThrow();
+    }
+
+    @Override
+    public Object result(String infix) {
+        return Calculator.calculate(infix);
+    }
+
+    @Override
+    public Object decimal(String infix, boolean fast) throws Exception {
+        return DecimalExpression.compile(infix,
+                DecimalExpression.DEFAULT_SCALE,
+                DecimalExpression.DEFAULT_ROUNDING, fast);
+    }
+
+    @Override
+    public Object evaluateDecimal(Object decimal) throws Exception {
+        return ((DecimalExpression) decimal).evaluate();
+    }
+
+    @Override
+    public Object streaming() {
+        return new StreamingEvaluator();
+    }
+
+    @Override
+    public Object stream(Object streaming, Reader in) throws IOException {
+        return ((StreamingEvaluator) streaming).calculate(in);
+    }
+
+    @Override
+    public Object evaluator() {
+        return new Evaluator();
+    }
+
+    @Override
+    public double shared(Object evaluator, String infix) throws Exception {
+        return ((Evaluator) evaluator).evaluate(infix);
+    }
+
+    @Override
+    public Object tieredFormula(String expression, int threshold,
+            String... variables) throws Exception {
+        return Formula.compile(expression, true, threshold, variables);
+    }
+
+    @Override
+    public void writeLibrary(Path file, List<String> infix)
+            throws Exception {
+        List<CompiledExpression> expressions = new ArrayList<>();
+        for (String expression : infix) {
+            expressions.add(Calculator.compile(expression));
+        }
+        ExpressionLibrary.write(file, expressions);
+    }
+
+    @Override
+    public Object openLibrary(Path file) throws IOException {
+        return ExpressionLibrary.open(file);
+    }
+
+    @Override
+    public double evaluateLibrary(Object library, int index)
+            throws Exception {
+        return ((ExpressionLibrary) library).evaluate(index);
+    }
+
+    @Override
+    public Object fused() {
+        return new FusedEvaluator();
+    }
+
+    @Override
+    public double fused(Object evaluator, String infix) throws Exception {
+        return ((FusedEvaluator) evaluator).evaluate(infix);
+    }
+
+    @Override
+    public Object operators(int extra) {
+        Operators operators = Operators.STANDARD;
+        for (int i = 0; i < extra; i++) {
+            operators = operators.withFunction("unused" + i, 1,
+                    (args, j) -> args[j]);
+        }
+        return operators.withFunction("hypot", 2,
+                (args, i) -> Math.hypot(args[i], args[i + 1]));
+    }
+
+    @Override
+    public Object evaluator(Object operators) {
+        return new Evaluator((Operators) operators);
+    }
+
+    @Override
+    public Object formula(String expression, Object operators,
+            String... variables) throws Exception {
+        return Formula.compile(expression, true, Integer.MAX_VALUE,
+                (Operators) operators, variables);
+    }
+
+    @Override
+    public boolean ok(Object result) {
+        return ((Result) result).ok();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Filename: BatchBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="BatchBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="BatchBenchmark -p threads=1,2,4,8,16"
+ * Description: this file contains a benchmark of batch mode over a file of
+ * generated expressions, one per line, for different numbers of threads.
+ * The score is lines evaluated per second, which should grow with the
+ * number of threads up to the number of cores.
+ */
+
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int LINES = 200_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"16"})
+    public int operands;
+
+    private Stages stages;
+    private ForkJoinPool pool;
+    private Path input;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        pool = new ForkJoinPool(threads);
+        input = Files.createTempFile("batch", ".txt");
+        ExpressionGenerator generator
+                = new ExpressionGenerator(42, 3, "+-*", 4);
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            for (int i = 0; i < LINES; i++) {
+                writer.write(generator.next(operands));
+                writer.newLine();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pool.shutdown();
+        Files.deleteIfExists(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long batch() throws Exception {
+        return stages.batch(pool, input, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Filename: CacheBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="CacheBenchmark"
+ * Description: this file contains benchmarks of repetitive traffic: a
+ * small set of generated expressions, each sent with different white space,
+ * evaluated without a cache and through a ResultCache. With capacity below
+ * the number of distinct expressions the cache also evicts.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+    private static final int DISTINCT = 256;
+    // each expression appears this many times, with different white space
+    private static final int VARIANTS = 4;
+
+    @Param({"32"})
+    public int operands;
+
+    @Param({"1024", "128"})
+    public int capacity;
+
+    private Stages stages;
+    private Object cache;
+    private String[] traffic;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        stages = Stages.load();
+        cache = stages.cache(capacity);
+        ExpressionGenerator generator
+                = new ExpressionGenerator(42, 3, "+-*", 4);
+        Random random = new Random(42);
+        traffic = new String[DISTINCT * VARIANTS];
+        for (int i = 0; i < DISTINCT; i++) {
+            String expression = generator.next(operands);
+            for (int v = 0; v < VARIANTS; v++) {
+                traffic[i * VARIANTS + v] = v == 0
+                        ? expression : expression.replace(" ", "");
+            }
+        }
+        // shuffles so repeats are spread out
+        for (int i = traffic.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String swap = traffic[i];
+            traffic[i] = traffic[j];
+            traffic[j] = swap;
+        }
+    }
+
+    private String next() {
+        next = (next + 1) % traffic.length;
+        return traffic[next];
+    }
+
+    @Benchmark
+    public double uncached() throws Exception {
+        return stages.calculate(next());
+    }
+
+    @Benchmark
+    public double cached() throws Exception {
+        return stages.cached(cache, next());
+    }
+}
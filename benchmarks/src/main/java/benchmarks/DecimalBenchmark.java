@@ -0,0 +1,89 @@
+/**
+ * Filename: DecimalBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="DecimalBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="DecimalBenchmark -p mix=+-*"
+ * Description: this file contains benchmarks of evaluating compiled
+ * expressions in double, in exact decimal with the long fast path, and in
+ * exact decimal with every operation in BigDecimal, the baseline the fast
+ * path is meant to beat. With "+-*" no quotient is ever rounded; with
+ * division in the mix most quotients are, and go to BigDecimal either way.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimalBenchmark {
+    private static final int EXPRESSIONS = 256;
+
+    @Param({"8"})
+    public int operands;
+
+    @Param({"+-*", "+-*/"})
+    public String mix;
+
+    private Stages stages;
+    private Object[] doubles;
+    private Object[] decimals;
+    private Object[] bigs;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        ExpressionGenerator generator
+                = new ExpressionGenerator(42, 3, mix, 4);
+        doubles = new Object[EXPRESSIONS];
+        decimals = new Object[EXPRESSIONS];
+        bigs = new Object[EXPRESSIONS];
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            String expression = generator.next(operands);
+            try {
+                doubles[i] = stages.compile(expression);
+                stages.evaluateCompiled(doubles[i]);
+            } catch (Exception e) { // divides by zero, draw another
+                i--;
+                continue;
+            }
+            decimals[i] = stages.decimal(expression, true);
+            bigs[i] = stages.decimal(expression, false);
+        }
+    }
+
+    private int next() {
+        next = (next + 1) % EXPRESSIONS;
+        return next;
+    }
+
+    @Benchmark
+    public double doubles() throws Exception {
+        return stages.evaluateCompiled(doubles[next()]);
+    }
+
+    @Benchmark
+    public Object decimal() throws Exception {
+        return stages.evaluateDecimal(decimals[next()]);
+    }
+
+    @Benchmark
+    public Object bigDecimal() throws Exception {
+        return stages.evaluateDecimal(bigs[next()]);
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Filename: ErrorBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="ErrorBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="ErrorBenchmark -p invalid=0.5"
+ * Description: this file contains benchmarks of traffic where a fraction
+ * of the expressions are invalid: an invalid character, a trailing
+ * operator, or a division by zero, in turn. It is evaluated with the
+ * throwing API, catching each exception, and with Calculator.calculate,
+ * which returns errors as a Result without creating an exception.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorBenchmark {
+    private static final int EXPRESSIONS = 1024;
+
+    @Param({"8"})
+    public int operands;
+
+    // fraction of invalid expressions
+    @Param({"0.15", "1.0"})
+    public double invalid;
+
+    private Stages stages;
+    private String[] expressions;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        stages = Stages.load();
+        ExpressionGenerator generator
+                = new ExpressionGenerator(42, 3, "+-*", 4);
+        Random random = new Random(42);
+        expressions = new String[EXPRESSIONS];
+        int errors = 0;
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            String expression = generator.next(operands);
+            if (random.nextDouble() < invalid) {
+                switch (errors++ % 3) {
+                    case 0:
+                        expression = expression + " * x";
+                        break;
+                    case 1:
+                        expression = expression + " +";
+                        break;
+                    default:
+                        expression = expression + " / (1 - 1)";
+                }
+            }
+            expressions[i] = expression;
+        }
+    }
+
+    private String next() {
+        next = (next + 1) % EXPRESSIONS;
+        return expressions[next];
+    }
+
+    @Benchmark
+    public double thrown() {
+        try {
+            return stages.direct(next());
+        } catch (Exception e) {
+            return Double.NaN;
+        }
+    }
+
+    @Benchmark
+    public Object result() {
+        return stages.result(next());
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Filename: EvaluateBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="EvaluateBenchmark"
+ * Description: this file contains benchmarks of Calculator.evaluate, the
+ * arithmetic of a single operator, for each operator.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+    @Param({"+", "-", "*", "/"})
+    public String operator;
+
+    // not constants, so the JIT cannot fold the arithmetic away
+    private double num1 = 58;
+    private double num2 = 3.2;
+    private Stages stages;
+
+    @Setup
+    public void setUp() {
+        stages = Stages.load();
+    }
+
+    @Benchmark
+    public double evaluate() throws Exception {
+        return stages.evaluate(num1, num2, operator);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Filename: EvaluatorBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="EvaluatorBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="EvaluatorBenchmark -p threads=1,16,64"
+ * Description: this file contains a benchmark of many threads evaluating
+ * generated expressions at once, on platform or virtual threads: through
+ * one Evaluator shared by all of them, and through the original pipeline,
+ * whose Stack<Double> locks on every push and pop. The score is
+ * expressions per second, which for the shared evaluator should grow
+ * with the number of threads up to the number of cores.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluatorBenchmark {
+    private static final int EXPRESSIONS = 1024;
+    // evaluations per invocation, split between the threads
+    private static final int EVALUATIONS = 65536;
+
+    @Param({"1", "2", "4", "8", "64"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean virtual;
+
+    @Param({"16"})
+    public int operands;
+
+    private Stages stages;
+    private Object evaluator;
+    private ExecutorService pool;
+    private String[] expressions;
+    private List<Callable<Double>> shared;
+    private List<Callable<Double>> legacy;
+
+    @Setup
+    public void setUp() {
+        stages = Stages.load();
+        evaluator = stages.evaluator();
+        pool = virtual ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(threads);
+        ExpressionGenerator generator
+                = new ExpressionGenerator(42, 3, "+-*", 4);
+        expressions = new String[EXPRESSIONS];
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            expressions[i] = generator.next(operands);
+        }
+        shared = new ArrayList<>();
+        legacy = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * (EVALUATIONS / threads);
+            int last = (t + 1) * (EVALUATIONS / threads);
+            shared.add(() -> {
+                double sum = 0;
+                for (int i = first; i < last; i++) {
+                    sum += stages.shared(evaluator,
+                            expressions[i % EXPRESSIONS]);
+                }
+                return sum;
+            });
+            legacy.add(() -> {
+                double sum = 0;
+                for (int i = first; i < last; i++) {
+                    sum += LegacyCalculator.parseString(stages.postfix(
+                            stages.simpleFormat(expressions[i % EXPRESSIONS])));
+                }
+                return sum;
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private double run(List<Callable<Double>> tasks) throws Exception {
+        double sum = 0;
+        for (Future<Double> future : pool.invokeAll(tasks)) {
+            sum += future.get();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVALUATIONS)
+    public double shared() throws Exception {
+        return run(shared);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVALUATIONS)
+    public double legacy() throws Exception {
+        return run(legacy);
+    }
+}
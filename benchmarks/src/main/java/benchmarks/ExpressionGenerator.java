@@ -0,0 +1,110 @@
+/**
+ * Filename: ExpressionGenerator.java
+ * Usage: ExpressionGenerator generator
+ *                = new ExpressionGenerator(42, 3, "+/-*", 4);
+ *        String expression = generator.next(100);
+ * Description: this file contains a seeded generator of random infix
+ * expressions that Calculator accepts. The same seed and settings always
+ * produce the same expressions, so benchmark runs can be compared.
+ *   operands - number of literals in an expression
+ *   depth    - deepest nesting of parentheses
+ *   mix      - operators to choose from, e.g. "+-" or "+/-*"; repeating an
+ *              operator makes it more likely
+ *   width    - digits per literal; literals of three or more digits get a
+ *              decimal point
+ */
+
+package benchmarks;
+
+import java.util.Random;
+
+public class ExpressionGenerator {
+    // chance that a term is a parenthesized group, out of GROUP_ODDS
+    private static final int GROUP_ODDS = 3;
+    // chance that the first literal of a group is negative, out of 4
+    private static final int NEGATIVE_ODDS = 4;
+
+    private final Random random;
+    private final int depth;
+    private final String mix;
+    private final int width;
+
+  /**
+   * Constructor creates a generator
+   * @param seed, seed of the random numbers
+   * @param depth, deepest nesting of parentheses
+   * @param mix, operators to choose from
+   * @param width, digits per literal
+   */
+  public ExpressionGenerator(long seed, int depth, String mix, int width) {
+      if (mix.isEmpty() || width < 1 || depth < 0) {
+          throw new IllegalArgumentException();
+      }
+      this.random = new Random(seed);
+      this.depth = depth;
+      this.mix = mix;
+      this.width = width;
+  }
+
+  /**
+   * Method name: next
+   * Description: generates the next expression
+   * @param operands, number of literals in the expression
+   * @return expression in infix notation
+   */
+  public String next(int operands) {
+      StringBuilder out = new StringBuilder(operands * (width + 4));
+      expression(out, Math.max(operands, 1), depth);
+      return out.toString();
+  }
+
+  /**
+   * Method name: expression
+   * Description: appends terms separated by operators, where each term is a
+   * literal or a parenthesized group of several terms
+   * @param out, expression being built
+   * @param operands, number of literals to append
+   * @param depth, nesting of parentheses still allowed
+   */
+  private void expression(StringBuilder out, int operands, int depth) {
+      boolean first = true;
+      while (operands > 0) {
+          if (!first) {
+              out.append(' ')
+                      .append(mix.charAt(random.nextInt(mix.length())))
+                      .append(' ');
+          }
+          int size = 1;
+          if (depth > 0 && operands > 1 && random.nextInt(GROUP_ODDS) == 0) {
+              size = 2 + random.nextInt(operands - 1);
+              out.append('(');
+              expression(out, size, depth - 1);
+              out.append(')');
+          }
+          else {
+              // negative literals are only valid at the start of a group
+              if (first && random.nextInt(NEGATIVE_ODDS) == 0) {
+                  out.append('-');
+              }
+              literal(out);
+          }
+          operands -= size;
+          first = false;
+      }
+  }
+
+  /**
+   * Method name: literal
+   * Description: appends a nonzero literal of the configured width
+   * @param out, expression being built
+   */
+  private void literal(StringBuilder out) {
+      int point = width >= 3 ? 1 + random.nextInt(width - 1) : -1;
+      for (int i = 0; i < width; i++) {
+          if (i == point) {
+              out.append('.');
+          }
+          out.append((char) ('1' + random.nextInt(9)));
+      }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Filename: FormulaBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="FormulaBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="FormulaBenchmark -p rows=1000000"
+ * Description: this file contains benchmarks of evaluating one formula over
+ * a table of rows: by column with Formula.evaluate(double[][], double[]),
+ * row by row with Formula.evaluate(double...), and the old way, writing
+ * each row's values into an expression and compiling it. Each score is the
+ * time for the whole table.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaBenchmark {
+    private static final String[] VARIABLES = {"price", "qty", "discount",
+            "tax"};
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"price * qty - discount",
+            "(price * qty - discount) * (1 + tax) / 100"})
+    public String formula;
+
+    private Stages stages;
+    private Object compiled;
+    private double[][] columns;
+    private double[] row;
+    private double[] out;
+    private String[] literals;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        compiled = stages.formula(formula, VARIABLES);
+        Random random = new Random(42);
+        columns = new double[VARIABLES.length][rows];
+        for (double[] column : columns) {
+            for (int i = 0; i < rows; i++) {
+                column[i] = 1 + random.nextInt(10_000) / 100.0;
+            }
+        }
+        row = new double[VARIABLES.length];
+        out = new double[rows];
+        literals = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            String literal = formula;
+            for (int v = 0; v < VARIABLES.length; v++) {
+                literal = literal.replace(VARIABLES[v],
+                        Double.toString(columns[v][i]));
+            }
+            literals[i] = literal;
+        }
+    }
+
+    @Benchmark
+    public double[] columns() throws Exception {
+        stages.evaluateColumns(compiled, columns, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] perRow() throws Exception {
+        for (int i = 0; i < rows; i++) {
+            for (int v = 0; v < row.length; v++) {
+                row[v] = columns[v][i];
+            }
+            out[i] = stages.evaluateFormula(compiled, row);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public double[] literals() throws Exception {
+        for (int i = 0; i < rows; i++) {
+            out[i] = stages.calculate(literals[i]);
+        }
+        return out;
+    }
+}
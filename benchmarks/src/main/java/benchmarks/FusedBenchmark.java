@@ -0,0 +1,85 @@
+/**
+ * Filename: FusedBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="FusedBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="FusedBenchmark -p operands=1000"
+ * Description: this file contains benchmarks of the end-to-end latency of
+ * evaluating an expression once from its text: in one pass with
+ * FusedEvaluator, tokenized and compiled to a program first as
+ * Calculator.compile does, and with simpleFormat, postfix and parseString
+ * as the original calculator did. Run with the GC profiler (the default of
+ * the jmh task) to see the bytes allocated per expression.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusedBenchmark {
+    // expressions cycled through, so one shape is not learned by the CPU
+    private static final int WORKLOAD_SIZE = 16;
+
+    @Param({"42"})
+    public long seed;
+
+    @Param({"8", "64", "512"})
+    public int operands;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"+-*/"})
+    public String mix;
+
+    @Param({"4"})
+    public int width;
+
+    private Stages stages;
+    private Workload workload;
+    private Object fused;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        workload = Workload.generate(stages, seed, WORKLOAD_SIZE, operands,
+                depth, mix, width);
+        fused = stages.fused();
+    }
+
+    private int next() {
+        next = (next + 1) % WORKLOAD_SIZE;
+        return next;
+    }
+
+    @Benchmark
+    public double fused() throws Exception {
+        return stages.fused(fused, workload.infix[next()]);
+    }
+
+    @Benchmark
+    public double compiled() throws Exception {
+        return stages.calculate(workload.infix[next()]);
+    }
+
+    @Benchmark
+    public double pipeline() throws Exception {
+        return stages.pipeline(workload.infix[next()]);
+    }
+}
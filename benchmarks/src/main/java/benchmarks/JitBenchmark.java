@@ -0,0 +1,113 @@
+/**
+ * Filename: JitBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="JitBenchmark"
+ * Description: this file contains benchmarks of the two tiers of row by
+ * row formula evaluation: the interpreter, and the formula compiled to a
+ * hidden class, against the same formula written by hand in Java with the
+ * same check for a zero divisor. Each score is the time for the whole
+ * table.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JitBenchmark {
+    private static final String[] VARIABLES = {"price", "qty", "discount",
+            "tax"};
+    private static final String NET = "price * qty - discount";
+    private static final String TAXED
+            = "(price * qty - discount) * (1 + tax) / 100";
+    private static final int ROWS = 1000;
+
+    @Param({NET, TAXED})
+    public String formula;
+
+    private Stages stages;
+    private Object interpreted;
+    private Object compiled;
+    private boolean taxed;
+    private double[][] columns;
+    private double[] row;
+    private double[] out;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        interpreted = stages.tieredFormula(formula, Integer.MAX_VALUE,
+                VARIABLES);
+        compiled = stages.tieredFormula(formula, 0, VARIABLES);
+        taxed = formula.equals(TAXED);
+        Random random = new Random(42);
+        columns = new double[VARIABLES.length][ROWS];
+        for (double[] column : columns) {
+            for (int i = 0; i < ROWS; i++) {
+                column[i] = 1 + random.nextInt(10_000) / 100.0;
+            }
+        }
+        row = new double[VARIABLES.length];
+        out = new double[ROWS];
+    }
+
+    @Benchmark
+    public double[] interpreted() throws Exception {
+        return perRow(interpreted);
+    }
+
+    @Benchmark
+    public double[] compiled() throws Exception {
+        return perRow(compiled);
+    }
+
+    @Benchmark
+    public double[] handWritten() throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            for (int v = 0; v < row.length; v++) {
+                row[v] = columns[v][i];
+            }
+            out[i] = taxed ? taxed(row) : net(row);
+        }
+        return out;
+    }
+
+    private double[] perRow(Object formula) throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            for (int v = 0; v < row.length; v++) {
+                row[v] = columns[v][i];
+            }
+            out[i] = stages.evaluateFormula(formula, row);
+        }
+        return out;
+    }
+
+    private static double net(double[] values) {
+        return values[0] * values[1] - values[2];
+    }
+
+    private static double taxed(double[] values) {
+        double divisor = 100;
+        if (divisor == 0) {
+            throw new ArithmeticException("Divide by zero");
+        }
+        return (values[0] * values[1] - values[2]) * (1 + values[3])
+                / divisor;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Filename: LatencyHistogram.java
+ * Usage: LatencyHistogram histogram = new LatencyHistogram();
+ *        histogram.record(System.nanoTime() - intendedStart);
+ *        long p99 = histogram.percentile(99);
+ * Description: this file contains a histogram of latencies in nanoseconds
+ * with a fixed relative precision, for reporting percentiles of millions
+ * of samples in constant memory. Values below 128 each have their own
+ * bucket; above that, each power of two is split into 128 buckets, so a
+ * value is reported within 1/128 (0.8%) of what was recorded, from 1 ns up
+ * to Long.MAX_VALUE, in about 7300 buckets. This is the layout of
+ * HdrHistogram with two significant digits, without the dependency.
+ *
+ * Recording is a few instructions and allocates nothing. A histogram is
+ * not thread-safe: give each thread its own and add them together.
+ */
+
+package benchmarks;
+
+public class LatencyHistogram {
+    // buckets per power of two, and values with a bucket each
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS
+            = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+
+  /**
+   * Method name: record
+   * Description: counts one latency
+   * @param nanos, latency in nanoseconds; a negative one counts as 0
+   */
+  public void record(long nanos) {
+      long value = Math.max(nanos, 0);
+      counts[index(value)]++;
+      count++;
+      max = Math.max(max, value);
+  }
+
+  /**
+   * Method name: add
+   * Description: adds the latencies of another histogram to this one
+   * @param other, histogram to add
+   */
+  public void add(LatencyHistogram other) {
+      for (int i = 0; i < BUCKETS; i++) {
+          counts[i] += other.counts[i];
+      }
+      count += other.count;
+      max = Math.max(max, other.max);
+  }
+
+  /**
+   * Method name: count
+   * @return number of latencies recorded
+   */
+  public long count() {
+      return count;
+  }
+
+  /**
+   * Method name: max
+   * @return largest latency recorded, exactly, 0 if there is none
+   */
+  public long max() {
+      return max;
+  }
+
+  /**
+   * Method name: percentile
+   * Description: finds the latency that the given percentage of latencies
+   * are at or below
+   * @param percent, from 0 to 100, e.g. 99.9
+   * @return the highest value of the bucket the percentile falls in, at
+   * most max(); 0 if nothing was recorded
+   */
+  public long percentile(double percent) {
+      long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+          seen += counts[i];
+          if (seen >= rank) {
+              return Math.min(highest(i), max);
+          }
+      }
+      return max;
+  }
+
+  /**
+   * Method name: index
+   * @param value, latency of at least 0
+   * @return bucket of the latency
+   */
+  private static int index(long value) {
+      if (value < SUB_BUCKETS) {
+          return (int) value;
+      }
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+      int sub = (int) (value >>> shift) - SUB_BUCKETS; // drops the top bit
+      return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * Method name: highest
+   * @param index, bucket
+   * @return largest latency that falls in the bucket
+   */
+  private static long highest(int index) {
+      if (index < SUB_BUCKETS) {
+          return index;
+      }
+      int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+      long sub = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+      long lowest = sub << shift;
+      return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Filename: LegacyCalculator.java
+ * Usage: double ans = LegacyCalculator.parseString("1 2 + ");
+ * Description: this file contains a copy of the original postfix evaluator
+ * of Calculator, which split the postfix string and evaluated it on a
+ * Stack<Double> with a String switch per operator. It is kept so its speed
+ * and allocation can be compared with CompiledExpression. Errors are thrown
+ * as IllegalArgumentException and ArithmeticException, because the
+ * calculator's exceptions are in the default package.
+ */
+
+package benchmarks;
+
+import java.util.Stack;
+
+public class LegacyCalculator {
+
+  /**
+   * Method name: evaluate
+   * Description: completes the arithmetic of two numbers using the given
+   * operator
+   * @param num1, num2, and an operator
+   * @return result of arguments based on given operator
+   */
+  public static double evaluate(double num1, double num2, String operator) {
+      switch (operator) {
+          case "+": return num1 + num2;
+          case "-": return num1 - num2;
+          case "*": return num1 * num2;
+          case "/":
+              // invalid division by zero
+              if (num2 == 0) {
+                  throw new ArithmeticException("Invalid division by zero.");
+              }
+              return num1 / num2;
+      }
+      return 0;
+  }
+
+  /**
+   * Method name: parseString
+   * Description: evaluates postfix expression
+   * @param expression in postfix format
+   * @return evaluated mathematical expression
+   */
+  public static double parseString(String expression) {
+      // separate numbers and operators
+      String split[] = expression.split(" ");
+      Stack<Double> stack = new Stack<>();
+      // iterates through each operator and number
+      for (int i = 0; i < split.length; i++) {
+          // reached an operator
+          if (split[i].equals("+") || split[i].equals("-")
+                  || split[i].equals("*") || split[i].equals("/")) {
+              if (stack.size() > 1) { // must have two numbers to evaluate
+                  double num2 = stack.pop();
+                  double num1 = stack.pop();
+                  stack.push(evaluate(num1, num2, split[i]));
+              }
+              else {
+                  throw new IllegalArgumentException("Syntax Error.");
+              }
+          }
+          // reached a numerical value
+          else {
+              // invalid empty string
+              if (split[i].length() == 0) {
+                  throw new IllegalArgumentException("Syntax Error.");
+              }
+              stack.push(Double.parseDouble(split[i]));
+          }
+      }
+      if (!stack.empty()) {
+          return stack.pop();
+      }
+      throw new IllegalArgumentException("Syntax Error.");
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Filename: LibraryBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="LibraryBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="LibraryBenchmark -p formulas=2000000"
+ * Description: this file contains benchmarks of starting up with a library
+ * of generated formulas and evaluating each once: parsed from a text file
+ * of one formula per line with simpleFormat and postfix, as the original
+ * calculator did, or with Calculator.compile, or opened from a library file
+ * written by ExpressionLibrary.write and evaluated from the mapping. Both
+ * files are in the page cache after the first iteration, so the scores are
+ * of a warm start. Each score is the time for the whole library.
+ */
+
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryBenchmark {
+
+    @Param({"100000"})
+    public int formulas;
+
+    @Param({"8"})
+    public int operands;
+
+    private Stages stages;
+    private Path source;
+    private Path library;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        source = Files.createTempFile("library", ".txt");
+        library = Files.createTempFile("library", ".calc");
+        ExpressionGenerator generator
+                = new ExpressionGenerator(42, 3, "+-*/", 4);
+        List<String> lines = new ArrayList<>(formulas);
+        try (BufferedWriter writer = Files.newBufferedWriter(source)) {
+            for (int i = 0; i < formulas; i++) {
+                String line = generator.next(operands);
+                lines.add(line);
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        stages.writeLibrary(library, lines);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(library);
+    }
+
+    @Benchmark
+    public double legacy() throws Exception {
+        double sum = 0;
+        for (String line : Files.readAllLines(source)) {
+            sum += answer(() -> stages.parseString(
+                    stages.postfix(stages.simpleFormat(line))));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double compiled() throws Exception {
+        List<Object> compiled = new ArrayList<>(formulas);
+        for (String line : Files.readAllLines(source)) {
+            compiled.add(stages.compile(line));
+        }
+        double sum = 0;
+        for (Object expression : compiled) {
+            sum += answer(() -> stages.evaluateCompiled(expression));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double mapped() throws Exception {
+        Object opened = stages.openLibrary(library);
+        double sum = 0;
+        for (int i = 0; i < formulas; i++) {
+            int index = i;
+            sum += answer(() -> stages.evaluateLibrary(opened, index));
+        }
+        return sum;
+    }
+
+    /**
+     * answer of an evaluation, 0 for a generated division by zero
+     */
+    private static double answer(Evaluation evaluation) {
+        try {
+            return evaluation.run();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private interface Evaluation {
+        double run() throws Exception;
+    }
+}
@@ -0,0 +1,363 @@
+/**
+ * Filename: LoadGenerator.java
+ * Usage: gradle :benchmarks:load
+ *        gradle :benchmarks:load -Pload="--rate 50000 --threads 4"
+ * Description: this file contains a load generator that answers "what
+ * latency do we get at this rate?". It evaluates a mix of expressions with
+ * Calculator.calculate, in process, at a target rate on a number of worker
+ * threads, and reports the throughput achieved and the p50, p99, p99.9 and
+ * max latency. Nothing outside the JVM is needed.
+ *   --rate     - evaluations per second, all threads together (50000)
+ *   --threads  - worker threads (4)
+ *   --duration - seconds measured (10)
+ *   --warmup   - seconds run first and not measured (3)
+ *   --invalid  - share of invalid expressions, from 0 to 1 (0.05)
+ *   --seed     - seed of the expression mix (42)
+ *
+ * Each worker evaluates its share of the rate on a fixed schedule, one
+ * expression at a time: it waits until an expression is due, evaluates it,
+ * and moves to the next. Latency is measured from when an expression was
+ * due, not from when the worker got to it, so an evaluation that stalls
+ * also counts against every expression it delays. Measuring from the
+ * start of each evaluation instead hides stalls, the "coordinated
+ * omission" of a load generator that waits for the system it measures;
+ * that service time is reported on its own line for comparison. If the
+ * workers cannot keep up, the achieved rate is below the target and the
+ * latencies grow for as long as the run lasts.
+ *
+ * The mix varies the number of operands (1 to 64, most of them short) and
+ * the nesting of parentheses (0 to 4), with negative literals at the start
+ * of groups and double negatives such as 45--23 in place of some +. An
+ * invalid expression has an invalid character, a trailing operator, an
+ * unbalanced parenthesis or a division by zero, in turn.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadGenerator {
+    private static final String USAGE = "Usage: load [--rate evaluations/s]"
+            + " [--threads n] [--duration s] [--warmup s] [--invalid share]"
+            + " [--seed n]";
+    private static final long NANOS = 1_000_000_000L;
+    // expressions generated, cycled through by the workers
+    private static final int MIX_SIZE = 1 << 14;
+    private static final int MAX_OPERANDS = 64;
+    private static final int MAX_DEPTH = 4;
+    // chance that a + becomes a double negative, out of 4
+    private static final int DOUBLE_NEGATIVE_ODDS = 4;
+    // a worker parks until this close to the next evaluation, then yields
+    // until it is due, as parking can take tens of microseconds longer than
+    // asked; yielding rather than spinning leaves the CPU to other workers
+    private static final long SPIN_NANOS = 100_000;
+
+    private final Stages stages;
+    private final String[] mix;
+    private final double rate;
+    private final int threads;
+
+  /**
+   * Constructor creates a load generator
+   * @param stages, calculator pipeline
+   * @param mix, expressions to evaluate, cycled through
+   * @param rate, evaluations per second, all threads together
+   * @param threads, worker threads
+   */
+  public LoadGenerator(Stages stages, String[] mix, double rate,
+          int threads) {
+      if (mix.length == 0 || !(rate > 0) || threads < 1) {
+          throw new IllegalArgumentException();
+      }
+      this.stages = stages;
+      this.mix = mix;
+      this.rate = rate;
+      this.threads = threads;
+  }
+
+  /**
+   * Method name: main
+   * Description: runs the load generator with the options given and
+   * prints its report
+   * @param args, options, see the file header
+   */
+  public static void main(String[] args) throws InterruptedException {
+      double rate = 50000;
+      int threads = 4;
+      double duration = 10;
+      double warmup = 3;
+      double invalid = 0.05;
+      long seed = 42;
+      try {
+          for (int i = 0; i < args.length; i += 2) {
+              if (i + 1 == args.length) {
+                  throw new IllegalArgumentException();
+              }
+              String value = args[i + 1];
+              switch (args[i]) {
+                  case "--rate": rate = Double.parseDouble(value); break;
+                  case "--threads": threads = Integer.parseInt(value); break;
+                  case "--duration":
+                      duration = Double.parseDouble(value);
+                      break;
+                  case "--warmup": warmup = Double.parseDouble(value); break;
+                  case "--invalid":
+                      invalid = Double.parseDouble(value);
+                      break;
+                  case "--seed": seed = Long.parseLong(value); break;
+                  default: throw new IllegalArgumentException();
+              }
+          }
+          if (!(duration > 0) || !(warmup >= 0)
+                  || !(invalid >= 0 && invalid <= 1)) {
+              throw new IllegalArgumentException();
+          }
+      }
+      catch (IllegalArgumentException e) { // also NumberFormatException
+          System.out.println(USAGE);
+          System.exit(1);
+      }
+      Stages stages = Stages.load();
+      LoadGenerator generator = new LoadGenerator(stages,
+              mix(seed, MIX_SIZE, invalid), rate, threads);
+      System.out.printf("%.0f evaluations/s on %d threads for %.0f s"
+              + " after %.0f s of warm-up, %.1f%% invalid%n", rate, threads,
+              duration, warmup, invalid * 100);
+      generator.run(warmup, duration).print(rate);
+  }
+
+  /**
+   * Method name: mix
+   * Description: generates a mix of expressions as described in the file
+   * header
+   * @param seed, seed of the random numbers
+   * @param size, number of expressions
+   * @param invalid, share of invalid expressions, from 0 to 1
+   * @return expressions in a random order
+   */
+  public static String[] mix(long seed, int size, double invalid) {
+      Random random = new Random(seed);
+      String[] mix = new String[size];
+      int errors = 0;
+      for (int i = 0; i < size; i++) {
+          ExpressionGenerator generator = new ExpressionGenerator(
+                  random.nextLong(), random.nextInt(MAX_DEPTH + 1), "+-*/",
+                  1 + random.nextInt(4));
+          // the square of a uniform number: most expressions are short
+          double length = random.nextDouble();
+          String expression = generator.next(
+                  1 + (int) (length * length * MAX_OPERANDS));
+          expression = doubleNegatives(expression, random);
+          if (random.nextDouble() < invalid) {
+              switch (errors++ % 4) {
+                  case 0: expression = expression + " * x"; break;
+                  case 1: expression = expression + " -"; break;
+                  case 2: expression = "(" + expression; break;
+                  default: expression = expression + " / (2 - 2)";
+              }
+          }
+          mix[i] = expression;
+      }
+      return mix;
+  }
+
+  /**
+   * Method name: doubleNegatives
+   * Description: writes some a + b as a--b or a - -b, which is the same
+   * @param expression, generated expression
+   * @param random, source of random numbers
+   * @return expression with double negatives
+   */
+  private static String doubleNegatives(String expression, Random random) {
+      StringBuilder out = new StringBuilder(expression.length());
+      int from = 0;
+      for (int plus = expression.indexOf(" + "); plus >= 0;
+              plus = expression.indexOf(" + ", from)) {
+          out.append(expression, from, plus);
+          // a group may not start with a negative group
+          boolean literal = expression.charAt(plus + 3) != '(';
+          if (literal && random.nextInt(DOUBLE_NEGATIVE_ODDS) == 0) {
+              out.append(random.nextBoolean() ? "--" : " - -");
+          }
+          else {
+              out.append(" + ");
+          }
+          from = plus + 3;
+      }
+      return out.append(expression, from, expression.length()).toString();
+  }
+
+  /**
+   * Method name: run
+   * Description: evaluates the mix at the target rate on the worker
+   * threads, first for the warm-up and then for the measured duration
+   * @param warmup, seconds run before measuring
+   * @param duration, seconds measured
+   * @throws InterruptedException when interrupted waiting for the workers
+   * @return latencies and counts of the measured part
+   */
+  public Report run(double warmup, double duration)
+          throws InterruptedException {
+      // the schedule starts once every worker has been started
+      long start = System.nanoTime() + NANOS / 10;
+      long measureFrom = start + (long) (warmup * NANOS);
+      long measureTo = measureFrom + (long) (duration * NANOS);
+      List<Worker> workers = new ArrayList<>(threads);
+      List<Thread> running = new ArrayList<>(threads);
+      for (int i = 0; i < threads; i++) {
+          Worker worker = new Worker(i, start, measureFrom, measureTo);
+          workers.add(worker);
+          Thread thread = new Thread(worker, "load-" + i);
+          thread.setDaemon(true);
+          thread.start();
+          running.add(thread);
+      }
+      Report report = new Report(measureFrom);
+      for (int i = 0; i < threads; i++) {
+          running.get(i).join();
+          report.add(workers.get(i));
+      }
+      return report;
+  }
+
+  /**
+   * Method name: waitUntil
+   * Description: waits until System.nanoTime reaches a time
+   * @param time, System.nanoTime to wait for
+   */
+  private static void waitUntil(long time) {
+      long remaining = time - System.nanoTime();
+      while (remaining > 0) {
+          if (remaining > SPIN_NANOS) {
+              LockSupport.parkNanos(remaining - SPIN_NANOS);
+          }
+          else {
+              Thread.yield();
+          }
+          remaining = time - System.nanoTime();
+      }
+  }
+
+    /**
+     * one worker thread's share of the schedule and its latencies
+     */
+    private final class Worker implements Runnable {
+        private final int id;
+        private final long start;
+        private final long measureFrom;
+        private final long measureTo;
+        // latency from when an evaluation was due, and from when it began
+        private final LatencyHistogram response = new LatencyHistogram();
+        private final LatencyHistogram service = new LatencyHistogram();
+        private long errors;
+        private long lastEnd;
+        private Object sink;
+
+        Worker(int id, long start, long measureFrom, long measureTo) {
+            this.id = id;
+            this.start = start;
+            this.measureFrom = measureFrom;
+            this.measureTo = measureTo;
+        }
+
+        @Override
+        public void run() {
+            // evaluation n of the whole run is due at start + n / rate; this
+            // worker takes every threads-th, from its id
+            for (long n = id; ; n += threads) {
+                long due = start + (long) (n * NANOS / rate);
+                if (due >= measureTo) {
+                    return;
+                }
+                waitUntil(due);
+                long begin = System.nanoTime();
+                Object result = stages.result(mix[(int) (n % mix.length)]);
+                long end = System.nanoTime();
+                sink = result;
+                if (due >= measureFrom) {
+                    response.record(end - due);
+                    service.record(end - begin);
+                    if (!stages.ok(result)) {
+                        errors++;
+                    }
+                    lastEnd = end;
+                }
+            }
+        }
+    }
+
+    /**
+     * latencies and counts of a run, for all workers together
+     */
+    public static final class Report {
+        private final long measureFrom;
+        private final LatencyHistogram response = new LatencyHistogram();
+        private final LatencyHistogram service = new LatencyHistogram();
+        private long errors;
+        private long lastEnd;
+
+        Report(long measureFrom) {
+            this.measureFrom = measureFrom;
+            this.lastEnd = measureFrom;
+        }
+
+        /**
+         * adds the latencies and counts of a worker that has finished
+         */
+        void add(Worker worker) {
+            response.add(worker.response);
+            service.add(worker.service);
+            errors += worker.errors;
+            lastEnd = Math.max(lastEnd, worker.lastEnd);
+        }
+
+        /**
+         * latency from when each evaluation was due
+         */
+        public LatencyHistogram response() {
+            return response;
+        }
+
+        /**
+         * latency from when each evaluation began
+         */
+        public LatencyHistogram service() {
+            return service;
+        }
+
+        /**
+         * evaluations per second achieved
+         */
+        public double throughput() {
+            long elapsed = lastEnd - measureFrom;
+            return elapsed > 0 ? response.count() * (double) NANOS / elapsed
+                    : 0;
+        }
+
+        /**
+         * prints the counts and a table of percentiles in microseconds
+         */
+        void print(double rate) {
+            System.out.printf("%d evaluations, %d errors, %.0f/s achieved"
+                    + " (%.1f%% of target)%n", response.count(), errors,
+                    throughput(), throughput() * 100 / rate);
+            System.out.printf("%-10s %12s %12s %12s %12s%n", "latency us",
+                    "p50", "p99", "p99.9", "max");
+            line("response", response);
+            line("service", service);
+        }
+
+        /**
+         * prints one row of the table
+         */
+        private static void line(String name, LatencyHistogram histogram) {
+            System.out.printf("%-10s %12.1f %12.1f %12.1f %12.1f%n", name,
+                    histogram.percentile(50) / 1e3,
+                    histogram.percentile(99) / 1e3,
+                    histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Filename: MetricsBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="MetricsBenchmark"
+ * Description: this file contains benchmarks of the cost of Metrics:
+ * tokenizing, compiling and evaluating generated expressions directly, and
+ * through Metrics.calculate with metrics disabled and enabled. Disabled
+ * should score the same as direct; enabled adds a few clock reads and
+ * atomic increments per expression.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private static final int EXPRESSIONS = 256;
+
+    @Param({"4", "32"})
+    public int operands;
+
+    private Stages stages;
+    private String[] expressions;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        stages = Stages.load();
+        ExpressionGenerator generator
+                = new ExpressionGenerator(42, 3, "+-*", 4);
+        expressions = new String[EXPRESSIONS];
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            expressions[i] = generator.next(operands);
+        }
+    }
+
+    private String next() {
+        next = (next + 1) % EXPRESSIONS;
+        return expressions[next];
+    }
+
+    @Benchmark
+    public double direct() throws Exception {
+        return stages.direct(next());
+    }
+
+    @Benchmark
+    public double disabled() throws Exception {
+        return stages.measured(next());
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcalculator.metrics=true")
+    public double enabled() throws Exception {
+        return stages.measured(next());
+    }
+}
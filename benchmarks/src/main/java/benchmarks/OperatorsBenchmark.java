@@ -0,0 +1,70 @@
+/**
+ * Filename: OperatorsBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="OperatorsBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="OperatorsBenchmark -p extra=10000"
+ * Description: this file contains benchmarks of expressions using the
+ * operators and functions of a registry, with extra unused functions
+ * registered ahead of hypot so its opcode grows with them. Tokenizing,
+ * compiling and evaluating, and evaluating a compiled formula, should take
+ * the same time however many are registered.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperatorsBenchmark {
+    private static final String[] EXPRESSIONS = {
+            "2 ^ 3 ^ 0.5 + hypot(3, 4) % 3 * max(1.5, sqrt(16))",
+            "min(7 % 4, hypot(5, 12)) - 2 ^ 0.5 * (sqrt(2) + 1)",
+            "hypot(max(1, 2), min(3, 4)) ^ 2 / (10 % 7 + 1)",
+            "sqrt(hypot(6, 8) * 2.5) - max(min(1, 2), 0.5) ^ 3"};
+    private static final String FORMULA
+            = "sqrt(a ^ 2 + b ^ 2) - hypot(a, b) % max(c, 1) + min(a, c) ^ 2";
+
+    @Param({"0", "1000"})
+    public int extra;
+
+    private Stages stages;
+    private Object evaluator;
+    private Object formula;
+    private final double[] row = {3, 4, 2.5};
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        Object operators = stages.operators(extra);
+        evaluator = stages.evaluator(operators);
+        formula = stages.formula(FORMULA, operators, "a", "b", "c");
+    }
+
+    @Benchmark
+    public double evaluate() throws Exception {
+        next = (next + 1) % EXPRESSIONS.length;
+        return stages.shared(evaluator, EXPRESSIONS[next]);
+    }
+
+    @Benchmark
+    public double formula() throws Exception {
+        row[0] += 1;
+        return stages.evaluateFormula(formula, row);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Filename: OptimizerBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="OptimizerBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="OptimizerBenchmark -p terms=4"
+ * Description: this file contains benchmarks of evaluating formulas with a
+ * lot of redundancy, with and without the optimizer. A formula is built by
+ * generating a skeleton expression whose literals 1 to 9 are then replaced
+ * by nine generated terms over the variables x, y and z, so each term
+ * appears many times; the terms also hold constant subexpressions such as
+ * (4 * 5). Fewer distinct terms means more redundancy.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizerBenchmark {
+    private static final String[] VARIABLES = {"x", "y", "z"};
+    private static final int ROWS = 1024;
+
+    @Param({"64"})
+    public int operands;
+
+    // distinct terms the skeleton's literals are replaced by
+    @Param({"2", "9"})
+    public int terms;
+
+    private Stages stages;
+    private Object plain;
+    private Object optimized;
+    private double[][] columns;
+    private double[] row;
+    private double[] out;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        String formula = formula(new Random(42), operands, terms);
+        plain = stages.unoptimizedFormula(formula, VARIABLES);
+        optimized = stages.formula(formula, VARIABLES);
+        Random random = new Random(7);
+        columns = new double[VARIABLES.length][ROWS];
+        for (double[] column : columns) {
+            for (int i = 0; i < ROWS; i++) {
+                column[i] = 1 + random.nextInt(1000) / 10.0;
+            }
+        }
+        row = new double[] {1.5, 2.5, 3.5};
+        out = new double[ROWS];
+    }
+
+    /**
+     * builds a formula whose skeleton literals are replaced by terms
+     */
+    static String formula(Random random, int operands, int terms) {
+        ExpressionGenerator generator
+                = new ExpressionGenerator(random.nextLong(), 3, "+-*", 1);
+        String[] term = new String[terms];
+        for (int i = 0; i < terms; i++) {
+            // digits 1 to 3 become variables, 4 to 9 stay constants
+            term[i] = "(" + generator.next(6).replace('1', 'x')
+                    .replace('2', 'y').replace('3', 'z') + ")";
+        }
+        String skeleton = generator.next(operands);
+        StringBuilder formula = new StringBuilder();
+        for (int i = 0; i < skeleton.length(); i++) {
+            char c = skeleton.charAt(i);
+            if (c >= '1' && c <= '9') {
+                formula.append(term[(c - '1') % terms]);
+            }
+            else if (c == '-' && i + 1 < skeleton.length()
+                    && Character.isDigit(skeleton.charAt(i + 1))) {
+                formula.append("0 - "); // a negative literal
+            }
+            else {
+                formula.append(c);
+            }
+        }
+        return formula.toString();
+    }
+
+    @Benchmark
+    public double rowPlain() throws Exception {
+        return stages.evaluateFormula(plain, row);
+    }
+
+    @Benchmark
+    public double rowOptimized() throws Exception {
+        return stages.evaluateFormula(optimized, row);
+    }
+
+    @Benchmark
+    public double[] columnsPlain() throws Exception {
+        stages.evaluateColumns(plain, columns, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] columnsOptimized() throws Exception {
+        stages.evaluateColumns(optimized, columns, out);
+        return out;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Filename: ParallelBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="ParallelBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="ParallelBenchmark -p threads=1,2,4,8,16"
+ * Description: this file contains benchmarks of evaluating one wide,
+ * balanced expression of about a million operations sequentially and with
+ * ParallelExpression on pools of different sizes. The parallel time should
+ * fall with the number of threads up to the number of cores.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"1048576"})
+    public int operands;
+
+    private Stages stages;
+    private ForkJoinPool pool;
+    private Object compiled;
+    private Object parallel;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        pool = new ForkJoinPool(threads);
+        StringBuilder expression = new StringBuilder(operands * 8);
+        balanced(new Random(42), operands, expression);
+        compiled = stages.compile(expression.toString());
+        parallel = stages.parallel(compiled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * appends a balanced expression of the given number of literals; no
+     * division, so no subtree divides by zero
+     */
+    static void balanced(Random random, int operands, StringBuilder out) {
+        if (operands == 1) {
+            out.append(1 + random.nextInt(9));
+            return;
+        }
+        out.append('(');
+        balanced(random, operands / 2, out);
+        out.append(' ').append("+-*".charAt(random.nextInt(3))).append(' ');
+        balanced(random, operands - operands / 2, out);
+        out.append(')');
+    }
+
+    @Benchmark
+    public double sequential() throws Exception {
+        return stages.evaluateCompiled(compiled);
+    }
+
+    @Benchmark
+    public double parallel() throws Exception {
+        return stages.evaluateParallel(parallel, pool);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Filename: PostfixEvaluationBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="PostfixEvaluationBenchmark"
+ * Description: this file contains benchmarks of evaluating a postfix
+ * expression with the original Stack<Double> evaluator, with
+ * Calculator.parseString, which compiles the postfix text first, and with an
+ * already compiled expression. The GC profiler's gc.alloc.rate.norm shows
+ * the bytes each evaluation allocates; a compiled expression allocates none.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostfixEvaluationBenchmark {
+    private static final int WORKLOAD_SIZE = 16;
+
+    @Param({"4", "32", "256"})
+    public int operands;
+
+    private Stages stages;
+    private Workload workload;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        workload = Workload.generate(stages, 42, WORKLOAD_SIZE, operands, 3,
+                "+-*/", 4);
+    }
+
+    private int next() {
+        next = (next + 1) % WORKLOAD_SIZE;
+        return next;
+    }
+
+    @Benchmark
+    public double legacyStack() {
+        return LegacyCalculator.parseString(workload.postfix[next()]);
+    }
+
+    @Benchmark
+    public double parseString() throws Exception {
+        return stages.parseString(workload.postfix[next()]);
+    }
+
+    @Benchmark
+    public double compiled() throws Exception {
+        return stages.evaluateCompiled(workload.compiled[next()]);
+    }
+}
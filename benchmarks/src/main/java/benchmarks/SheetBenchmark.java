@@ -0,0 +1,98 @@
+/**
+ * Filename: SheetBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="SheetBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="SheetBenchmark -p cells=100000"
+ * Description: this file contains benchmarks of a sheet of a million cells,
+ * shaped as a binary tree (cell i uses cell (i - 1) / 2) or as a chain
+ * (cell i uses cell i - 1). Changing a leaf should cost about one
+ * evaluation whatever the size of the sheet; changing the root evaluates
+ * every cell once; and refusing a cycle walks the cells below the root.
+ * The heap the sheet retains is printed per cell at setup.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SheetBenchmark {
+
+    @Param({"tree", "chain"})
+    public String shape;
+
+    @Param({"1000000"})
+    public int cells;
+
+    private Stages stages;
+    private Object sheet;
+    private String leaf;
+    private String cycle;
+    private int version;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        long before = usedHeap();
+        sheet = stages.sheet();
+        stages.set(sheet, "c0", "1");
+        for (int i = 1; i < cells; i++) {
+            int input = shape.equals("tree") ? (i - 1) / 2 : i - 1;
+            stages.set(sheet, "c" + i, "c" + input + " + 1");
+        }
+        long bytes = usedHeap() - before;
+        System.out.printf("%n%d cells retain %d bytes, %d per cell%n",
+                cells, bytes, bytes / cells);
+        leaf = "c" + (cells - 1);
+        cycle = leaf + " * 2";
+    }
+
+    /**
+     * heap in use after collecting garbage
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public double updateLeaf() throws Exception {
+        int input = shape.equals("tree") ? (cells - 2) / 2 : cells - 2;
+        stages.set(sheet, leaf, "c" + input + " + " + (++version & 1));
+        return stages.value(sheet, leaf);
+    }
+
+    @Benchmark
+    public double updateRoot() throws Exception {
+        stages.set(sheet, "c0", (++version & 1) == 0 ? "1" : "2");
+        return stages.value(sheet, leaf);
+    }
+
+    @Benchmark
+    public boolean rejectCycle() throws Exception {
+        try {
+            stages.set(sheet, "c0", cycle);
+            return false;
+        } catch (Exception e) { // CircularReferenceException
+            return true;
+        }
+    }
+}
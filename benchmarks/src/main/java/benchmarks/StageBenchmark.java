@@ -0,0 +1,108 @@
+/**
+ * Filename: StageBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="StageBenchmark"
+ *        gradle :benchmarks:jmh -Pjmh="StageBenchmark.postfix -p operands=1000"
+ * Description: this file contains benchmarks of each stage of the
+ * Calculator pipeline on its own, and of the whole pipeline, over
+ * generated expressions. Each stage is given input already prepared by the
+ * stages before it. Run with the GC profiler (the default of the jmh task)
+ * to see gc.alloc.rate.norm, the bytes allocated per call.
+ */
+
+package benchmarks;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+    // expressions cycled through, so one shape is not learned by the CPU
+    private static final int WORKLOAD_SIZE = 16;
+
+    @Param({"42"})
+    public long seed;
+
+    @Param({"8", "64", "512"})
+    public int operands;
+
+    @Param({"0", "4"})
+    public int depth;
+
+    @Param({"+-*/"})
+    public String mix;
+
+    @Param({"4"})
+    public int width;
+
+    private Stages stages;
+    private Workload workload;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        stages = Stages.load();
+        workload = Workload.generate(stages, seed, WORKLOAD_SIZE, operands,
+                depth, mix, width);
+    }
+
+    private int next() {
+        next = (next + 1) % WORKLOAD_SIZE;
+        return next;
+    }
+
+    @Benchmark
+    public LinkedList<String> simpleFormat() throws Exception {
+        return stages.simpleFormat(workload.infix[next()]);
+    }
+
+    @Benchmark
+    public int tokenize() throws Exception {
+        return stages.tokenize(workload.infix[next()]);
+    }
+
+    @Benchmark
+    public String postfix() throws Exception {
+        return stages.postfix(workload.tokens.get(next()));
+    }
+
+    @Benchmark
+    public double parseString() throws Exception {
+        return stages.parseString(workload.postfix[next()]);
+    }
+
+    @Benchmark
+    public Object compile() throws Exception {
+        return stages.compile(workload.infix[next()]);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() throws Exception {
+        return stages.evaluateCompiled(workload.compiled[next()]);
+    }
+
+    @Benchmark
+    public double pipeline() throws Exception {
+        return stages.pipeline(workload.infix[next()]);
+    }
+
+    @Benchmark
+    public double calculate() throws Exception {
+        return stages.calculate(workload.infix[next()]);
+    }
+}
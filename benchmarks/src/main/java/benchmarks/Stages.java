@@ -0,0 +1,170 @@
+/**
+ * Filename: Stages.java
+ * Usage: Stages stages = Stages.load();
+ * Description: this file contains the calculator pipeline as seen by the
+ * benchmarks. The calculator classes are in the default package, which
+ * classes in a named package (and so JMH benchmarks) cannot refer to, so
+ * CalculatorStages in the default package implements this interface and is
+ * loaded once by name. Calls through it are ordinary interface calls that
+ * the JIT inlines.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public interface Stages {
+
+  /**
+   * Method name: load
+   * @return the implementation backed by Calculator
+   */
+  static Stages load() {
+      try {
+          return (Stages) Class.forName("CalculatorStages")
+                  .getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException e) {
+          throw new IllegalStateException(e);
+      }
+  }
+
+  /** Calculator.simpleFormat */
+  LinkedList<String> simpleFormat(String infix) throws Exception;
+
+  /** Calculator.postfix */
+  String postfix(LinkedList<String> tokens) throws Exception;
+
+  /** Calculator.parseString */
+  double parseString(String postfix) throws Exception;
+
+  /** Calculator.evaluate */
+  double evaluate(double num1, double num2, String operator) throws Exception;
+
+  /** Tokenizer.tokenize on a tokenizer kept by the implementation */
+  int tokenize(String infix) throws Exception;
+
+  /** Calculator.compile; the result is a CompiledExpression */
+  Object compile(String infix) throws Exception;
+
+  /** CompiledExpression.evaluate on the result of compile */
+  double evaluateCompiled(Object compiled) throws Exception;
+
+  /** simpleFormat, postfix and parseString, as main did originally */
+  double pipeline(String infix) throws Exception;
+
+  /** compile followed by evaluate, as main does now */
+  double calculate(String infix) throws Exception;
+
+  /** BatchEvaluator.evaluate on the given pool; returns the line count */
+  long batch(ForkJoinPool pool, Path input, OutputStream output)
+          throws Exception;
+
+  /** Formula.compile; the result is a Formula */
+  Object formula(String expression, String... variables) throws Exception;
+
+  /** Formula.compile without optimizing; the result is a Formula */
+  Object unoptimizedFormula(String expression, String... variables)
+          throws Exception;
+
+  /** Formula.evaluate(double...) on the result of formula */
+  double evaluateFormula(Object formula, double[] values) throws Exception;
+
+  /** Formula.evaluate(double[][], double[]) on the result of formula */
+  void evaluateColumns(Object formula, double[][] columns, double[] out)
+          throws Exception;
+
+  /** new ResultCache(capacity) */
+  Object cache(int capacity);
+
+  /** ResultCache.evaluate on the result of cache */
+  double cached(Object cache, String infix) throws Exception;
+
+  /** ParallelExpression.of on the result of compile */
+  Object parallel(Object compiled);
+
+  /** ParallelExpression.evaluate on the result of parallel */
+  double evaluateParallel(Object parallel, ForkJoinPool pool)
+          throws Exception;
+
+  /** new Sheet() */
+  Object sheet();
+
+  /** Sheet.set on the result of sheet */
+  void set(Object sheet, String name, String expression) throws Exception;
+
+  /** Sheet.value on the result of sheet */
+  double value(Object sheet, String name) throws Exception;
+
+  /** tokenize, compile and evaluate on the kept tokenizer */
+  double direct(String infix) throws Exception;
+
+  /** Metrics.calculate on the kept tokenizer */
+  double measured(String infix) throws Exception;
+
+  /** Calculator.calculate; the result is a Result */
+  Object result(String infix);
+
+  /** DecimalExpression.compile, with the long fast path or all BigDecimal */
+  Object decimal(String infix, boolean fast) throws Exception;
+
+  /** DecimalExpression.evaluate on the result of decimal */
+  Object evaluateDecimal(Object decimal) throws Exception;
+
+  /** new StreamingEvaluator() */
+  Object streaming();
+
+  /** StreamingEvaluator.calculate on the result of streaming */
+  Object stream(Object streaming, Reader in) throws IOException;
+
+  /** new Evaluator() */
+  Object evaluator();
+
+  /** Evaluator.evaluate on the result of evaluator */
+  double shared(Object evaluator, String infix) throws Exception;
+
+  /**
+   * Formula.compile compiling to bytecode after threshold evaluations; 0
+   * compiles at once, Integer.MAX_VALUE keeps it in the interpreter
+   */
+  Object tieredFormula(String expression, int threshold, String... variables)
+          throws Exception;
+
+  /** Calculator.compile on each expression, then ExpressionLibrary.write */
+  void writeLibrary(Path file, List<String> infix) throws Exception;
+
+  /** ExpressionLibrary.open; the result is an ExpressionLibrary */
+  Object openLibrary(Path file) throws IOException;
+
+  /** ExpressionLibrary.evaluate on the result of openLibrary */
+  double evaluateLibrary(Object library, int index) throws Exception;
+
+  /** new FusedEvaluator() */
+  Object fused();
+
+  /** FusedEvaluator.evaluate on the result of fused */
+  double fused(Object evaluator, String infix) throws Exception;
+
+  /**
+   * Operators.STANDARD with extra unused functions, then hypot(x, y),
+   * registered; the result is an Operators
+   */
+  Object operators(int extra);
+
+  /** new Evaluator(operators) on the result of operators */
+  Object evaluator(Object operators);
+
+  /**
+   * Formula.compile over the result of operators, kept in the interpreter
+   */
+  Object formula(String expression, Object operators, String... variables)
+          throws Exception;
+
+  /** Result.ok on the result of result */
+  boolean ok(Object result);
+}
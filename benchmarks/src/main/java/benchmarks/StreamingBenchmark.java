@@ -0,0 +1,57 @@
+/**
+ * Filename: StreamingBenchmark.java
+ * Usage: gradle :benchmarks:jmh -Pjmh="StreamingBenchmark"
+ * Description: this file contains benchmarks of one long generated
+ * expression evaluated from a String with Calculator.calculate, and read
+ * in chunks from a Reader with StreamingEvaluator. gc.alloc.rate.norm
+ * shows what each allocates per expression.
+ */
+
+package benchmarks;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingBenchmark {
+    @Param({"100000"})
+    public int operands;
+
+    private Stages stages;
+    private Object streaming;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        stages = Stages.load();
+        streaming = stages.streaming();
+        expression = new ExpressionGenerator(42, 3, "+-*/", 4)
+                .next(operands);
+    }
+
+    @Benchmark
+    public Object string() {
+        return stages.result(expression);
+    }
+
+    @Benchmark
+    public Object stream() throws Exception {
+        return stages.stream(streaming, new StringReader(expression));
+    }
+}
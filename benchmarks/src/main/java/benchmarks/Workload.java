@@ -0,0 +1,86 @@
+/**
+ * Filename: Workload.java
+ * Usage: Workload workload = Workload.generate(stages, seed, 16, 100, 3,
+ *                "+-*", 4);
+ *        String infix = workload.infix[i];
+ * Description: this file contains a set of generated expressions together
+ * with the input each pipeline stage needs, so a benchmark of one stage
+ * does not also measure the stages before it. Only expressions that
+ * Calculator evaluates without error are kept.
+ */
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+public class Workload {
+    // generated expressions tried for each one kept
+    private static final int ATTEMPTS = 100;
+
+    public final String[] infix;
+    public final List<LinkedList<String>> tokens;
+    public final String[] postfix;
+    public final Object[] compiled;
+
+  /**
+   * Constructor creates an empty workload
+   * @param size, number of expressions
+   */
+  private Workload(int size) {
+      infix = new String[size];
+      tokens = new ArrayList<>(size);
+      postfix = new String[size];
+      compiled = new Object[size];
+  }
+
+  /**
+   * Method name: generate
+   * Description: generates expressions and prepares each stage's input
+   * @param stages, calculator pipeline
+   * @param seed, seed of the generator
+   * @param size, number of expressions
+   * @param operands, number of literals per expression
+   * @param depth, deepest nesting of parentheses
+   * @param mix, operators to choose from
+   * @param width, digits per literal
+   * @return workload of valid expressions
+   */
+  public static Workload generate(Stages stages, long seed, int size,
+          int operands, int depth, String mix, int width) throws Exception {
+      ExpressionGenerator generator
+              = new ExpressionGenerator(seed, depth, mix, width);
+      Workload workload = new Workload(size);
+      for (int i = 0; i < size; i++) {
+          workload.infix[i] = valid(stages, generator, operands);
+          workload.tokens.add(stages.simpleFormat(workload.infix[i]));
+          workload.postfix[i] = stages.postfix(workload.tokens.get(i));
+          workload.compiled[i] = stages.compile(workload.infix[i]);
+      }
+      return workload;
+  }
+
+  /**
+   * Method name: valid
+   * Description: generates expressions until one evaluates without error,
+   * skipping those that divide by zero
+   * @param stages, calculator pipeline
+   * @param generator, source of expressions
+   * @param operands, number of literals per expression
+   * @return expression in infix notation
+   */
+  private static String valid(Stages stages, ExpressionGenerator generator,
+          int operands) {
+      for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+          String infix = generator.next(operands);
+          try {
+              stages.calculate(infix);
+              return infix;
+          } catch (Exception e) {
+              // try another expression
+          }
+      }
+      throw new IllegalStateException("no valid expression generated");
+  }
+}
@@ -0,0 +1,195 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.lang.ref.WeakReference;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class bytecodeCompilerTest {
+  private static final String[] VARIABLES = {"a", "b", "c"};
+  private static final String OPERANDS = "abc0123";
+  private static final String OPERATORS = "+-*/";
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testTiers
+   * Description: checks that a formula moves to bytecode after the given
+   * number of evaluations, and gives the same answers before and after
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testTiers() throws Exception {
+    Formula formula = Formula.compile("price * qty - discount", true, 3,
+            "price", "qty", "discount");
+    for (int i = 0; i < 3; i++) {
+      assertFalse(formula.isCompiled());
+      assertEquals(9.0, formula.evaluate(2.5, 4, 1), 0);
+    }
+    assertTrue(formula.isCompiled());
+    assertEquals(9.0, formula.evaluate(2.5, 4, 1), 0);
+    assertTrue(Formula.compile("1 + a", true, 0, "a").isCompiled());
+    assertFalse(Formula.compile("1 + a", "a").isCompiled());
+  }
+
+  /**
+   * Method name: testSameAsInterpreter
+   * Description: checks that random formulas, optimized or not, give
+   * exactly the answers of the interpreter, with numbers, negated variables
+   * and repeated subexpressions
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testSameAsInterpreter() throws Exception {
+    Random random = new Random(42);
+    double[] values = new double[VARIABLES.length];
+    for (int i = 0; i < 2000; i++) {
+      String expression = expression(random, 1 + random.nextInt(4));
+      boolean optimize = random.nextBoolean();
+      Formula interpreted = Formula.compile(expression, optimize,
+              Integer.MAX_VALUE, VARIABLES);
+      Formula compiled = Formula.compile(expression, optimize, 0, VARIABLES);
+      assertTrue(expression, compiled.isCompiled());
+      for (int row = 0; row < 10; row++) {
+        for (int v = 0; v < values.length; v++) {
+          values[v] = random.nextInt(9) - 4 + random.nextInt(4) / 4.0;
+        }
+        String expected;
+        String actual;
+        try {
+          expected = Double.toString(interpreted.evaluate(values));
+        } catch (DivisionByZeroException e) {
+          expected = "divided by zero";
+        }
+        try {
+          actual = Double.toString(compiled.evaluate(values));
+        } catch (DivisionByZeroException e) {
+          actual = "divided by zero";
+        }
+        assertEquals(expression, expected, actual);
+      }
+    }
+  }
+
+  /**
+   * Method name: testLongFormula
+   * Description: checks that a formula too long for the JIT to compile
+   * stays in the interpreter
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testLongFormula() throws Exception {
+    StringBuilder expression = new StringBuilder("a");
+    for (int i = 0; i < 5000; i++) {
+      expression.append(" + a * ").append(i);
+    }
+    Formula formula = Formula.compile(expression.toString(), false, 0, "a");
+    assertFalse(formula.isCompiled());
+    assertEquals(12497501.0, formula.evaluate(1), 0);
+  }
+
+  /**
+   * Method name: testManyVariables
+   * Description: checks that variables from index 32768 up, past what
+   * SIPUSH holds, give the same answers after the formula moves to
+   * bytecode, with enough numbers before them that their indices need a
+   * wide constant load
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testManyVariables() throws Exception {
+    String[] variables = new String[40001];
+    double[] values = new double[variables.length];
+    for (int i = 0; i < variables.length; i++) {
+      variables[i] = "v" + i;
+      values[i] = i;
+    }
+    StringBuilder expression = new StringBuilder("v39999 + v100");
+    double expected = 40099;
+    for (int i = 0; i < 200; i++) { // two constant pool entries each
+      expression.append(" + ").append(i).append(".5");
+      expected += i + 0.5;
+    }
+    expression.append(" - v32768 + v40000 * v39999");
+    expected += -32768 + 40000.0 * 39999;
+    Formula formula = Formula.compile(expression.toString(), false, 3,
+            variables);
+    for (int i = 0; i < 3; i++) {
+      assertFalse(formula.isCompiled());
+      assertEquals(expected, formula.evaluate(values), 0);
+    }
+    assertTrue(formula.isCompiled());
+    assertEquals(expected, formula.evaluate(values), 0);
+  }
+
+  /**
+   * Method name: testUnloading
+   * Description: checks that the class of a formula is unloaded once the
+   * formula is unreachable
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testUnloading() throws Exception {
+    CompiledExpression program = CompiledExpression.fromTokens(
+            tokens("a * b + 1"));
+    WeakReference<Class<?>> generated = new WeakReference<>(
+            BytecodeCompiler.compile(program).getClass());
+    for (int i = 0; i < 50 && generated.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(generated.get());
+  }
+
+  /**
+   * Method name: testDivisionByZero
+   * Description: checks that compiled code still checks divisors
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDivisionByZero() throws Exception {
+    Formula formula = Formula.compile("a / (b - 1)", true, 0, "a", "b");
+    assertEquals(2.0, formula.evaluate(4, 3), 0);
+    exception.expect(DivisionByZeroException.class);
+    formula.evaluate(4, 1);
+  }
+
+  /**
+   * Method name: tokens
+   * @param expression, expression over a and b
+   * @return tokenized expression
+   */
+  private static Tokenizer tokens(String expression) throws Exception {
+    Tokenizer tokens = new Tokenizer();
+    tokens.tokenize(expression, new String[] {"a", "b"});
+    return tokens;
+  }
+
+  /**
+   * Method name: expression
+   * Description: generates a random valid expression, repeating operands
+   * so the optimizer shares subexpressions
+   * @param random, source of the expression
+   * @param depth, maximum nesting
+   * @return expression in infix notation
+   */
+  private static String expression(Random random, int depth) {
+    if (depth == 0 || random.nextInt(4) == 0) {
+      char operand = OPERANDS.charAt(random.nextInt(OPERANDS.length()));
+      String text = Character.toString(operand);
+      if (Character.isDigit(operand)) {
+        return random.nextInt(4) == 0 ? text + ".5" : text;
+      }
+      return random.nextInt(3) == 0 ? "(-" + text + ")" : text;
+    }
+    String left = expression(random, depth - 1);
+    String right = random.nextInt(3) == 0 ? left
+            : expression(random, depth - 1);
+    char operator = OPERATORS.charAt(random.nextInt(OPERATORS.length()));
+    return "(" + left + " " + operator + " " + right + ")";
+  }
+}
@@ -0,0 +1,109 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+
+public class calculatorServerTest {
+  private CalculatorServer server;
+  private Thread acceptor;
+
+  @Before
+  public void start() throws IOException {
+    server = new CalculatorServer(CalculatorServer.address("0"));
+    acceptor = new Thread(() -> {
+      try {
+        server.serve();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    acceptor.start();
+  }
+
+  @After
+  public void stop() throws Exception {
+    server.close();
+    acceptor.join();
+  }
+
+  /**
+   * Method name: send
+   * Description: sends the request in one write, closes the output and
+   * reads every response
+   * @param request, lines to send
+   * @return everything the server sent back
+   * @throws IOException when the connection fails
+   */
+  private String send(String request) throws IOException {
+    try (Socket socket = new Socket()) {
+      socket.connect(server.localAddress());
+      OutputStream out = socket.getOutputStream();
+      out.write(request.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      socket.shutdownOutput();
+      InputStream in = socket.getInputStream();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      in.transferTo(response);
+      return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Method name: testPipelined
+   * Description: checks that pipelined lines are answered in order and that
+   * errors only affect their own line
+   * @throws IOException when the connection fails
+   */
+  @Test
+  public void testPipelined() throws IOException {
+    assertEquals("3.0\nERROR Invalid division by zero.\n"
+            + "ERROR h is Invalid\n0.3628205128205128\n",
+            send("1+2\n1/0\nhello\r\n(24.3 + 4) / 78"));
+  }
+
+  /**
+   * Method name: testAfterDivisionByZero
+   * Description: checks that the server keeps serving after a division by
+   * zero
+   * @throws IOException when the connection fails
+   */
+  @Test
+  public void testAfterDivisionByZero() throws IOException {
+    assertEquals("ERROR Invalid division by zero.\n", send("5/(2-2)\n"));
+    assertEquals("6.0\n", send("2*3\n"));
+  }
+
+  /**
+   * Method name: testSyntaxErrors
+   * Description: checks the answers for an empty line and malformed numbers
+   * @throws IOException when the connection fails
+   */
+  @Test
+  public void testSyntaxErrors() throws IOException {
+    String error = "ERROR " + new SyntaxErrorException().getMessage() + "\n";
+    assertEquals(error + error, send("\n1..2\n"));
+  }
+
+  /**
+   * Method name: testLongLines
+   * Description: checks that lines longer than the initial buffer are read
+   * whole
+   * @throws IOException when the connection fails
+   */
+  @Test
+  public void testLongLines() throws IOException {
+    StringBuilder request = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) {
+      request.append("1 + ");
+    }
+    request.append("0\n");
+    assertEquals("20000.0\n3.0\n", send(request + "1 + 2\n"));
+  }
+}
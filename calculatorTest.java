@@ -265,7 +265,8 @@ public class calculatorTest {
    * Description: parses through postfix expression and evaluates to a double
    */
   @Test
-  public void testParseString() throws SyntaxErrorException{
+  public void testParseString() throws SyntaxErrorException,
+          DivisionByZeroException {
     try {
       assertEquals(3.0,
               Calculator.parseString("1 2 + "), 0);
@@ -285,4 +286,45 @@ public class calculatorTest {
     }
 
   }
+
+  /**
+   * Method name: testCompile
+   * Description: checks that a compiled expression evaluates to the same
+   * answer as the postfix pipeline and can be evaluated more than once
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testCompile() throws Exception {
+    assertEquals(3.0, Calculator.compile("1 + 2").evaluate(), 0);
+    assertEquals(0.3628205128205128,
+            Calculator.compile("(24.3 + 4) / 78").evaluate(), 0);
+    assertEquals(253.60000000000002,
+            Calculator.compile("(58   * 3.2 + (45 --23))").evaluate(), 0);
+    assertEquals(11.610833333333334,
+            Calculator.compile("(1.24 + (- 24.89/(1-3.4) ) )").evaluate(), 0);
+
+    // subtraction of a parenthesized expression
+    assertEquals(-1.0, Calculator.compile("(1) - (2)").evaluate(), 0);
+
+    // evaluating again gives the same answer
+    CompiledExpression compiled = Calculator.compile("2 + 4 * 3 - 1");
+    assertEquals(13.0, compiled.evaluate(), 0);
+    assertEquals(13.0, compiled.evaluate(), 0);
+
+    // division by zero is reported on evaluation, not compilation
+    CompiledExpression divide = Calculator.compile("1 / (2 - 2)");
+    exception.expect(DivisionByZeroException.class);
+    divide.evaluate();
+  }
+
+  /**
+   * Method name: testCompileSyntaxError
+   * Description: checks that compiling an invalid expression throws
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testCompileSyntaxError() throws Exception {
+    exception.expect(SyntaxErrorException.class);
+    Calculator.compile("(1 + 2");
+  }
 }
@@ -0,0 +1,172 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+
+public class decimalExpressionTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testExact
+   * Description: checks that sums, differences and products have no binary
+   * rounding error
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testExact() throws Exception {
+    assertDecimal("0.3", "0.1 + 0.2");
+    assertDecimal("253.6", "(58*3.2+(45--23))");
+    assertDecimal("-0.01", "1.10 - 1.11");
+    assertDecimal("0.0001", "0.01 * 0.01");
+    assertDecimal("2", "4 / 2");
+    assertDecimal("0.25", "1 / 4");
+    assertDecimal("-0.125", "-1 / 8");
+    assertDecimal("100", "1 / 0.01");
+    assertDecimal("12345678901234567890.5",
+            "12345678901234567890 + 0.5");
+  }
+
+  /**
+   * Method name: testRounding
+   * Description: checks that only a quotient with infinitely many decimals
+   * is rounded, to the configured scale and rounding mode
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testRounding() throws Exception {
+    assertDecimal("0.3333333333333333", "1 / 3");
+    assertDecimal("0.6666666666666667", "2 / 3");
+    DecimalExpression expr
+            = DecimalExpression.compile("2 / 3", 2, RoundingMode.DOWN);
+    assertEquals(2, expr.scale());
+    assertEquals(RoundingMode.DOWN, expr.rounding());
+    assertEquals(new BigDecimal("0.66"), expr.evaluate());
+    assertEquals(new BigDecimal("0.125"),
+            DecimalExpression.compile("1 / 8", 2, RoundingMode.DOWN)
+            .evaluate());
+    assertEquals(new BigDecimal("1.02"),
+            DecimalExpression.compile("1 / 3 * 3", 2, RoundingMode.UP)
+            .evaluate());
+  }
+
+  /**
+   * Method name: testOverflow
+   * Description: checks that results too large for a long are promoted to
+   * BigDecimal and demoted again when they fit
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testOverflow() throws Exception {
+    assertDecimal("85070591730234615847396907784232501249",
+            "9223372036854775807 * 9223372036854775807");
+    assertDecimal("18446744073709551614",
+            "9223372036854775807 + 9223372036854775807");
+    assertDecimal("9223372036854775808", "0 - -9223372036854775808");
+    assertDecimal("1", "9223372036854775807 * 9223372036854775807"
+            + " / 9223372036854775807 / 9223372036854775807");
+    assertDecimal("1000000000000000000.000000000000000001",
+            "1000000000000000000 + 0.000000000000000001");
+  }
+
+  /**
+   * Method name: testFastPath
+   * Description: checks that the long fast path agrees with BigDecimal
+   * arithmetic on random expressions
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testFastPath() throws Exception {
+    Random random = new Random(42);
+    String[] literals = {"0", "1", "3", "7", "0.5", "2.25", "10", "0.001",
+            "4", "0.3", "999999999", "123456789.987654321"};
+    String[] operators = {" + ", " - ", " * ", " / "};
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder expression = new StringBuilder();
+      int operands = 2 + random.nextInt(8);
+      for (int j = 0; j < operands; j++) {
+        String operator = operators[random.nextInt(operators.length)];
+        if (j > 0) {
+          expression.append(operator);
+        }
+        // a negative number may start the expression or follow a minus
+        if ((j == 0 || operator.equals(" - ")) && random.nextInt(4) == 0) {
+          expression.append('-');
+        }
+        expression.append(literals[random.nextInt(literals.length)]);
+      }
+      String text = expression.toString();
+      DecimalExpression fast = DecimalExpression.compile(text, 10,
+              RoundingMode.HALF_EVEN, true);
+      DecimalExpression slow = DecimalExpression.compile(text, 10,
+              RoundingMode.HALF_EVEN, false);
+      String expected;
+      try {
+        expected = slow.evaluate().toPlainString();
+      } catch (DivisionByZeroException e) {
+        expected = e.getMessage();
+      }
+      String actual;
+      try {
+        actual = fast.evaluate().toPlainString();
+      } catch (DivisionByZeroException e) {
+        actual = e.getMessage();
+      }
+      assertEquals(text, expected, actual);
+    }
+  }
+
+  /**
+   * Method name: testAdjacentGroups
+   * Description: checks that groups written side by side, which leave more
+   * than one value on the stack, give the answer of Calculator.calculate
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testAdjacentGroups() throws Exception {
+    for (String expression : new String[] {"(1)(2)", "(2)(5*4)"}) {
+      Result expected = Calculator.calculate(expression);
+      assertEquals(expression, true, expected.ok());
+      assertEquals(expression, expected.value(),
+              DecimalExpression.compile(expression).evaluate()
+              .doubleValue(), 0);
+    }
+  }
+
+  /**
+   * Method name: testDivisionByZero
+   * Description: checks that dividing by zero throws
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDivisionByZero() throws Exception {
+    exception.expect(DivisionByZeroException.class);
+    DecimalExpression.compile("1 / (0.5 - 0.50)").evaluate();
+  }
+
+  /**
+   * Method name: testInvalid
+   * Description: checks that invalid expressions are rejected on compile
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testInvalid() throws Exception {
+    exception.expect(SyntaxErrorException.class);
+    DecimalExpression.compile("1 +");
+  }
+
+  /**
+   * Method name: assertDecimal
+   * Description: checks the exact answer of an expression
+   */
+  private static void assertDecimal(String expected, String expression)
+          throws Exception {
+    assertEquals(expression, expected,
+            DecimalExpression.compile(expression).evaluate()
+            .toPlainString());
+  }
+}
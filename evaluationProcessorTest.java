@@ -0,0 +1,299 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class evaluationProcessorTest {
+  private static final long TIMEOUT_SECONDS = 60;
+  // results a collector keeps, so a long stream takes no memory
+  private static final int KEPT = 100000;
+
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    pool = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Method name: testOrder
+   * Description: checks that random expressions, valid or not, published
+   * from another thread give the results of Calculator.calculate in the
+   * order they were published, with the subscriber requesting in random
+   * amounts
+   * @throws Exception when the stream does not complete
+   */
+  @Test
+  public void testOrder() throws Exception {
+    String[] expressions = expressions(new Random(42), 100000);
+    EvaluationProcessor processor = new EvaluationProcessor(pool, 64, 4);
+    Collector collector = new Collector(new Random(7), Long.MAX_VALUE);
+    processor.subscribe(collector);
+    try (SubmissionPublisher<String> publisher
+            = new SubmissionPublisher<>(pool, 256)) {
+      publisher.subscribe(processor);
+      for (String expression : expressions) {
+        publisher.submit(expression);
+      }
+    }
+    assertTrue(collector.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(null, collector.error);
+    assertEquals(expressions.length, collector.results.size());
+    for (int i = 0; i < expressions.length; i++) {
+      Result expected = Calculator.calculate(expressions[i]);
+      Result actual = collector.results.get(i);
+      assertEquals(expressions[i], expected.toString(), actual.toString());
+      assertEquals(expressions[i], expected.position(), actual.position());
+    }
+  }
+
+  /**
+   * Method name: testBounded
+   * Description: checks that a publisher emitting as fast as it is asked
+   * never gets more than the processor holds ahead of the subscriber, over
+   * a million expressions
+   * @throws Exception when the stream does not complete
+   */
+  @Test
+  public void testBounded() throws Exception {
+    int count = 1000000;
+    EvaluationProcessor processor = new EvaluationProcessor(pool);
+    Source source = new Source(count);
+    AtomicLong ahead = new AtomicLong();
+    Collector collector = new Collector(new Random(7), Long.MAX_VALUE) {
+      @Override
+      public void onNext(Result result) {
+        ahead.accumulateAndGet(source.sent.get() - received, Math::max);
+        super.onNext(result);
+      }
+    };
+    processor.subscribe(collector);
+    source.subscribe(processor);
+    assertTrue(collector.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(null, collector.error);
+    assertEquals(count, collector.received);
+    assertTrue(ahead.get() + " ahead", ahead.get() <= processor.capacity());
+  }
+
+  /**
+   * Method name: testSubscriberStops
+   * Description: checks that the processor stops requesting from a fast
+   * publisher once it holds what it can while the subscriber requests
+   * nothing, and that cancelling cancels the publisher
+   * @throws Exception when interrupted
+   */
+  @Test
+  public void testSubscriberStops() throws Exception {
+    EvaluationProcessor processor = new EvaluationProcessor(pool, 16, 2);
+    Source source = new Source(Long.MAX_VALUE);
+    Collector collector = new Collector(new Random(7), 10);
+    processor.subscribe(collector);
+    source.subscribe(processor);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(
+            TIMEOUT_SECONDS);
+    while (collector.received < 10 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(100); // time to request more, which it must not
+    assertEquals(10, collector.received);
+    assertTrue(source.sent.get() + " sent",
+            source.sent.get() <= processor.capacity() + 10);
+    collector.subscription.cancel();
+    assertTrue(source.cancelled);
+    assertFalse(collector.done.await(100, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Method name: testErrors
+   * Description: checks that an error of the publisher follows the results
+   * before it, and the errors of breaking the rules of Flow
+   * @throws Exception when the stream does not end
+   */
+  @Test
+  public void testErrors() throws Exception {
+    EvaluationProcessor processor = new EvaluationProcessor(pool);
+    Collector collector = new Collector(new Random(7), Long.MAX_VALUE);
+    processor.subscribe(collector);
+    processor.onSubscribe(new Flow.Subscription() { // sends nothing itself
+      @Override
+      public void request(long n) {
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+    processor.onNext("1 + 2");
+    processor.onNext("1 / 0");
+    processor.onError(new IllegalStateException("consumer closed"));
+    assertTrue(collector.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(2, collector.received);
+    assertEquals("3.0", collector.results.get(0).toString());
+    assertEquals(Result.DIVISION_BY_ZERO, collector.results.get(1).error());
+    assertEquals("consumer closed", collector.error.getMessage());
+    // a second subscriber
+    Collector second = new Collector(new Random(7), Long.MAX_VALUE);
+    processor.subscribe(second);
+    assertTrue(second.error instanceof IllegalStateException);
+    // a request of nothing
+    EvaluationProcessor other = new EvaluationProcessor(pool);
+    Collector none = new Collector(new Random(7), 0);
+    other.subscribe(none);
+    Source cancelled = new Source(Long.MAX_VALUE);
+    cancelled.subscribe(other);
+    none.subscription.request(0);
+    assertTrue(none.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(none.error instanceof IllegalArgumentException);
+    assertTrue(cancelled.cancelled);
+  }
+
+  /**
+   * Method name: expressions
+   * @return random expressions, valid or not
+   */
+  private static String[] expressions(Random random, int count) {
+    String alphabet = "0123456789.+-*/()  -";
+    String[] expressions = new String[count];
+    for (int i = 0; i < count; i++) {
+      StringBuilder expression = new StringBuilder();
+      int length = 1 + random.nextInt(24);
+      for (int j = 0; j < length; j++) {
+        expression.append(alphabet.charAt(random.nextInt(
+                alphabet.length())));
+      }
+      expressions[i] = expression.toString();
+    }
+    return expressions;
+  }
+
+  /**
+   * subscriber keeping the results, requesting them in random amounts
+   * until it has requested a limit
+   */
+  private static class Collector implements Flow.Subscriber<Result> {
+    final List<Result> results = new ArrayList<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    private final Random random;
+    private final long limit;
+    volatile Flow.Subscription subscription;
+    volatile Throwable error;
+    volatile long received;
+    private long requested;
+
+    Collector(Random random, long limit) {
+      this.random = random;
+      this.limit = limit;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      request();
+    }
+
+    @Override
+    public void onNext(Result result) {
+      if (results.size() < KEPT) {
+        results.add(result);
+      }
+      received++;
+      if (received == requested) {
+        request();
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      done.countDown();
+    }
+
+    private void request() {
+      long n = Math.min(1 + random.nextInt(1000), limit - requested);
+      if (n > 0) {
+        requested += n;
+        subscription.request(n);
+      }
+    }
+  }
+
+  /**
+   * publisher of count expressions, each sent as soon as it is requested
+   * on the thread requesting it
+   */
+  private static final class Source implements Flow.Publisher<String> {
+    final AtomicLong sent = new AtomicLong();
+    private final long count;
+    volatile boolean cancelled;
+
+    Source(long count) {
+      this.count = count;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+      subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    private final class Subscription implements Flow.Subscription {
+      private final Flow.Subscriber<? super String> subscriber;
+      private final AtomicLong demand = new AtomicLong();
+      private final AtomicInteger pending = new AtomicInteger();
+
+      Subscription(Flow.Subscriber<? super String> subscriber) {
+        this.subscriber = subscriber;
+      }
+
+      @Override
+      public void request(long n) {
+        demand.addAndGet(n);
+        if (pending.getAndIncrement() != 0) {
+          return;
+        }
+        int missed = 1;
+        do {
+          while (demand.get() > 0 && !cancelled) {
+            long i = sent.get();
+            if (i == count) {
+              cancelled = true;
+              subscriber.onComplete();
+              break;
+            }
+            sent.incrementAndGet();
+            demand.decrementAndGet();
+            subscriber.onNext(i % 7 + " * (" + i % 100 + " - 3)");
+          }
+          missed = pending.addAndGet(-missed);
+        } while (missed != 0);
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+      }
+    }
+  }
+}
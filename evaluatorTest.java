@@ -0,0 +1,104 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+
+public class evaluatorTest {
+  private static final String[] EXPRESSIONS = {"(58*3.2+(45--23))",
+          "1 + h", "1 / (2 - 2)", "1 +", "(24.3 + 4) / 78",
+          "((((((((((1 + 2) * 3) - 4) / 5) + 6) * 7) - 8) / 9) + 10) * 11)"};
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testEvaluate
+   * Description: checks answers and errors of one evaluator
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEvaluate() throws Exception {
+    Evaluator evaluator = new Evaluator();
+    assertEquals(253.60000000000002, evaluator.evaluate("(58*3.2+(45--23))"),
+            0);
+    StringBuilder deep = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      deep.append("1 + (");
+    }
+    deep.append('1');
+    for (int i = 0; i < 1000; i++) {
+      deep.append(')');
+    }
+    assertEquals(1001.0, evaluator.evaluate(deep), 0);
+    Result result = evaluator.calculate("1 + h");
+    assertEquals(Result.INVALID_CHARACTER, result.error());
+    assertEquals(4, result.position());
+    exception.expect(DivisionByZeroException.class);
+    evaluator.evaluate("1 / 0");
+  }
+
+  /**
+   * Method name: testPlatformThreads
+   * Description: checks that one evaluator shared by many platform threads
+   * gives each the answers it gives a single thread
+   * @throws Exception when a thread fails
+   */
+  @Test
+  public void testPlatformThreads() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    try {
+      assertShared(pool, 16);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Method name: testVirtualThreads
+   * Description: checks that one evaluator shared by more virtual threads
+   * than it has slots gives each the answers it gives a single thread
+   * @throws Exception when a thread fails
+   */
+  @Test
+  public void testVirtualThreads() throws Exception {
+    try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+      assertShared(pool, 1000);
+    }
+  }
+
+  /**
+   * Method name: assertShared
+   * Description: evaluates every expression many times in many tasks on a
+   * shared evaluator and compares with Calculator.calculate
+   */
+  private static void assertShared(ExecutorService pool, int tasks)
+          throws Exception {
+    Evaluator evaluator = new Evaluator();
+    List<Callable<Void>> work = new ArrayList<>();
+    for (int t = 0; t < tasks; t++) {
+      int offset = t;
+      work.add(() -> {
+        for (int i = 0; i < 600; i++) {
+          String expression = EXPRESSIONS[(offset + i) % EXPRESSIONS.length];
+          Result expected = Calculator.calculate(expression);
+          Result actual = evaluator.calculate(expression);
+          assertEquals(expression, expected.toString(), actual.toString());
+          assertEquals(expression, expected.position(), actual.position());
+          if (i % 100 == 0) {
+            Thread.yield();
+          }
+        }
+        return null;
+      });
+    }
+    for (Future<Void> future : pool.invokeAll(work)) {
+      future.get();
+    }
+  }
+}
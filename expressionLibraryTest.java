@@ -0,0 +1,200 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+
+public class expressionLibraryTest {
+  private static final String[] VARIABLES = {"a", "b", "c"};
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Method name: testEvaluate
+   * Description: checks answers of expressions and formulas read back from
+   * a library
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEvaluate() throws Exception {
+    Path file = folder.newFile().toPath();
+    ExpressionLibrary.write(file, Arrays.asList(
+            Calculator.compile("(58*3.2+(45--23))"),
+            program("price * qty - -discount", false, "price", "qty",
+                    "discount"),
+            program("(a + b) * (a + b) - 2 * 3", true, "a", "b")));
+    ExpressionLibrary library = ExpressionLibrary.open(file);
+    assertEquals(3, library.size());
+    assertEquals(253.60000000000002, library.evaluate(0), 0);
+    assertEquals(11.0, library.evaluate(1, 2.5, 4, 1), 0);
+    assertEquals(43.0, library.evaluate(2, 3, 4), 0);
+    assertEquals(43.0, library.expression(2).evaluate(
+            new double[library.expression(2).maxStack()],
+            new double[] {3, 4}), 0);
+  }
+
+  /**
+   * Method name: testSameAsCompiled
+   * Description: checks that random formulas, optimized or not, give
+   * exactly the answers of their compiled expressions, whether evaluated
+   * from the file or decoded from it
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testSameAsCompiled() throws Exception {
+    Random random = new Random(42);
+    List<CompiledExpression> programs = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      programs.add(program(expression(random, 1 + random.nextInt(4)),
+              random.nextBoolean(), VARIABLES));
+    }
+    Path file = folder.newFile().toPath();
+    ExpressionLibrary.write(file, programs);
+    ExpressionLibrary library = ExpressionLibrary.open(file);
+    double[] values = new double[VARIABLES.length];
+    for (int i = 0; i < programs.size(); i++) {
+      for (int v = 0; v < values.length; v++) {
+        values[v] = random.nextInt(9) - 4 + random.nextInt(4) / 4.0;
+      }
+      CompiledExpression program = programs.get(i);
+      String expected = answer(program, values);
+      assertEquals(expected, answer(library, i, values));
+      assertEquals(expected, answer(library.expression(i), values));
+    }
+  }
+
+  /**
+   * Method name: testEmpty
+   * Description: checks a library of no expressions
+   * @throws Exception when the file cannot be written
+   */
+  @Test
+  public void testEmpty() throws Exception {
+    Path file = folder.newFile().toPath();
+    ExpressionLibrary.write(file, new ArrayList<>());
+    ExpressionLibrary library = ExpressionLibrary.open(file);
+    assertEquals(0, library.size());
+    exception.expect(IndexOutOfBoundsException.class);
+    library.evaluate(0);
+  }
+
+  /**
+   * Method name: testDivisionByZero
+   * Description: checks that dividing by zero from the file throws
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDivisionByZero() throws Exception {
+    Path file = folder.newFile().toPath();
+    ExpressionLibrary.write(file, Arrays.asList(
+            program("a / (b - 1)", true, "a", "b")));
+    ExpressionLibrary library = ExpressionLibrary.open(file);
+    assertEquals(2.0, library.evaluate(0, 4, 3), 0);
+    exception.expect(DivisionByZeroException.class);
+    library.evaluate(0, 4, 1);
+  }
+
+  /**
+   * Method name: testNotALibrary
+   * Description: checks that a file of another kind is refused
+   * @throws Exception when the file cannot be written
+   */
+  @Test
+  public void testNotALibrary() throws Exception {
+    Path file = folder.newFile().toPath();
+    Files.write(file, "(24.3 + 4) / 78\n".getBytes());
+    exception.expect(IOException.class);
+    ExpressionLibrary.open(file);
+  }
+
+  /**
+   * Method name: testTruncated
+   * Description: checks that a library missing its last bytes is refused
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testTruncated() throws Exception {
+    Path file = folder.newFile().toPath();
+    ExpressionLibrary.write(file, Arrays.asList(
+            Calculator.compile("1 + 2"), Calculator.compile("3 * 4")));
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+    exception.expect(IOException.class);
+    ExpressionLibrary.open(file);
+  }
+
+  /**
+   * Method name: program
+   * @param expression, expression over the variables
+   * @param optimize, whether to optimize the program
+   * @param variables, names the expression may use
+   * @return compiled expression
+   */
+  private static CompiledExpression program(String expression,
+          boolean optimize, String... variables) throws Exception {
+    Tokenizer tokens = new Tokenizer();
+    tokens.tokenize(expression, variables);
+    CompiledExpression program = CompiledExpression.fromTokens(tokens);
+    return optimize ? program.optimize() : program;
+  }
+
+  /**
+   * Method name: answer
+   * @return the answer of a compiled expression, or its error
+   */
+  private static String answer(CompiledExpression program, double[] values) {
+    try {
+      return Double.toString(program.evaluate(
+              new double[program.maxStack()], values));
+    } catch (DivisionByZeroException e) {
+      return "divided by zero";
+    }
+  }
+
+  /**
+   * Method name: answer
+   * @return the answer of an expression of a library, or its error
+   */
+  private static String answer(ExpressionLibrary library, int index,
+          double[] values) {
+    try {
+      return Double.toString(library.evaluate(index, values));
+    } catch (DivisionByZeroException e) {
+      return "divided by zero";
+    }
+  }
+
+  /**
+   * Method name: expression
+   * Description: generates a random valid expression, repeating operands
+   * so the optimizer shares subexpressions
+   * @param random, source of the expression
+   * @param depth, maximum nesting
+   * @return expression in infix notation
+   */
+  private static String expression(Random random, int depth) {
+    if (depth == 0 || random.nextInt(4) == 0) {
+      String operand = String.valueOf("abc0123".charAt(random.nextInt(7)));
+      if (Character.isDigit(operand.charAt(0))) {
+        return random.nextInt(4) == 0 ? operand + ".5" : operand;
+      }
+      return random.nextInt(3) == 0 ? "(-" + operand + ")" : operand;
+    }
+    String left = expression(random, depth - 1);
+    String right = random.nextInt(3) == 0 ? left
+            : expression(random, depth - 1);
+    char operator = "+-*/".charAt(random.nextInt(4));
+    return "(" + left + " " + operator + " " + right + ")";
+  }
+}
@@ -0,0 +1,156 @@
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class expressionTreeTest {
+  private static final String[] VARIABLES = {"a", "b"};
+
+  /**
+   * Method name: answer
+   * Description: evaluates a formula for one row, as text so that answers
+   * and errors can be compared bit for bit
+   * @param formula, compiled formula
+   * @param values, value of each variable
+   * @return bits of the answer, or the name of the exception
+   */
+  private static String answer(Formula formula, double... values) {
+    try {
+      return bits(formula.evaluate(values));
+    } catch (DivisionByZeroException e) {
+      return "DivisionByZeroException";
+    }
+  }
+
+  /**
+   * Method name: bits
+   * Description: obtains the bits of a number; every NaN has the same bits,
+   * since which NaN an operation returns depends on the CPU instruction
+   * @param value, any number
+   * @return bits in hexadecimal
+   */
+  private static String bits(double value) {
+    return Long.toHexString(Double.doubleToLongBits(value));
+  }
+
+  /**
+   * Method name: term
+   * Description: builds a random expression over a and b, often reusing an
+   * earlier one so that subexpressions repeat
+   * @param random, source of choices
+   * @param terms, expressions built so far
+   * @param depth, nesting still allowed
+   * @return expression in infix notation
+   */
+  private static String term(Random random, List<String> terms, int depth) {
+    String term;
+    if (!terms.isEmpty() && random.nextInt(3) == 0) {
+      term = terms.get(random.nextInt(terms.size()));
+    }
+    else if (depth == 0 || random.nextInt(4) == 0) {
+      String[] leaves = {"a", "b", "0", "1", "2.5", "3", "0.1", "1e"};
+      term = leaves[random.nextInt(leaves.length - 1)];
+    }
+    else {
+      term = "(" + term(random, terms, depth - 1) + " "
+              + "+-*/".charAt(random.nextInt(4)) + " "
+              + term(random, terms, depth - 1) + ")";
+    }
+    terms.add(term);
+    return term;
+  }
+
+  /**
+   * Method name: testFolding
+   * Description: checks that a constant expression folds into one number
+   * with the same bits
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testFolding() throws Exception {
+    CompiledExpression program
+            = Calculator.compile("(0.1 + 0.2) * 3 - 4 / 7 + (-0)");
+    CompiledExpression optimized = program.optimize();
+    assertArrayEquals(new int[] {CompiledExpression.PUSH, 0}, optimized.code);
+    assertEquals(Double.doubleToRawLongBits(program.evaluate()),
+            Double.doubleToRawLongBits(optimized.evaluate()));
+  }
+
+  /**
+   * Method name: testSharing
+   * Description: checks that a repeated subexpression is computed once
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testSharing() throws Exception {
+    Tokenizer tokens = new Tokenizer();
+    tokens.tokenize("(a + b) * (a + b)", VARIABLES);
+    CompiledExpression optimized
+            = CompiledExpression.fromTokens(tokens).optimize();
+    assertArrayEquals(new int[] {CompiledExpression.LOAD, 0,
+            CompiledExpression.LOAD, 1, CompiledExpression.ADD,
+            CompiledExpression.SAVE, 0, CompiledExpression.RECALL, 0,
+            CompiledExpression.MULTIPLY}, optimized.code);
+    assertEquals(3, optimized.maxStack());
+    assertEquals(25.0, optimized.evaluate(new double[3], new double[] {2, 3}),
+            0);
+  }
+
+  /**
+   * Method name: testDivisionByZero
+   * Description: checks that divisions by zero are still reported, also
+   * in values left unused on the stack, and that other unused values are
+   * dropped
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDivisionByZero() throws Exception {
+    Formula formula = Formula.compile("a + 1 / 0", "a");
+    assertEquals("DivisionByZeroException", answer(formula, 1));
+    assertEquals("DivisionByZeroException",
+            answer(Formula.compile("(1 / a)(2)", "a"), 0));
+    assertEquals(bits(2), answer(Formula.compile("(1 / a)(2)", "a"), 4));
+    assertArrayEquals(new int[] {CompiledExpression.PUSH, 0},
+            Calculator.compile("(1 * 2)(3)").optimize().code);
+  }
+
+  /**
+   * Method name: testRandomFormulas
+   * Description: checks that optimized and unoptimized random formulas
+   * give the same bits or the same error, by row and by column
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testRandomFormulas() throws Exception {
+    Random random = new Random(7);
+    double[] values = {0, -0.0, 1, -2.5, 0.1, 3, Double.MAX_VALUE,
+            Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY};
+    for (int i = 0; i < 2000; i++) {
+      String expression = term(random, new ArrayList<>(), 4);
+      Formula plain = Formula.compile(expression, false, VARIABLES);
+      Formula optimized = Formula.compile(expression, VARIABLES);
+      double[][] columns = new double[2][values.length * values.length];
+      int row = 0;
+      boolean fails = false;
+      for (double a : values) {
+        for (double b : values) {
+          String expected = answer(plain, a, b);
+          assertEquals(expression, expected, answer(optimized, a, b));
+          fails |= expected.equals("DivisionByZeroException");
+          columns[0][row] = a;
+          columns[1][row++] = b;
+        }
+      }
+      if (!fails) {
+        double[] out = new double[row];
+        optimized.evaluate(columns, out);
+        for (int r = 0; r < row; r++) {
+          assertEquals(expression, answer(plain, columns[0][r], columns[1][r]),
+                  bits(out[r]));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class formulaTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: column
+   * Description: fills a column with random nonzero values
+   * @param random, source of the values
+   * @param rows, length of the column
+   * @return column of values
+   */
+  private static double[] column(Random random, int rows) {
+    double[] column = new double[rows];
+    for (int i = 0; i < rows; i++) {
+      column[i] = random.nextInt(2000) / 8.0 - 125.0625;
+    }
+    return column;
+  }
+
+  /**
+   * Method name: testEvaluate
+   * Description: checks one row of values against the same expression with
+   * the values written as numbers
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEvaluate() throws Exception {
+    Formula formula = Formula.compile("price * qty - discount",
+            "price", "qty", "discount");
+    assertEquals(9.0, formula.evaluate(2.5, 4, 1), 0);
+    assertEquals(Calculator.compile("-2.5 * 3 - -(1 / (-4))").evaluate(),
+            Formula.compile("-x * 3 - -(1 / (-y))", "x", "y").evaluate(2.5, 4),
+            0);
+    assertEquals(7.0, Formula.compile("3 + 4").evaluate(), 0);
+  }
+
+  /**
+   * Method name: testColumns
+   * Description: checks that evaluating by column gives the same answers as
+   * evaluating each row, across several blocks and for numbers, variables
+   * and negated variables on either side of every operator
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testColumns() throws Exception {
+    String[] expressions = {"a", "-a", "2.5", "a + b * c", "(a - b) / c",
+            "1 / a - c / 2", "2 * (3 - 1) + a", "-a * (-b) / (c - -c + 1)",
+            "(a + 1) * (b + 2) * (c + 3) - 4 / (a * a)"};
+    Random random = new Random(42);
+    int rows = 2500;
+    double[][] columns = {column(random, rows), column(random, rows),
+            column(random, rows)};
+    for (String expression : expressions) {
+      Formula formula = Formula.compile(expression, "a", "b", "c");
+      double[] expected = new double[rows];
+      for (int i = 0; i < rows; i++) {
+        expected[i] = formula.evaluate(columns[0][i], columns[1][i],
+                columns[2][i]);
+      }
+      double[] out = new double[rows];
+      formula.evaluate(columns, out);
+      assertArrayEquals(expression, expected, out, 0);
+    }
+  }
+
+  /**
+   * Method name: testColumnsDivisionByZero
+   * Description: checks that a zero divisor in any row is reported
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testColumnsDivisionByZero() throws Exception {
+    double[] divisors = new double[3000];
+    Arrays.fill(divisors, 1);
+    divisors[2999] = 0;
+    exception.expect(DivisionByZeroException.class);
+    Formula.compile("1 / x", "x").evaluate(new double[][] {divisors},
+            new double[3000]);
+  }
+
+  /**
+   * Method name: testUndeclaredVariable
+   * Description: checks that a name that was not declared is invalid
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testUndeclaredVariable() throws Exception {
+    exception.expect(InvalidCharacterException.class);
+    exception.expectMessage("discount is Invalid");
+    Formula.compile("price * qty - discount", "price", "qty");
+  }
+
+  /**
+   * Method name: testDuplicateVariable
+   * Description: checks that a variable cannot be declared twice
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDuplicateVariable() throws Exception {
+    exception.expect(IllegalArgumentException.class);
+    Formula.compile("x * x", "x", "x");
+  }
+
+  /**
+   * Method name: testMissingColumn
+   * Description: checks that there must be a column per variable
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testMissingColumn() throws Exception {
+    exception.expect(IllegalArgumentException.class);
+    Formula.compile("x * y", "x", "y").evaluate(new double[][] {{1}},
+            new double[1]);
+  }
+}
@@ -0,0 +1,115 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+
+public class fusedEvaluatorTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testEvaluate
+   * Description: checks answers and errors of one evaluator
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEvaluate() throws Exception {
+    FusedEvaluator evaluator = new FusedEvaluator();
+    assertEquals(253.60000000000002, evaluator.evaluate("(58*3.2+(45--23))"),
+            0);
+    assertEquals(-5.0, evaluator.evaluate(" - 1 - (2 * 3) -1 - - 3"), 0);
+    assertEquals(0.3628205128205128, evaluator.evaluate("(24.3 + 4) / 78"),
+            0);
+    Result result = evaluator.calculate("1 / 0 + (2 + h");
+    assertEquals(Result.INVALID_CHARACTER, result.error());
+    assertEquals(13, result.position());
+    result = evaluator.calculate("1 / 0 + 2) * 3");
+    assertEquals(Result.SYNTAX_ERROR, result.error());
+    assertEquals(9, result.position());
+    exception.expect(DivisionByZeroException.class);
+    evaluator.evaluate("1 + 2 / (3 - 3)");
+  }
+
+  /**
+   * Method name: testSameAsCalculate
+   * Description: checks that random expressions, valid or not, give the
+   * answer or the error, at the same offset, that Calculator.calculate
+   * gives, and the answer or exception of simpleFormat, postfix and
+   * parseString
+   */
+  @Test
+  public void testSameAsCalculate() {
+    Random random = new Random(42);
+    String alphabet = "0123456789.+-*/()  -";
+    FusedEvaluator evaluator = new FusedEvaluator();
+    for (int i = 0; i < 50000; i++) {
+      StringBuilder expression = new StringBuilder();
+      int length = random.nextInt(24);
+      for (int j = 0; j < length; j++) {
+        expression.append(alphabet.charAt(random.nextInt(
+                alphabet.length())));
+      }
+      if (random.nextInt(50) == 0) {
+        expression.insert(random.nextInt(length + 1), 'x');
+      }
+      String text = expression.toString();
+      Result expected = Calculator.calculate(text);
+      Result actual = evaluator.calculate(text);
+      assertEquals(text, expected.toString(), actual.toString());
+      assertEquals(text, expected.error(), actual.error());
+      assertEquals(text, expected.position(), actual.position());
+      assertEquals(text, legacy(text), fused(evaluator, text));
+    }
+  }
+
+  /**
+   * Method name: testDeepNesting
+   * Description: checks an expression nested deeper than the initial
+   * stacks
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDeepNesting() throws Exception {
+    StringBuilder deep = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      deep.append("1 + (");
+    }
+    deep.append('1');
+    for (int i = 0; i < 1000; i++) {
+      deep.append(')');
+    }
+    assertEquals(1001.0, new FusedEvaluator().evaluate(deep), 0);
+  }
+
+  /**
+   * Method name: legacy
+   * @return the answer of simpleFormat, postfix and parseString, or the
+   * class of the exception they throw; a malformed number, which they
+   * leave to Double.parseDouble, is a syntax error in a Result
+   */
+  private static String legacy(String text) {
+    try {
+      return Double.toString(Calculator.parseString(Calculator.postfix(
+              Calculator.simpleFormat(text))));
+    } catch (NumberFormatException e) {
+      return SyntaxErrorException.class.getSimpleName();
+    } catch (Exception e) {
+      return e.getClass().getSimpleName();
+    }
+  }
+
+  /**
+   * Method name: fused
+   * @return the answer of the evaluator, or the class of the exception it
+   * throws
+   */
+  private static String fused(FusedEvaluator evaluator, String text) {
+    try {
+      return Double.toString(evaluator.evaluate(text));
+    } catch (Exception e) {
+      return e.getClass().getSimpleName();
+    }
+  }
+}
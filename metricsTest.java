@@ -0,0 +1,107 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class metricsTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testCounts
+   * Description: checks that evaluations, tokens and each phase are
+   * counted, and errors by exception
+   */
+  @Test
+  public void testCounts() {
+    Metrics metrics = new Metrics();
+    Tokenizer tokens = new Tokenizer();
+    metrics.timeScan(tokens, "1 + 2 * 3");
+    CompiledExpression program = metrics.timeCompile(tokens);
+    double[] stack = program.scratch();
+    assertEquals(1, metrics.timeRun(program, stack));
+    assertEquals(7.0, stack[0], 0);
+    metrics.timeScan(tokens, "1 / 0");
+    assertEquals(-1, metrics.timeRun(metrics.timeCompile(tokens), stack));
+    assertFalse(metrics.timeScan(tokens, "1 + h"));
+    assertEquals(1, metrics.getEvaluations());
+    assertEquals(8, metrics.getTokens());
+    assertEquals(2, (long) metrics.getTokenizeNanos().get("count"));
+    assertEquals(2, (long) metrics.getCompileNanos().get("count"));
+    assertEquals(1, (long) metrics.getEvaluateNanos().get("count"));
+    Map<String, Long> errors = metrics.getErrors();
+    assertEquals(1, (long) errors.get("DivisionByZeroException"));
+    assertEquals(1, (long) errors.get("InvalidCharacterException"));
+    assertTrue(metrics.getReport().contains("evaluate"));
+    metrics.reset();
+    assertEquals(0, metrics.getEvaluations());
+    assertEquals(0, (long) metrics.getTokenizeNanos().get("count"));
+    assertTrue(metrics.getErrors().isEmpty());
+  }
+
+  /**
+   * Method name: testBuckets
+   * Description: checks that every value falls in a bucket whose largest
+   * value is at most 12.5% above it
+   */
+  @Test
+  public void testBuckets() {
+    long[] values = {0, 1, 7, 8, 15, 16, 17, 1000, 123456789,
+            Long.MAX_VALUE};
+    for (long value : values) {
+      long highest = Metrics.Histogram.highest(
+              Metrics.Histogram.bucket(value));
+      assertTrue(value + " <= " + highest, value <= highest);
+      assertTrue(value + " near " + highest,
+              highest - value <= value / 8);
+    }
+  }
+
+  /**
+   * Method name: testPercentiles
+   * Description: checks percentiles of a uniform spread of values
+   */
+  @Test
+  public void testPercentiles() {
+    Metrics.Histogram histogram = new Metrics.Histogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i);
+    }
+    Map<String, Long> summary = histogram.summary();
+    assertEquals(10000, (long) summary.get("count"));
+    assertEquals(5000, (long) summary.get("mean"));
+    assertEquals(10000, (long) summary.get("max"));
+    long p50 = summary.get("p50");
+    long p99 = summary.get("p99");
+    assertTrue("p50 " + p50, p50 >= 5000 && p50 <= 5000 * 9 / 8);
+    assertTrue("p99 " + p99, p99 >= 9900 && p99 <= 10000);
+  }
+
+  /**
+   * Method name: testMXBean
+   * Description: checks that the metrics are readable over JMX
+   * @throws Exception when the MXBean cannot be read
+   */
+  @Test
+  public void testMXBean() throws Exception {
+    ObjectName name = Metrics.register();
+    assertEquals(name, Metrics.register());
+    Metrics.get().timeScan(new Tokenizer(), "1 + 2");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertTrue((Long) server.getAttribute(name, "Tokens") >= 3);
+    TabularData latency
+            = (TabularData) server.getAttribute(name, "TokenizeNanos");
+    CompositeData count = latency.get(new Object[] {"count"});
+    assertTrue((Long) count.get("value") >= 1);
+    assertEquals(Metrics.ENABLED, server.getAttribute(name, "Enabled"));
+  }
+}
@@ -0,0 +1,177 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class operatorsTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testStandard
+   * Description: checks the precedence and associativity of the operators
+   * and the functions of STANDARD
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testStandard() throws Exception {
+    Evaluator evaluator = new Evaluator(Operators.STANDARD);
+    assertEquals(512.0, evaluator.evaluate("2^3^2"), 0);
+    assertEquals(64.0, evaluator.evaluate("(2^3)^2"), 0);
+    assertEquals(18.0, evaluator.evaluate("2*3^2"), 0);
+    assertEquals(-8.0, evaluator.evaluate("-2^3"), 0);
+    assertEquals(1.0, evaluator.evaluate("7 % 3"), 0);
+    assertEquals(5.0, evaluator.evaluate("2 * 7 % 3 + 3"), 0);
+    assertEquals(3.0, evaluator.evaluate("sqrt(9)"), 0);
+    assertEquals(-1.0, evaluator.evaluate("min(-1, 2)"), 0);
+    assertEquals(7.0, evaluator.evaluate("max(min(3, 4) * 2, sqrt(49))"),
+            0);
+    assertEquals(5.0, evaluator.evaluate("sqrt(3^2 + max(2, -4)^2 * 4)"),
+            0);
+    assertEquals(10.0, evaluator.evaluate("1 + max(1 + 2, 3 * (1 + 2))"), 0);
+    exception.expect(DivisionByZeroException.class);
+    evaluator.evaluate("1 + 5 % (2 - 2)");
+  }
+
+  /**
+   * Method name: testErrors
+   * Description: checks that errors of function calls are reported at the
+   * offset of the function or comma
+   */
+  @Test
+  public void testErrors() {
+    Evaluator evaluator = new Evaluator(Operators.STANDARD);
+    assertError(evaluator, "min(1)", Result.SYNTAX_ERROR, 0);
+    assertError(evaluator, "1 + max(1, 2, 3)", Result.SYNTAX_ERROR, 4);
+    assertError(evaluator, "sqrt()", Result.SYNTAX_ERROR, 0);
+    assertError(evaluator, "min(1,)", Result.SYNTAX_ERROR, 0);
+    assertError(evaluator, "(1, 2)", Result.SYNTAX_ERROR, 2);
+    assertError(evaluator, "1, 2", Result.SYNTAX_ERROR, 1);
+    assertError(evaluator, "max(1, 2", Result.SYNTAX_ERROR, 3);
+    assertError(evaluator, "pow(2, 3)", Result.INVALID_CHARACTER, 0);
+    assertError(evaluator, "sqrt 4", Result.INVALID_CHARACTER, 0);
+    assertError(evaluator, "2 ^^ 3", Result.SYNTAX_ERROR, 3);
+    // the four operators alone know neither ^, % nor functions
+    Evaluator plain = new Evaluator();
+    assertError(plain, "2 ^ 3", Result.INVALID_CHARACTER, 2);
+    assertError(plain, "7 % 3", Result.INVALID_CHARACTER, 2);
+    assertError(plain, "1, 2", Result.INVALID_CHARACTER, 1);
+    assertError(plain, "sqrt(4)", Result.INVALID_CHARACTER, 0);
+  }
+
+  /**
+   * Method name: testRegister
+   * Description: checks operators and functions registered by the caller
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testRegister() throws Exception {
+    Operators mine = Operators.STANDARD
+            .withOperator('&', 1, false, (a, b) -> Math.min(a, b))
+            .withFunction("hypot", 2,
+                    (args, i) -> Math.hypot(args[i], args[i + 1]))
+            .withFunction("pi", 0, (args, i) -> Math.PI)
+            .withFunction("avg3", 3,
+                    (args, i) -> (args[i] + args[i + 1] + args[i + 2]) / 3);
+    assertEquals(9, mine.size());
+    assertEquals(5, Operators.STANDARD.size());
+    assertEquals(0, Operators.DEFAULT.size());
+    Evaluator evaluator = new Evaluator(mine);
+    assertEquals(5.0, evaluator.evaluate("hypot(3, 4)"), 0);
+    assertEquals(Math.PI * 2, evaluator.evaluate("2 * pi()"), 0);
+    assertEquals(2.0, evaluator.evaluate("avg3(1, 2, 3)"), 0);
+    assertEquals(3.0, evaluator.evaluate("1 + 2 & 9"), 0);
+    assertEquals(3.0, evaluator.evaluate("9 & 1 + 2"), 0);
+    // registering leaves the original registry as it was
+    assertError(new Evaluator(Operators.STANDARD), "hypot(3, 4)",
+            Result.INVALID_CHARACTER, 0);
+  }
+
+  /**
+   * Method name: testInvalidRegistrations
+   * Description: checks the operators and functions that cannot be
+   * registered
+   */
+  @Test
+  public void testInvalidRegistrations() {
+    String[] symbols = {"a", "1", " ", "(", ")", ".", ",", "_", "+", "^",
+            "\u00e9"};
+    for (String symbol : symbols) {
+      try {
+        Operators.STANDARD.withOperator(symbol.charAt(0), 1, false,
+                (a, b) -> a);
+        throw new AssertionError(symbol);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    String[] names = {"1x", "a-b", "", "sqrt"};
+    for (String name : names) {
+      try {
+        Operators.STANDARD.withFunction(name, 1, (args, i) -> args[i]);
+        throw new AssertionError(name);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    exception.expect(IllegalArgumentException.class);
+    Operators.DEFAULT.withOperator('#', 0, false, (a, b) -> a);
+  }
+
+  /**
+   * Method name: testFormula
+   * Description: checks a formula over STANDARD, by row and by column,
+   * which is neither optimized nor compiled to bytecode
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testFormula() throws Exception {
+    Formula formula = Formula.compile("sqrt(a^2 + b^2) + max(a, b) % 3",
+            Operators.STANDARD, "a", "b");
+    assertEquals(6.0, formula.evaluate(3, 4), 0);
+    assertEquals(13.0, formula.evaluate(5, 12), 0);
+    double[] out = new double[3000];
+    double[] a = new double[out.length];
+    double[] b = new double[out.length];
+    for (int i = 0; i < out.length; i++) {
+      a[i] = i;
+      b[i] = i % 7;
+    }
+    formula.evaluate(new double[][] {a, b}, out);
+    for (int i = 0; i < out.length; i++) {
+      assertEquals(formula.evaluate(a[i], b[i]), out[i], 0);
+    }
+    Formula compiled = Formula.compile("a ^ 2", true, 0,
+            Operators.STANDARD, "a");
+    assertFalse(compiled.isCompiled());
+    assertEquals(9.0, compiled.evaluate(-3), 0);
+    exception.expect(SyntaxErrorException.class);
+    Formula.compile("min(a)", Operators.STANDARD, "a");
+  }
+
+  /**
+   * Method name: testCanonical
+   * Description: checks that functions and commas keep their text in the
+   * canonical form
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testCanonical() throws Exception {
+    Tokenizer tokens = new Tokenizer(Operators.STANDARD);
+    tokens.tokenize("max( 1 ,-2 )^2 % 3");
+    assertEquals("max ( 1 , -2 ) ^ 2 % 3", tokens.canonical());
+  }
+
+  /**
+   * Method name: assertError
+   * Description: checks the error and its offset of an invalid expression
+   */
+  private static void assertError(Evaluator evaluator, String expression,
+          int error, int position) {
+    Result result = evaluator.calculate(expression);
+    assertEquals(expression, error, result.error());
+    assertEquals(expression, position, result.position());
+  }
+}
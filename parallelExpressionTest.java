@@ -0,0 +1,153 @@
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.assertEquals;
+
+public class parallelExpressionTest {
+  private static final ForkJoinPool POOL = new ForkJoinPool(4);
+  // small enough that the test expressions are split many times
+  private static final int CUTOFF = 16;
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  @AfterClass
+  public static void shutDown() {
+    POOL.shutdown();
+  }
+
+  /**
+   * Method name: balanced
+   * Description: builds a balanced random expression without division,
+   * so that it never divides by zero
+   * @param random, source of literals and operators
+   * @param operands, number of literals
+   * @param out, expression being built
+   */
+  private static void balanced(Random random, int operands, StringBuilder out) {
+    if (operands == 1) {
+      out.append(1 + random.nextInt(9)).append('.').append(random.nextInt(10));
+      return;
+    }
+    out.append('(');
+    balanced(random, operands / 2, out);
+    out.append(' ').append("+-*".charAt(random.nextInt(3))).append(' ');
+    balanced(random, operands - operands / 2, out);
+    out.append(')');
+  }
+
+  /**
+   * Method name: assertSameAnswer
+   * Description: checks that parallel evaluation gives the same bits as
+   * sequential evaluation
+   * @param expression in infix notation
+   * @throws Exception when expression is invalid
+   */
+  private static void assertSameAnswer(String expression) throws Exception {
+    CompiledExpression program = Calculator.compile(expression);
+    assertEquals(Double.doubleToLongBits(program.evaluate()),
+            Double.doubleToLongBits(
+            ParallelExpression.of(program, CUTOFF).evaluate(POOL)));
+  }
+
+  /**
+   * Method name: testShapes
+   * Description: checks balanced, left-deep and right-deep expressions
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testShapes() throws Exception {
+    Random random = new Random(42);
+    for (int operands : new int[] {1, 2, 3, 100, 1000, 4321}) {
+      StringBuilder expression = new StringBuilder();
+      balanced(random, operands, expression);
+      assertSameAnswer(expression.toString());
+    }
+    StringBuilder left = new StringBuilder("1");
+    StringBuilder right = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      left.append(i % 2 == 0 ? " - 0.3" : " * 1.01");
+      right.append("1.5 - (");
+    }
+    right.append("2");
+    for (int i = 0; i < 5000; i++) {
+      right.append(')');
+    }
+    assertSameAnswer(left.toString());
+    assertSameAnswer(right.toString());
+    assertSameAnswer("(1 + 2)(3 * 4)");
+  }
+
+  /**
+   * Method name: testDivisionByZero
+   * Description: checks that a division by zero deep inside a forked
+   * subtree is reported
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDivisionByZero() throws Exception {
+    StringBuilder half = new StringBuilder();
+    balanced(new Random(7), 1000, half);
+    String expression = half + " + (" + half + " * (1 / 0))";
+    ParallelExpression parallel = ParallelExpression.of(
+            Calculator.compile(expression), CUTOFF);
+    exception.expect(DivisionByZeroException.class);
+    parallel.evaluate(POOL);
+  }
+
+  /**
+   * Method name: testSmallestCutoff
+   * Description: checks that a cutoff of 2, a single literal, splits down
+   * to the literals with the same answer, and that 1 is rejected
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testSmallestCutoff() throws Exception {
+    StringBuilder expression = new StringBuilder();
+    balanced(new Random(42), 64, expression);
+    CompiledExpression program = Calculator.compile(expression.toString());
+    assertEquals(Double.doubleToLongBits(program.evaluate()),
+            Double.doubleToLongBits(
+            ParallelExpression.of(program, 2).evaluate(POOL)));
+    assertEquals(5, ParallelExpression.of(Calculator.compile("5"), 2)
+            .evaluate(POOL), 0);
+    exception.expect(IllegalArgumentException.class);
+    ParallelExpression.of(Calculator.compile("5"), 1);
+  }
+
+  /**
+   * Method name: testOptimized
+   * Description: checks that an optimized expression, which shares
+   * subexpressions, is evaluated sequentially with the same answer
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testOptimized() throws Exception {
+    CompiledExpression program
+            = Calculator.compile("(1 + 2) * (1 + 2) - 3 / 4").optimize();
+    assertEquals(program.evaluate(),
+            ParallelExpression.of(program, CUTOFF).evaluate(POOL), 0);
+  }
+
+  /**
+   * Method name: testOperations
+   * Description: checks that an expression using registered functions of
+   * arity 0, 1 and 2 gives the sequential answer
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testOperations() throws Exception {
+    Tokenizer tokens = new Tokenizer(Operators.STANDARD
+            .withFunction("pi", 0, (args, i) -> Math.PI));
+    tokens.tokenize("sqrt(4) + max(1, 2) * 3 - pi()");
+    CompiledExpression program = CompiledExpression.fromTokens(tokens);
+    assertEquals(8 - Math.PI, program.evaluate(), 0);
+    assertEquals(program.evaluate(),
+            ParallelExpression.of(program).evaluate(POOL), 0);
+    assertEquals(program.evaluate(),
+            ParallelExpression.of(program, 2).evaluate(POOL), 0);
+  }
+}
@@ -0,0 +1,80 @@
+import org.junit.Test;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class replTest {
+
+  /**
+   * Method name: session
+   * Description: runs a session on the given lines
+   * @param lines, input of the session
+   * @return everything printed, with the prompts removed
+   */
+  private static String session(String lines) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    new Repl(new BufferedReader(new StringReader(lines)), out).run();
+    return bytes.toString(StandardCharsets.UTF_8).replace("> ", "");
+  }
+
+  /**
+   * Method name: testAns
+   * Description: checks that each answer is kept as ans, and that errors
+   * leave it unchanged and do not end the session
+   * @throws Exception when the session fails
+   */
+  @Test
+  public void testAns() throws Exception {
+    String output = session("ans\n1 + 2\nans * 2\n\n1 / 0\n-ans + 1\n"
+            + "1 + h\n  1 +\n");
+    assertEquals(String.join("\n", "0.0", "3.0", "6.0",
+            "Invalid division by zero.", "-5.0", "h is Invalid (at 4)",
+            "Syntax Error. (at 5)", "", ""), output);
+  }
+
+  /**
+   * Method name: testTime
+   * Description: checks that :time turns phase timings on and off
+   * @throws Exception when the session fails
+   */
+  @Test
+  public void testTime() throws Exception {
+    String[] output = session(":time\n1 + 2\n:time\n1 + 2\n").split("\n");
+    assertEquals("Timing is on", output[0]);
+    assertEquals("3.0", output[1]);
+    assertTrue(output[2], output[2].matches(
+            "tokenize [0-9.]+ us, compile [0-9.]+ us, evaluate [0-9.]+ us"));
+    assertEquals("Timing is off", output[3]);
+    assertEquals("3.0", output[4]);
+    assertEquals(5, output.length);
+  }
+
+  /**
+   * Method name: testBench
+   * Description: checks that :bench reports a throughput, or an error for
+   * an invalid expression or count, and that a longer command starting
+   * with :bench is unknown
+   * @throws Exception when the session fails
+   */
+  @Test
+  public void testBench() throws Exception {
+    String[] output = session("2\n:bench (ans + 1) * 3 1000\n"
+            + ":bench 1 + 1000\n:bench 1 + 2\n:foo\n:benchmark 1+2 5\n"
+            + ":benchx\nans\n").split("\n");
+    assertEquals("2.0", output[0]);
+    assertTrue(output[1], output[1].matches(
+            "1,000 evaluations in .* per second, .* ns each"));
+    assertEquals("Syntax Error. (at 3)", output[2]);
+    assertEquals("Syntax Error. (at 3)", output[3]);
+    assertTrue(output[4], output[4].startsWith("Unknown command :foo"));
+    assertTrue(output[5], output[5].startsWith(
+            "Unknown command :benchmark 1+2 5"));
+    assertTrue(output[6], output[6].startsWith("Unknown command :benchx"));
+    assertEquals("2.0", output[7]);
+  }
+}
@@ -0,0 +1,115 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+
+public class resultCacheTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testCanonicalKey
+   * Description: checks that expressions differing only in white space or
+   * double negatives share an entry
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testCanonicalKey() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    Tokenizer tokens = new Tokenizer();
+    assertEquals(3.0, cache.evaluate(tokens, "1 + 2"), 0);
+    assertEquals(3.0, cache.evaluate(tokens, "1+2"), 0);
+    assertEquals(3.0, cache.evaluate(tokens, " 1 - -2\t"), 0);
+    assertEquals(-1.0, cache.evaluate(tokens, "1 - 2"), 0);
+    assertEquals(2, cache.hits());
+    assertEquals(2, cache.misses());
+    assertEquals(2, cache.size());
+    tokens.tokenize(" 1 - -2\t");
+    assertEquals("1 + 2", tokens.canonical());
+  }
+
+  /**
+   * Method name: testEviction
+   * Description: checks that a full cache evicts an entry that was not used
+   * since the clock hand last passed it, and keeps one that was
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEviction() throws Exception {
+    ResultCache cache = new ResultCache(2);
+    Tokenizer tokens = new Tokenizer();
+    cache.evaluate(tokens, "1");
+    cache.evaluate(tokens, "2");
+    cache.evaluate(tokens, "1"); // marks 1 as used
+    cache.evaluate(tokens, "3"); // passes 1, evicts 2
+    assertEquals(1, cache.evictions());
+    assertEquals(2, cache.size());
+    long misses = cache.misses();
+    cache.evaluate(tokens, "1");
+    assertEquals(misses, cache.misses());
+    cache.evaluate(tokens, "2");
+    assertEquals(misses + 1, cache.misses());
+  }
+
+  /**
+   * Method name: testErrorsNotCached
+   * Description: checks that a failing expression fails each time
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testErrorsNotCached() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    Tokenizer tokens = new Tokenizer();
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.evaluate(tokens, "1 / 0");
+      } catch (DivisionByZeroException e) {
+        // expected
+      }
+    }
+    assertEquals(0, cache.size());
+    exception.expect(DivisionByZeroException.class);
+    cache.evaluate(tokens, "1/0");
+  }
+
+  /**
+   * Method name: testConcurrent
+   * Description: checks answers from several threads sharing a cache
+   * smaller than the set of expressions
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testConcurrent() throws Exception {
+    ResultCache cache = new ResultCache(16);
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        results.add(threads.submit(() -> {
+          Tokenizer tokens = new Tokenizer();
+          int wrong = 0;
+          for (int i = 0; i < 20_000; i++) {
+            int n = i % 40;
+            if (cache.evaluate(tokens, n + " * 2 + 1") != n * 2 + 1) {
+              wrong++;
+            }
+          }
+          return wrong;
+        }));
+      }
+      for (Future<Integer> result : results) {
+        assertEquals(0, (int) result.get());
+      }
+    } finally {
+      threads.shutdown();
+    }
+    assertEquals(80_000, cache.hits() + cache.misses());
+    assertEquals(16, cache.size());
+  }
+}
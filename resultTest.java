@@ -0,0 +1,97 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class resultTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testValue
+   * Description: checks that a valid expression gives its value
+   */
+  @Test
+  public void testValue() {
+    Result result = Calculator.calculate("(24.3 + 4) / 78");
+    assertTrue(result.ok());
+    assertEquals(Result.OK, result.error());
+    assertEquals(0.3628205128205128, result.value(), 0);
+    assertEquals(Result.NO_POSITION, result.position());
+    assertEquals("0.3628205128205128", result.toString());
+  }
+
+  /**
+   * Method name: testErrors
+   * Description: checks the error code, position and message of each kind
+   * of invalid expression
+   */
+  @Test
+  public void testErrors() {
+    assertError("1 + h", Result.INVALID_CHARACTER, 4, "h is Invalid");
+    assertError("1 ++ 2", Result.SYNTAX_ERROR, 3, "Syntax Error.");
+    assertError("* 2", Result.SYNTAX_ERROR, 0, "Syntax Error.");
+    assertError("1 +", Result.SYNTAX_ERROR, 3, "Syntax Error.");
+    assertError("   ", Result.SYNTAX_ERROR, 3, "Syntax Error.");
+    assertError("1..2", Result.SYNTAX_ERROR, 0, "Syntax Error.");
+    assertError("1.2.3 + 4", Result.SYNTAX_ERROR, 0, "Syntax Error.");
+    assertError("(1 + 2", Result.SYNTAX_ERROR, 0, "Syntax Error.");
+    assertError("1 + 2) * 3", Result.SYNTAX_ERROR, 5, "Syntax Error.");
+    assertError("(+1)", Result.SYNTAX_ERROR, 1, "Syntax Error.");
+    assertError("1 / (2 - 2)", Result.DIVISION_BY_ZERO, Result.NO_POSITION,
+            "Invalid division by zero.");
+  }
+
+  /**
+   * Method name: assertError
+   * Description: checks that an expression gives the given error
+   */
+  private static void assertError(String expression, int error,
+          int position, String message) {
+    Result result = Calculator.calculate(expression);
+    assertFalse(expression, result.ok());
+    assertEquals(expression, error, result.error());
+    assertEquals(expression, position, result.position());
+    assertEquals(expression, message, result.message());
+    assertEquals(expression, message, result.toString());
+  }
+
+  /**
+   * Method name: testOrThrow
+   * Description: checks that an error converts to the exception the rest
+   * of the calculator throws
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testOrThrow() throws Exception {
+    assertEquals(3.0, Calculator.calculate("1 + 2").orThrow(), 0);
+    exception.expect(InvalidCharacterException.class);
+    exception.expectMessage("h is Invalid");
+    Calculator.calculate("1 + h").orThrow();
+  }
+
+  /**
+   * Method name: testValueOfError
+   * Description: checks that the value of an error cannot be taken
+   */
+  @Test
+  public void testValueOfError() {
+    exception.expect(IllegalStateException.class);
+    Calculator.calculate("1 / 0").value();
+  }
+
+  /**
+   * Method name: testParseStringDivisionByZero
+   * Description: checks that parseString reports a division by zero to
+   * its caller instead of exiting
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testParseStringDivisionByZero() throws Exception {
+    exception.expect(DivisionByZeroException.class);
+    Calculator.parseString("1 0 / ");
+  }
+}
@@ -0,0 +1,126 @@
+import org.junit.Test;
+import java.util.LinkedList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class scalingTest {
+  // repeated to build long expressions; 12 tokens, adds 8.2 each time
+  private static final String UNIT = "(1 + 2) * 3 - 4 / 5 + ";
+  private static final int UNIT_TOKENS = 12;
+  private static final double UNIT_VALUE = 8.2;
+  // most a size may take over linear growth from the smallest size; one
+  // slow measurement on a busy machine stays within it, growth of n log n
+  // or faster does not
+  private static final double SLACK = 4;
+  private static final int SMALLEST = 1_000;
+  private static final int RUNS = 5;
+
+  /**
+   * Method name: expression
+   * Description: builds a valid expression of about the given number of
+   * tokens
+   * @param tokens, number of tokens
+   * @return expression in infix notation
+   */
+  private static String expression(int tokens) {
+    StringBuilder expression = new StringBuilder();
+    for (int i = 0; i < tokens / UNIT_TOKENS; i++) {
+      expression.append(UNIT);
+    }
+    return expression.append('0').toString();
+  }
+
+  /**
+   * Method name: timeCompile
+   * Description: compiles and evaluates an expression several times
+   * @param expression in infix notation
+   * @return fastest time in nanoseconds
+   * @throws Exception when expression is invalid
+   */
+  private static long timeCompile(String expression) throws Exception {
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      Calculator.compile(expression).evaluate();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  /**
+   * Method name: timePostfix
+   * Description: converts a formatted expression to postfix several times
+   * @param tokens, expression in linked list format
+   * @return fastest time in nanoseconds
+   * @throws Exception when expression is invalid
+   */
+  private static long timePostfix(LinkedList<String> tokens)
+          throws Exception {
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      Calculator.postfix(tokens);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  /**
+   * Method name: testCompileScaling
+   * Description: checks that compiling and evaluating grows about linearly
+   * from 10^3 to 10^7 tokens
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testCompileScaling() throws Exception {
+    // warm up so the smallest size is not measured in the interpreter
+    String warmup = expression(10_000);
+    for (int i = 0; i < 200; i++) {
+      Calculator.compile(warmup).evaluate();
+    }
+    long first = 0;
+    for (int tokens = SMALLEST; tokens <= 10_000_000; tokens *= 10) {
+      String expression = expression(tokens);
+      double expected = tokens / UNIT_TOKENS * UNIT_VALUE;
+      assertEquals(expected, Calculator.compile(expression).evaluate(),
+              expected * 1e-9);
+      long time = timeCompile(expression);
+      if (first > 0) {
+        assertTrue(tokens + " tokens took " + time / first
+                + "x as long as " + SMALLEST,
+                time < first * (tokens / SMALLEST) * SLACK);
+      }
+      else {
+        first = time;
+      }
+    }
+  }
+
+  /**
+   * Method name: testPostfixScaling
+   * Description: checks that Calculator.postfix grows about linearly from
+   * 10^3 to 10^6 tokens
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testPostfixScaling() throws Exception {
+    LinkedList<String> warmup = Calculator.simpleFormat(expression(10_000));
+    for (int i = 0; i < 200; i++) {
+      Calculator.postfix(warmup);
+    }
+    long first = 0;
+    for (int tokens = SMALLEST; tokens <= 1_000_000; tokens *= 10) {
+      LinkedList<String> formatted
+              = Calculator.simpleFormat(expression(tokens));
+      long time = timePostfix(formatted);
+      if (first > 0) {
+        assertTrue(tokens + " tokens took " + time / first
+                + "x as long as " + SMALLEST,
+                time < first * (tokens / SMALLEST) * SLACK);
+      }
+      else {
+        first = time;
+      }
+    }
+  }
+}
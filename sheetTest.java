@@ -0,0 +1,181 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class sheetTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testReferences
+   * Description: checks that cells use the values of the cells they name,
+   * whichever is set first
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testReferences() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("price", "2.5");
+    sheet.set("total", "price * 4 - discount");
+    sheet.set("discount", "1");
+    assertEquals(9.0, sheet.value("total"), 0);
+    assertEquals("price * 4 - discount", sheet.expression("total"));
+    assertNull(sheet.expression("tax"));
+    assertEquals(3, sheet.size());
+  }
+
+  /**
+   * Method name: testIncremental
+   * Description: checks that changing a cell evaluates only the cells
+   * downstream of it, each once, inputs before the cells that use them
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testIncremental() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("a", "1");
+    sheet.set("b", "a + 1");
+    sheet.set("c", "a * 2");
+    sheet.set("d", "b + c");
+    sheet.set("other", "5");
+    long before = sheet.evaluations();
+    sheet.set("a", "10");
+    // a, b, c and d, but not other
+    assertEquals(4, sheet.evaluations() - before);
+    assertEquals(31.0, sheet.value("d"), 0);
+    assertEquals(5.0, sheet.value("other"), 0);
+  }
+
+  /**
+   * Method name: testUnchangedValueStops
+   * Description: checks that cells below a cell whose value did not change
+   * are not evaluated again
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testUnchangedValueStops() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("a", "3");
+    sheet.set("b", "a * 0");
+    sheet.set("c", "b + 1");
+    long before = sheet.evaluations();
+    sheet.set("a", "4");
+    // a and b only
+    assertEquals(2, sheet.evaluations() - before);
+    assertEquals(1.0, sheet.value("c"), 0);
+  }
+
+  /**
+   * Method name: testRedefinition
+   * Description: checks that a cell no longer using another stops following
+   * its changes
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testRedefinition() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("a", "1");
+    sheet.set("b", "2");
+    sheet.set("c", "a + 1");
+    sheet.set("c", "b + 1");
+    assertEquals(3.0, sheet.value("c"), 0);
+    long before = sheet.evaluations();
+    sheet.set("a", "7");
+    assertEquals(1, sheet.evaluations() - before);
+    sheet.set("b", "7");
+    assertEquals(8.0, sheet.value("c"), 0);
+  }
+
+  /**
+   * Method name: testDivisionByZero
+   * Description: checks that a division by zero is reported by the cell
+   * and every cell using it, until the divisor changes
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDivisionByZero() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("x", "0");
+    sheet.set("y", "1 / x");
+    sheet.set("z", "y + 1");
+    sheet.set("x", "2");
+    assertEquals(1.5, sheet.value("z"), 0);
+    sheet.set("x", "0");
+    exception.expect(DivisionByZeroException.class);
+    sheet.value("z");
+  }
+
+  /**
+   * Method name: testUndefinedReference
+   * Description: checks that a cell using a cell not set yet has no value
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testUndefinedReference() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("a", "b + 1");
+    exception.expect(IllegalArgumentException.class);
+    sheet.value("a");
+  }
+
+  /**
+   * Method name: testSelfReference
+   * Description: checks that a cell cannot use itself
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testSelfReference() throws Exception {
+    Sheet sheet = new Sheet();
+    exception.expect(CircularReferenceException.class);
+    exception.expectMessage("Circular reference to a.");
+    sheet.set("a", "a + 1");
+  }
+
+  /**
+   * Method name: testCycleLeavesSheetUnchanged
+   * Description: checks that a cell closing a long cycle is refused and
+   * the sheet keeps its previous expressions and values
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testCycleLeavesSheetUnchanged() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("c0", "1");
+    for (int i = 1; i < 1000; i++) {
+      sheet.set("c" + i, "c" + (i - 1) + " + 1");
+    }
+    try {
+      sheet.set("c0", "c999 * 2");
+      throw new AssertionError("cycle was accepted");
+    } catch (CircularReferenceException e) {
+      assertEquals("Circular reference to c0.", e.getMessage());
+    }
+    assertEquals("1", sheet.expression("c0"));
+    assertEquals(1000.0, sheet.value("c999"), 0);
+    sheet.set("c0", "2");
+    assertEquals(1001.0, sheet.value("c999"), 0);
+  }
+
+  /**
+   * Method name: testInvalidExpression
+   * Description: checks that an invalid expression is refused and the cell
+   * keeps its previous expression
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testInvalidExpression() throws Exception {
+    Sheet sheet = new Sheet();
+    sheet.set("a", "1");
+    try {
+      sheet.set("a", "1 +");
+      throw new AssertionError("invalid expression was accepted");
+    } catch (SyntaxErrorException e) {
+      assertEquals("1", sheet.expression("a"));
+    }
+    exception.expect(IllegalArgumentException.class);
+    sheet.set("2a", "1");
+  }
+}
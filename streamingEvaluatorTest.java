@@ -0,0 +1,160 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+
+public class streamingEvaluatorTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testEvaluate
+   * Description: checks answers read from a reader and from a channel
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEvaluate() throws Exception {
+    StreamingEvaluator evaluator = new StreamingEvaluator(3);
+    assertEquals(253.60000000000002,
+            evaluator.evaluate(new StringReader("(58*3.2+(45--23))")), 0);
+    assertEquals(-5.0, evaluator.evaluate(new StringReader(
+            " - 1 - (2 * 3) -1 - - 3")), 0);
+    byte[] bytes = "(24.3 + 4) / 78".getBytes(StandardCharsets.UTF_8);
+    assertEquals(0.3628205128205128, evaluator.evaluate(
+            Channels.newChannel(new ByteArrayInputStream(bytes))), 0);
+  }
+
+  /**
+   * Method name: testSameAsCalculate
+   * Description: checks that random expressions, valid or not, read in
+   * chunks of any size give the answer or the error, at the same offset,
+   * that Calculator.calculate gives on the whole string
+   * @throws Exception when the reader fails
+   */
+  @Test
+  public void testSameAsCalculate() throws Exception {
+    Random random = new Random(42);
+    String alphabet = "0123456789.+-*/()  -";
+    StreamingEvaluator[] evaluators = {new StreamingEvaluator(1),
+            new StreamingEvaluator(2), new StreamingEvaluator(5),
+            new StreamingEvaluator()};
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder expression = new StringBuilder();
+      int length = random.nextInt(24);
+      for (int j = 0; j < length; j++) {
+        expression.append(alphabet.charAt(random.nextInt(
+                alphabet.length())));
+      }
+      if (random.nextInt(50) == 0) {
+        expression.insert(random.nextInt(length + 1), 'x');
+      }
+      String text = expression.toString();
+      Result expected = Calculator.calculate(text);
+      for (StreamingEvaluator evaluator : evaluators) {
+        Result actual = evaluator.calculate(new StringReader(text));
+        assertEquals(text, expected.toString(), actual.toString());
+        assertEquals(text, expected.error(), actual.error());
+        assertEquals(text, expected.position(), actual.position());
+      }
+    }
+  }
+
+  /**
+   * Method name: testErrorOrder
+   * Description: checks that an error of the tokenizer after an error of
+   * the compiler, or after a division by zero, is the one reported
+   * @throws Exception when the reader fails
+   */
+  @Test
+  public void testErrorOrder() throws Exception {
+    StreamingEvaluator evaluator = new StreamingEvaluator(1);
+    Result result = evaluator.calculate(new StringReader("1 / 0 + (2 + h"));
+    assertEquals(Result.INVALID_CHARACTER, result.error());
+    assertEquals(13, result.position());
+    result = evaluator.calculate(new StringReader("* 1 / 0 + 2 ++ 3"));
+    assertEquals(Result.SYNTAX_ERROR, result.error());
+    assertEquals(13, result.position());
+    result = evaluator.calculate(new StringReader("1 / 0 + 2) * 3"));
+    assertEquals(Result.SYNTAX_ERROR, result.error());
+    assertEquals(9, result.position());
+  }
+
+  /**
+   * Method name: testLongInput
+   * Description: checks an expression far longer than the chunk, generated
+   * as it is read
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testLongInput() throws Exception {
+    int terms = 1000000;
+    StreamingEvaluator evaluator = new StreamingEvaluator();
+    assertEquals(terms, evaluator.evaluate(
+            new Repeat("(1 + ", "0", ")", terms)), 0);
+    assertEquals(terms, evaluator.evaluate(
+            new Repeat("1.0 * 1 + ", "0", "", terms)), 0);
+  }
+
+  /**
+   * Method name: testDivisionByZero
+   * Description: checks that dividing by zero throws
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testDivisionByZero() throws Exception {
+    exception.expect(DivisionByZeroException.class);
+    new StreamingEvaluator(2).evaluate(new StringReader("1 + 2 / (3 - 3)"));
+  }
+
+  /**
+   * reader of a text repeated many times, a middle, and another text
+   * repeated as many times
+   */
+  private static final class Repeat extends Reader {
+    private final String head;
+    private final String middle;
+    private final String tail;
+    private final int times;
+    private int written;
+    private String current = "";
+    private int index;
+
+    Repeat(String head, String middle, String tail, int times) {
+      this.head = head;
+      this.middle = middle;
+      this.tail = tail;
+      this.times = times;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+      int count = 0;
+      while (count < length) {
+        if (index == current.length()) {
+          if (written == 2 * times + 1) {
+            break;
+          }
+          current = written < times ? head
+                  : written == times ? middle : tail;
+          written++;
+          index = 0;
+          continue;
+        }
+        buffer[offset + count++] = current.charAt(index++);
+      }
+      return count == 0 && length > 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
@@ -0,0 +1,136 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import static org.junit.Assert.assertEquals;
+
+public class tokenizerTest {
+
+  @Rule
+  public final ExpectedException exception = ExpectedException.none();
+
+  /**
+   * Method name: testTokens
+   * Description: checks the kind, value and position of each token, with
+   * white space skipped and double negatives turned into addition
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testTokens() throws Exception {
+    Tokenizer tokens = new Tokenizer();
+    tokens.tokenize(" 12.5 --( -4 )");
+    assertEquals(5, tokens.size());
+    assertEquals(Tokenizer.NUMBER, tokens.kind(0));
+    assertEquals(12.5, tokens.value(0), 0);
+    assertEquals(1, tokens.position(0));
+    assertEquals(Tokenizer.ADD, tokens.kind(1));
+    assertEquals(Tokenizer.OPEN_PARENTHESIS, tokens.kind(2));
+    assertEquals(Tokenizer.NUMBER, tokens.kind(3));
+    assertEquals(-4, tokens.value(3), 0);
+    assertEquals("-4", tokens.text(3));
+    assertEquals(Tokenizer.CLOSED_PARENTHESIS, tokens.kind(4));
+
+    // numbers split by white space are joined, as in simpleFormat
+    tokens.tokenize("1 2.2 5");
+    assertEquals(1, tokens.size());
+    assertEquals(12.25, tokens.value(0), 0);
+    assertEquals("12.25", tokens.text(0));
+  }
+
+  /**
+   * Method name: testNumberValues
+   * Description: checks that numbers are parsed exactly like
+   * Double.parseDouble, including long literals and malformed numbers
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testNumberValues() throws Exception {
+    Tokenizer tokens = new Tokenizer();
+    String[] numbers = {"0", "0.1", "3.2", "58", "123456789012345",
+            "1234567890123456789", "0.30000000000000004", "5.", "-0",
+            "-24.89", "-.5", "1234567.000000000000000001"};
+    for (String number : numbers) {
+      tokens.tokenize(number);
+      assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+              Double.doubleToLongBits(tokens.value(0)));
+    }
+    tokens.tokenize("1..2");
+    assertEquals(Double.NaN, tokens.value(0), 0);
+  }
+
+  /**
+   * Method name: testReuse
+   * Description: checks that a tokenizer can be reused for inputs longer
+   * than its initial capacity
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testReuse() throws Exception {
+    Tokenizer tokens = new Tokenizer();
+    StringBuilder input = new StringBuilder("1");
+    for (int i = 0; i < 100; i++) {
+      input.append(" + 1");
+    }
+    tokens.tokenize(input);
+    assertEquals(201, tokens.size());
+    tokens.tokenize("2*3");
+    assertEquals(3, tokens.size());
+    assertEquals(Tokenizer.MULTIPLY, tokens.kind(1));
+  }
+
+  /**
+   * Method name: testInvalidCharacter
+   * Description: checks that letters are rejected
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testInvalidCharacter() throws Exception {
+    exception.expect(InvalidCharacterException.class);
+    exception.expectMessage("h is Invalid");
+    new Tokenizer().tokenize("hello");
+  }
+
+  /**
+   * Method name: testEmpty
+   * Description: checks that an expression of only white space is a syntax
+   * error
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testEmpty() throws Exception {
+    exception.expect(SyntaxErrorException.class);
+    new Tokenizer().tokenize(" \t ");
+  }
+
+  /**
+   * Method name: testVariables
+   * Description: checks that declared names become variable tokens, with a
+   * leading negative sign folded in
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testVariables() throws Exception {
+    Tokenizer tokens = new Tokenizer();
+    tokens.tokenize("-price * (qty - -x2)", new String[] {"qty", "price", "x2"});
+    assertEquals(7, tokens.size());
+    assertEquals(Tokenizer.VARIABLE, tokens.kind(0));
+    assertEquals(~1, tokens.variable(0));
+    assertEquals("-price", tokens.text(0));
+    assertEquals(Tokenizer.VARIABLE, tokens.kind(3));
+    assertEquals(0, tokens.variable(3));
+    assertEquals(Tokenizer.ADD, tokens.kind(4));
+    assertEquals(2, tokens.variable(5));
+    assertEquals(Tokenizer.CLOSED_PARENTHESIS, tokens.kind(6));
+  }
+
+  /**
+   * Method name: testUnknownVariable
+   * Description: checks that a name that was not declared is invalid
+   * @throws Exception when expression is invalid
+   */
+  @Test
+  public void testUnknownVariable() throws Exception {
+    exception.expect(InvalidCharacterException.class);
+    exception.expectMessage("qtty is Invalid");
+    new Tokenizer().tokenize("price * qtty", new String[] {"price", "qty"});
+  }
+}